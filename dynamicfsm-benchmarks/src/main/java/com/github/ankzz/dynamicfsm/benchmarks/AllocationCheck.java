@@ -0,0 +1,298 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMBatchResult;
+import com.github.ankzz.dynamicfsm.fsm.FSMBulkEngine;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstanceStore;
+import com.github.ankzz.dynamicfsm.fsm.FSMTyped;
+import com.github.ankzz.dynamicfsm.metrics.FSMMetrics;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDispatch;
+import com.github.ankzz.dynamicfsm.states.FSMMessageHandle;
+import com.github.ankzz.dynamicfsm.states.FSMMessageResolver;
+import com.github.ankzz.dynamicfsm.states.FSMTypedDefinition;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Verifies that message processing does not allocate.
+ * 
+ * <p>
+ * Each processing path is warmed up, then run for a million messages, a
+ * few times, while the bytes allocated by the current thread are measured
+ * with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * The check fails if any path allocates more than a few bytes in total.
+ * It runs in the <code>test</code> phase of this module, so that an
+ * allocation regression fails the build.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class AllocationCheck {
+
+    private static final int __Warmup = 200000;
+    private static final int __Messages = 1000000;
+    private static final int __Mask = 1023;
+
+    /* Tolerance for the measurement itself */
+    private static final long __MaxBytes = 1024;
+
+    private final com.sun.management.ThreadMXBean _threads;
+    private final List<String> _failures = new ArrayList<>();
+
+    private AllocationCheck() {
+        this._threads = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        this._threads.setThreadAllocatedMemoryEnabled(true);
+        /* First calls allocate internally; keep them out of measurements */
+        for (int i = 0; i < 3; i++) {
+            this._threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new AllocationCheck().run();
+    }
+
+    private void run() throws Exception {
+        final FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(1000).getPath(), true);
+        final String[] messages = ConfigGenerator.messages(__Mask + 1, 42);
+        final int[] messageIds = new int[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            messageIds[i] = def.getMessageId(messages[i]);
+        }
+
+        final FSM fsm = new FSM(def, ProcessBenchmark.ACCEPT);
+        check("FSM.ProcessFSM(String)", new Path() {
+            @Override
+            public long run(int i) {
+                return fsm.ProcessFSM(messages[i & __Mask]) == null ? 0 : 1;
+            }
+        });
+        check("FSM.process(String)", new Path() {
+            @Override
+            public long run(int i) { return fsm.process(messages[i & __Mask]); }
+        });
+        check("FSM.process(int)", new Path() {
+            @Override
+            public long run(int i) { return fsm.process(messageIds[i & __Mask]); }
+        });
+
+        final FSMBatchResult result = new FSMBatchResult(messages.length);
+        check("FSM.processAll(String[])", new Path() {
+            @Override
+            public long run(int i) {
+                return (i & __Mask) == 0 ? fsm.processAll(messages, result) : 0;
+            }
+        });
+        check("FSM.processAll(int[])", new Path() {
+            @Override
+            public long run(int i) {
+                return (i & __Mask) == 0 
+                        ? fsm.processAll(messageIds, result) : 0;
+            }
+        });
+
+        final FSMInstance instance = new FSMInstance(def);
+        check("FSMInstance.process(String)", new Path() {
+            @Override
+            public long run(int i) {
+                return instance.process(messages[i & __Mask]) ? 1 : 0;
+            }
+        });
+        check("FSMInstance.process(int)", new Path() {
+            @Override
+            public long run(int i) {
+                return instance.process(messageIds[i & __Mask]) ? 1 : 0;
+            }
+        });
+
+        /* Small definition, so that every histogram exists after warm-up */
+        FSMDefinition small = new FSMDefinition(
+                ConfigGenerator.xml(4).getPath(), true);
+        final FSM measured = new FSM(small, ProcessBenchmark.ACCEPT);
+        measured.setMetrics(new FSMMetrics(small, 1));
+        check("FSM.ProcessFSM(String) with metrics", new Path() {
+            @Override
+            public long run(int i) {
+                return measured.ProcessFSM(messages[i & __Mask]) == null 
+                        ? 0 : 1;
+            }
+        });
+
+        final FSMBulkEngine engine = new FSMBulkEngine(def, 1 << 16,
+                ForkJoinPool.commonPool(), 1);
+        final int[] instances = new int[messages.length];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = (i * 7919) & 0xFFFF;
+        }
+        check("FSMBulkEngine.apply", new Path() {
+            @Override
+            public long run(int i) {
+                return (i & __Mask) == 0 ? engine.apply(instances, messageIds,
+                        instances.length) : 0;
+            }
+        });
+
+        final FSMInstanceStore store = new FSMInstanceStore(def, 1 << 16);
+        check("FSMInstanceStore.process(long, int)", new Path() {
+            @Override
+            public long run(int i) {
+                return store.process((i * 7919) & 0xFFFF, 
+                        messageIds[i & __Mask]);
+            }
+        });
+
+        final FSMMessageResolver resolver = new FSMMessageResolver(def);
+        final FSMMessageHandle[] handles = 
+                new FSMMessageHandle[messages.length];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = resolver.resolve(messages[i]);
+        }
+        check("FSM.ProcessFSM(FSMMessageHandle)", new Path() {
+            @Override
+            public long run(int i) {
+                return fsm.ProcessFSM(handles[i & __Mask]) == null ? 0 : 1;
+            }
+        });
+        StringBuilder names = new StringBuilder();
+        for (String m : messages) names.append(m).append('\n');
+        final ByteBuffer wire = ByteBuffer.allocateDirect(names.length());
+        wire.put(names.toString().getBytes(StandardCharsets.UTF_8)).flip();
+        final int[] decoded = new int[messages.length];
+        check("FSMMessageResolver.resolveAll", new Path() {
+            @Override
+            public long run(int i) {
+                if ((i & __Mask) != 0) return 0;
+                wire.rewind();
+                return resolver.resolveAll(wire, (byte) '\n', decoded);
+            }
+        });
+
+        FSMDefinition compiled = new FSMDefinition(
+                ConfigGenerator.xml(500).getPath(), true);
+        compiled.setDefaultAction(ProcessBenchmark.ACCEPT);
+        final FSMInstance dispatched = new FSMInstance(
+                FSMDispatch.compile(compiled), null);
+        check("FSMInstance.process(int) compiled", new Path() {
+            @Override
+            public long run(int i) {
+                return dispatched.process(messageIds[i & __Mask]) ? 1 : 0;
+            }
+        });
+
+        FSMDefinition nested = new FSMDefinition(
+                ConfigGenerator.nested(500, false).getPath(), true);
+        final FSM inherited = new FSM(nested, ProcessBenchmark.ACCEPT);
+        inherited.setCurrentStateId(nested.getStateId("S0"));
+        check("FSM.ProcessFSM(String) nested", new Path() {
+            @Override
+            public long run(int i) {
+                return inherited.ProcessFSM(messages[i & __Mask]) == null
+                        ? 0 : 1;
+            }
+        });
+
+        FSMDefinition guarded = new FSMDefinition(
+                ConfigGenerator.guarded(500, 4, false).getPath(), true);
+        guarded.setDefaultAction(ProcessBenchmark.ACCEPT);
+        final int[] selector = new int[1];
+        for (int g = 0; g < 4; g++) {
+            final int _g = g;
+            guarded.setGuard("g" + g, args -> ((int[]) args)[0] == _g);
+        }
+        final FSMInstance conditional = new FSMInstance(guarded, selector);
+        check("FSMInstance.process(int) guarded", new Path() {
+            @Override
+            public long run(int i) {
+                selector[0] = i % 5;
+                return conditional.process(messageIds[i & __Mask]) ? 1 : 0;
+            }
+        });
+
+        FSMTypedDefinition<TypedBenchmark.States, TypedBenchmark.Messages>
+                binding = new FSMTypedDefinition<>(small,
+                        TypedBenchmark.States.class,
+                        TypedBenchmark.Messages.class);
+        binding.setDefaultAction((cur, message, next, args) -> true);
+        final FSMTyped<TypedBenchmark.States, TypedBenchmark.Messages> typed = 
+                new FSMTyped<>(binding, null);
+        final TypedBenchmark.Messages[] constants = 
+                new TypedBenchmark.Messages[messages.length];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = TypedBenchmark.Messages.valueOf(messages[i]);
+        }
+        check("FSMTyped.process(Enum)", new Path() {
+            @Override
+            public long run(int i) {
+                return typed.process(constants[i & __Mask]) ? 1 : 0;
+            }
+        });
+
+        if (!this._failures.isEmpty()) {
+            throw new IllegalStateException(
+                    "Processing allocates: " + this._failures);
+        }
+    }
+
+    private void check(String name, Path path) {
+        long sink = 0;
+        for (int i = 0; i < __Warmup; i++) sink += path.run(i);
+
+        /* Best of a few rounds, to leave out compilation of this loop */
+        long id = Thread.currentThread().getId();
+        long bytes = Long.MAX_VALUE;
+        for (int r = 0; r < 3; r++) {
+            long before = this._threads.getThreadAllocatedBytes(id);
+            for (int i = 0; i < __Messages; i++) sink += path.run(i);
+            bytes = Math.min(bytes,
+                    this._threads.getThreadAllocatedBytes(id) - before);
+        }
+
+        System.out.println(String.format("%-40s %8d bytes / %d messages%s",
+                name, bytes, __Messages, (sink == 42 ? " " : "")));
+        if (bytes > __MaxBytes) {
+            this._failures.add(name + ": " + bytes + " bytes");
+        }
+    }
+
+    /*
+     * A processing path; returns a value depending on the result, so that
+     * processing is not optimised away
+     */
+    private interface Path {
+        long run(int i);
+    }
+}
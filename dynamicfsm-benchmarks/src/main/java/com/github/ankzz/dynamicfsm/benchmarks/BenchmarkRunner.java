@@ -0,0 +1,56 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with allocation profiling (<code>-prof gc</code>)
+ * always enabled, so that allocation regressions are reported along with
+ * timings. Accepts the usual JMH command line options.
+ * 
+ * <pre>
+ *  java -jar dynamicfsm-benchmarks/target/benchmarks.jar ProcessBenchmark -p states=1000
+ * </pre>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSMBulkEngine;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how event throughput of {@link FSMBulkEngine} scales with the
+ * number of cores. Score is in events per microsecond; run with
+ * <code>-p parallelism=1,2,4,...</code> up to the number of cores.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BulkEngineBenchmark {
+
+    private static final int __Events = 1 << 22;
+
+    @Param({ "1", "2", "4", "8" })
+    public int parallelism;
+
+    @Param({ "1000000" })
+    public int instances;
+
+    private ForkJoinPool pool;
+    private FSMBulkEngine engine;
+    private int[] eventInstances;
+    private int[] eventMessages;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(1000).getPath(), true);
+        this.pool = new ForkJoinPool(this.parallelism);
+        this.engine = new FSMBulkEngine(def, this.instances, this.pool,
+                this.parallelism * 4);
+
+        Random r = new Random(42);
+        this.eventInstances = new int[__Events];
+        this.eventMessages = new int[__Events];
+        for (int e = 0; e < __Events; e++) {
+            this.eventInstances[e] = r.nextInt(this.instances);
+            this.eventMessages[e] = r.nextInt(def.getMessageCount());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(__Events)
+    public long apply() {
+        return this.engine.apply(this.eventInstances, this.eventMessages,
+                __Events);
+    }
+}
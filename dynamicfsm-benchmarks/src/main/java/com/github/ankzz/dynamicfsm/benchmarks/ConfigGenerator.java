@@ -0,0 +1,274 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates synthetic configurations for the benchmarks.
+ * 
+ * <p>
+ * A configuration of <code>n</code> states names them <code>S0</code> to
+ * <code>S(n-1)</code>. Every state handles all of {@link #MESSAGES}, so any
+ * sequence of these messages is accepted from any state:
+ * </p>
+ * <ul>
+ *  <li>NEXT moves to the following state,</li>
+ *  <li>PREV moves to the previous state,</li>
+ *  <li>SKIP jumps ahead by a pseudo-random distance,</li>
+ *  <li>RESET moves back to the initial state.</li>
+ * </ul>
+ * 
+ * <p>
+ * Generated files are kept in the temporary directory and reused.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class ConfigGenerator {
+
+    /**
+     * Messages handled by every state of a generated configuration
+     */
+    public static final String[] MESSAGES = { "NEXT", "PREV", "SKIP", "RESET" };
+
+    private ConfigGenerator() {
+    }
+
+    /**
+     * 
+     * @param states Number of states
+     * 
+     * @return Returns the XML Configuration file with specified number of states
+     * 
+     * @throws IOException
+     * In case configuration file can not be written
+     */
+    public static File xml(int states) throws IOException {
+        File f = new File(System.getProperty("java.io.tmpdir"),
+                "dynamicfsm-bench-" + states + ".xml");
+        if (f.isFile()) return f;
+
+        File tmp = File.createTempFile("dynamicfsm-bench-", ".tmp",
+                f.getParentFile());
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<FSM>\n");
+            for (int i = 0; i < states; i++) {
+                w.write("\t<STATE id=\"S" + i + "\">\n");
+                message(w, "NEXT", "next", (i + 1) % states);
+                message(w, "PREV", "prev", (i + states - 1) % states);
+                message(w, "SKIP", "skip", (int) ((i * 7919L + 13) % states));
+                message(w, "RESET", "reset", 0);
+                w.write("\t</STATE>\n");
+            }
+            w.write("</FSM>\n");
+        }
+        if (!tmp.renameTo(f) && !f.isFile()) {
+            throw new IOException("Unable to create " + f);
+        }
+        tmp.delete();
+        return f;
+    }
+
+    /**
+     * Method writes a configuration where the states <code>S0</code> to
+     * <code>S(n-1)</code> handle NEXT and PREV, and SKIP and RESET are
+     * handled alike by every state: declared once by an enclosing state
+     * <code>W</code>, or repeated in every state if expanded.
+     * 
+     * @param states Number of states, besides the enclosing state
+     * @param expanded True to repeat the common transitions in every state
+     *                 rather than to nest the states
+     * 
+     * @return Returns the XML Configuration file with specified number of states
+     * 
+     * @throws IOException
+     * In case configuration file can not be written
+     */
+    public static File nested(int states, boolean expanded) throws IOException {
+        File f = new File(System.getProperty("java.io.tmpdir"),
+                "dynamicfsm-bench-" + (expanded ? "expanded-" : "nested-")
+                + states + ".xml");
+        if (f.isFile()) return f;
+
+        File tmp = File.createTempFile("dynamicfsm-bench-", ".tmp",
+                f.getParentFile());
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<FSM>\n");
+            w.write("\t<STATE id=\"W\">\n");
+            message(w, "SKIP", "skip", states / 2);
+            message(w, "RESET", "reset", 0);
+            if (expanded) w.write("\t</STATE>\n");
+            for (int i = 0; i < states; i++) {
+                w.write("\t<STATE id=\"S" + i + "\">\n");
+                message(w, "NEXT", "next", (i + 1) % states);
+                message(w, "PREV", "prev", (i + states - 1) % states);
+                if (expanded) {
+                    message(w, "SKIP", "skip", states / 2);
+                    message(w, "RESET", "reset", 0);
+                }
+                w.write("\t</STATE>\n");
+            }
+            if (!expanded) w.write("\t</STATE>\n");
+            w.write("</FSM>\n");
+        }
+        if (!tmp.renameTo(f) && !f.isFile()) {
+            throw new IOException("Unable to create " + f);
+        }
+        tmp.delete();
+        return f;
+    }
+
+    /**
+     * Method writes a configuration like {@link #xml(int)}, where NEXT has
+     * alternatives besides moving to the following state: guarded by
+     * <code>g0</code> to <code>g(k-1)</code>, or, if selected, distinct
+     * messages <code>NEXT0</code> to <code>NEXT(k-1)</code> which the sender
+     * chooses among.
+     * 
+     * @param states Number of states
+     * @param guards Number of alternatives of NEXT in every state
+     * @param selected True to declare the alternatives as distinct messages
+     *                 rather than as guarded transitions
+     * 
+     * @return Returns the XML Configuration file with specified number of states
+     * 
+     * @throws IOException
+     * In case configuration file can not be written
+     */
+    public static File guarded(int states, int guards, boolean selected)
+            throws IOException {
+        File f = new File(System.getProperty("java.io.tmpdir"),
+                "dynamicfsm-bench-" + (selected ? "selected-" : "guarded-")
+                + guards + "-" + states + ".xml");
+        if (f.isFile()) return f;
+
+        File tmp = File.createTempFile("dynamicfsm-bench-", ".tmp",
+                f.getParentFile());
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<FSM>\n");
+            for (int i = 0; i < states; i++) {
+                w.write("\t<STATE id=\"S" + i + "\">\n");
+                for (int g = 0; g < guards; g++) {
+                    int next = (i + g + 2) % states;
+                    if (selected) {
+                        message(w, "NEXT" + g, "next", next);
+                    } else {
+                        w.write("\t\t<MESSAGE id=\"NEXT\" action=\"next\" "
+                                + "nextState=\"S" + next + "\" guard=\"g" + g
+                                + "\"/>\n");
+                    }
+                }
+                message(w, "NEXT", "next", (i + 1) % states);
+                message(w, "PREV", "prev", (i + states - 1) % states);
+                message(w, "SKIP", "skip", (int) ((i * 7919L + 13) % states));
+                message(w, "RESET", "reset", 0);
+                w.write("\t</STATE>\n");
+            }
+            w.write("</FSM>\n");
+        }
+        if (!tmp.renameTo(f) && !f.isFile()) {
+            throw new IOException("Unable to create " + f);
+        }
+        tmp.delete();
+        return f;
+    }
+
+    /**
+     * 
+     * @param states Number of states
+     * 
+     * @return Returns the binary definition with specified number of states
+     * 
+     * @throws Exception
+     * In case configuration can not be compiled or written
+     */
+    public static File binary(int states) throws Exception {
+        File f = new File(System.getProperty("java.io.tmpdir"),
+                "dynamicfsm-bench-" + states + ".fsmb");
+        if (f.isFile()) return f;
+
+        FSMDefinition def = new FSMDefinition(xml(states).getPath(), true);
+        File tmp = File.createTempFile("dynamicfsm-bench-", ".tmp",
+                f.getParentFile());
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            def.writeBinary(out);
+        }
+        if (!tmp.renameTo(f) && !f.isFile()) {
+            throw new IOException("Unable to create " + f);
+        }
+        tmp.delete();
+        return f;
+    }
+
+    /**
+     * 
+     * @param f File to be read
+     * 
+     * @return Returns the content of the file
+     * 
+     * @throws IOException
+     * In case file can not be read
+     */
+    public static byte[] bytes(File f) throws IOException {
+        return Files.readAllBytes(f.toPath());
+    }
+
+    /**
+     * 
+     * @param length Number of messages, shall be a power of two
+     * @param seed Seed of the sequence
+     * 
+     * @return Returns a pseudo-random sequence of {@link #MESSAGES}
+     */
+    public static String[] messages(int length, long seed) {
+        Random r = new Random(seed);
+        String[] _m = new String[length];
+        for (int i = 0; i < length; i++) {
+            _m[i] = MESSAGES[r.nextInt(MESSAGES.length)];
+        }
+        return _m;
+    }
+
+    private static void message(Writer w, String id, String action, int next)
+            throws IOException {
+        w.write("\t\t<MESSAGE id=\"" + id + "\" action=\"" + action
+                + "\" nextState=\"S" + next + "\"/>\n");
+    }
+}
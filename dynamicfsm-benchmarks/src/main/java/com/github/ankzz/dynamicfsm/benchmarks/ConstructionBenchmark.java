@@ -0,0 +1,126 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMStates;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of creating a FSM from a file, a stream and a
+ * classpath resource, with and without the definition cache, and compares
+ * start-up from a XML Configuration file with start-up from a binary
+ * definition.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructionBenchmark {
+
+    @Param({ "4", "1000", "10000", "100000" })
+    public int states;
+
+    private String xmlPath;
+    private String binaryPath;
+    private byte[] xmlBytes;
+    private FSMDefinition definition;
+
+    @Setup
+    public void setup() throws Exception {
+        this.xmlPath = ConfigGenerator.xml(this.states).getPath();
+        this.binaryPath = ConfigGenerator.binary(this.states).getPath();
+        this.xmlBytes = ConfigGenerator.bytes(ConfigGenerator.xml(this.states));
+        this.definition = new FSMDefinition(this.xmlPath, true);
+    }
+
+    /* FSM from a file; definition is served by the cache */
+    @Benchmark
+    public FSM fsmFromFile() throws Exception {
+        return new FSM(this.xmlPath, ProcessBenchmark.ACCEPT);
+    }
+
+    /* FSM from a stream; definition is served by the cache */
+    @Benchmark
+    public FSM fsmFromStream() throws Exception {
+        return new FSM(new ByteArrayInputStream(this.xmlBytes),
+                ProcessBenchmark.ACCEPT);
+    }
+
+    /* FSM from a classpath resource; definition is served by the cache */
+    @Benchmark
+    public FSMStates fsmFromResource() throws Exception {
+        return new FSMStates("config.xml", false);
+    }
+
+    /* FSM from an already compiled definition */
+    @Benchmark
+    public FSM fsmFromDefinition() {
+        return new FSM(this.definition, ProcessBenchmark.ACCEPT);
+    }
+
+    /* Lightweight instance of an already compiled definition */
+    @Benchmark
+    public FSMInstance instanceFromDefinition() {
+        return new FSMInstance(this.definition);
+    }
+
+    /* Compile a definition from the XML file, bypassing the cache */
+    @Benchmark
+    public FSMDefinition compileXmlFile() throws Exception {
+        return new FSMDefinition(this.xmlPath, true);
+    }
+
+    /* Compile a definition from a XML stream, bypassing the cache */
+    @Benchmark
+    public FSMDefinition compileXmlStream() throws Exception {
+        return new FSMDefinition(new ByteArrayInputStream(this.xmlBytes));
+    }
+
+    /* Load a binary definition, bypassing the cache */
+    @Benchmark
+    public FSMDefinition loadBinaryFile() throws Exception {
+        return new FSMDefinition(this.binaryPath, true);
+    }
+}
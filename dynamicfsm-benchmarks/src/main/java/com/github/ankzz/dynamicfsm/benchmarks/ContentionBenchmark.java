@@ -0,0 +1,100 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMConflictPolicy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single FSM fed by several threads, in concurrent mode and
+ * behind a lock. Run with <code>-t 1,2,4,8</code> to see how it scales.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private static final int __Mask = 1023;
+
+    @Param({ "RETRY", "REJECT" })
+    public FSMConflictPolicy policy;
+
+    private FSM concurrent;
+    private FSM locked;
+    private String[] messages;
+
+    @Setup
+    public void setup() throws Exception {
+        String path = ConfigGenerator.xml(1000).getPath();
+        this.concurrent = new FSM(path, ProcessBenchmark.ACCEPT);
+        this.concurrent.setConflictPolicy(this.policy);
+        this.locked = new FSM(path, ProcessBenchmark.ACCEPT);
+        this.messages = ConfigGenerator.messages(__Mask + 1, 42);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int _next;
+
+        @Setup
+        public void setup() {
+            this._next = (int) (Thread.currentThread().getId() * 131);
+        }
+
+        private int next() { return this._next++ & __Mask; }
+    }
+
+    @Benchmark
+    public Object processConcurrent(Cursor c) {
+        return this.concurrent.ProcessFSM(this.messages[c.next()]);
+    }
+
+    @Benchmark
+    public Object processLocked(Cursor c) {
+        synchronized (this.locked) {
+            return this.locked.ProcessFSM(this.messages[c.next()]);
+        }
+    }
+}
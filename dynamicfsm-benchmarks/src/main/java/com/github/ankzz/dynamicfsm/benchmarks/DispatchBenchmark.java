@@ -0,0 +1,153 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDispatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures message processing by a compiled dispatch against the
+ * interpreted engines, with an action class of its own per message, so that
+ * the call sites of the interpreted engines are megamorphic.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final int __Mask = 1023;
+
+    @Param({ "4", "100", "500" })
+    public int states;
+
+    private FSM fsm;
+    private FSMInstance interpreted;
+    private FSMInstance compiled;
+    private String[] messages;
+    private int[] messageIds;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(this.states).getPath(), true);
+        def.setAction("NEXT", new Next());
+        def.setAction("PREV", new Prev());
+        def.setAction("SKIP", new Skip());
+        def.setAction("RESET", new Reset());
+        this.fsm = new FSM(def, new Next());
+        this.interpreted = new FSMInstance(def);
+        FSMDispatch dispatch = FSMDispatch.compile(def);
+        if (!dispatch.isCompiled()) {
+            throw new IllegalStateException(dispatch.getFallbackReason());
+        }
+        this.compiled = new FSMInstance(dispatch, null);
+        this.messages = ConfigGenerator.messages(__Mask + 1, 42);
+        this.messageIds = new int[this.messages.length];
+        for (int i = 0; i < this.messages.length; i++) {
+            this.messageIds[i] = def.getMessageId(this.messages[i]);
+        }
+    }
+
+    @Benchmark
+    public Object processFSM() {
+        return this.fsm.ProcessFSM(this.messages[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean interpreted() {
+        return this.interpreted.process(this.messageIds[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return this.compiled.process(this.messageIds[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean compiledByName() {
+        return this.compiled.process(this.messages[this.cursor++ & __Mask]);
+    }
+
+    /*
+     * Actions of distinct classes, counting their invocations
+     */
+    static final class Next extends FSMAction {
+        int count;
+        @Override
+        public boolean action(String curState, String message,
+                String nextState, Object args) {
+            return ++this.count != 0;
+        }
+    }
+
+    static final class Prev extends FSMAction {
+        int count;
+        @Override
+        public boolean action(String curState, String message,
+                String nextState, Object args) {
+            return ++this.count != 0;
+        }
+    }
+
+    static final class Skip extends FSMAction {
+        int count;
+        @Override
+        public boolean action(String curState, String message,
+                String nextState, Object args) {
+            return ++this.count != 0;
+        }
+    }
+
+    static final class Reset extends FSMAction {
+        int count;
+        @Override
+        public boolean action(String curState, String message,
+                String nextState, Object args) {
+            return ++this.count != 0;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMExecutor;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures submission of messages to many FSMs multiplexed by a
+ * {@link FSMExecutor}. Messages which do not fit in a mailbox are rejected
+ * and still counted as operations; the rejected count of the executor is
+ * printed at the end of each trial.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @Param({ "10000" })
+    public int instances;
+
+    @Param({ "4" })
+    public int workers;
+
+    @Param({ "1", "32" })
+    public int batchSize;
+
+    private FSMExecutor<Integer> executor;
+    private int messageId;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(4).getPath(), true);
+        this.executor = new FSMExecutor<>(this.workers, 1024, this.batchSize);
+        for (int i = 0; i < this.instances; i++) {
+            this.executor.register(i, new FSM(def, ProcessBenchmark.ACCEPT));
+        }
+        this.messageId = def.getMessageId("NEXT");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.executor.shutdown();
+        this.executor.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.println("Rejected: " + this.executor.getRejectedCount());
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private int _next;
+
+        private int next(int bound) {
+            this._next = (this._next + 7919) % bound;
+            return this._next;
+        }
+    }
+
+    @Benchmark
+    public boolean submit(Keys k) {
+        return this.executor.submit(k.next(this.instances), this.messageId);
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.action.FSMGuard;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDispatch;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures message processing of a configuration where NEXT has guarded
+ * alternatives, as generated by
+ * {@link ConfigGenerator#guarded(int, int, boolean)}, against the sender
+ * evaluating the same conditions to choose among distinct messages.
+ * 
+ * <p>
+ * The shared data selects which condition holds, if any, before every
+ * message: the guarded layout leaves the choice to the definition, the
+ * selected one makes it in the benchmark, as applications did without
+ * guards. Both are measured with the interpreted and the compiled dispatch.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GuardBenchmark {
+
+    private static final int __States = 500;
+    private static final int __Mask = 1023;
+
+    @Param({ "1", "4" })
+    public int guards;
+
+    @Param({ "guarded", "selected" })
+    public String layout;
+
+    private FSMGuard[] conditions;
+    private int[] data;
+    private int[] selectors;
+    private int[] messageIds;
+    private int[] alternatives;
+    private int next;
+    private boolean select;
+    private FSMInstance interpreted;
+    private FSMInstance compiled;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        this.select = "selected".equals(this.layout);
+        FSMDefinition def = new FSMDefinition(ConfigGenerator.guarded(
+                __States, this.guards, this.select).getPath(), true);
+        def.setDefaultAction(ProcessBenchmark.ACCEPT);
+        this.conditions = new FSMGuard[this.guards];
+        this.alternatives = new int[this.guards];
+        for (int g = 0; g < this.guards; g++) {
+            final int _g = g;
+            this.conditions[g] = args -> ((int[]) args)[0] == _g;
+            if (this.select) {
+                this.alternatives[g] = def.getMessageId("NEXT" + g);
+            } else {
+                def.setGuard("g" + g, this.conditions[g]);
+            }
+        }
+        this.next = def.getMessageId("NEXT");
+
+        this.data = new int[1];
+        this.interpreted = new FSMInstance(FSMDispatch.interpreted(def),
+                this.data);
+        this.compiled = new FSMInstance(FSMDispatch.compile(def), this.data);
+
+        /* Condition holding before each message; none if out of range */
+        String[] messages = ConfigGenerator.messages(__Mask + 1, 42);
+        Random r = new Random(7);
+        this.messageIds = new int[messages.length];
+        this.selectors = new int[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            this.messageIds[i] = def.getMessageId(messages[i]);
+            this.selectors[i] = r.nextInt(this.guards + 1);
+        }
+    }
+
+    @Benchmark
+    public boolean processInterpreted() {
+        return this.interpreted.process(message(this.cursor++ & __Mask));
+    }
+
+    @Benchmark
+    public boolean processCompiled() {
+        return this.compiled.process(message(this.cursor++ & __Mask));
+    }
+
+    private int message(int i) {
+        this.data[0] = this.selectors[i];
+        int m = this.messageIds[i];
+        if (!this.select || m != this.next) return m;
+        for (int g = 0; g < this.conditions.length; g++) {
+            if (this.conditions[g].guard(this.data)) {
+                return this.alternatives[g];
+            }
+        }
+        return m;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstanceStore;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares processing messages of many sessions held as instances in a
+ * heap map with processing them in an off-heap instance store. The heap
+ * used by each form is printed once per trial.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class InstanceStoreBenchmark {
+
+    private static final int __Mask = 1023;
+
+    @Param({ "100000", "1000000" })
+    public int sessions;
+
+    private HashMap<Long, FSMInstance> instances;
+    private FSMInstanceStore store;
+    private long[] keys;
+    private int[] messageIds;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(1000).getPath(), true);
+        String[] messages = ConfigGenerator.messages(__Mask + 1, 42);
+        this.messageIds = new int[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            this.messageIds[i] = def.getMessageId(messages[i]);
+        }
+        this.keys = new long[__Mask + 1];
+        for (int i = 0; i < this.keys.length; i++) {
+            this.keys[i] = ((long) i * 7919 % this.sessions) * 31;
+        }
+
+        long before = heap();
+        this.instances = new HashMap<>();
+        for (int i = 0; i < this.sessions; i++) {
+            this.instances.put(i * 31L, new FSMInstance(def));
+        }
+        long map = heap() - before;
+        this.store = new FSMInstanceStore(def, this.sessions);
+        for (int i = 0; i < this.sessions; i++) {
+            this.store.setState(i * 31L, def.getInitialState());
+        }
+        long store = Math.max(0, heap() - before - map);
+        System.out.println("Heap of instances: " + (map >> 20)
+                + " MB, of store: " + (store >> 20) + " MB");
+    }
+
+    private static long heap() {
+        Runtime r = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return r.totalMemory() - r.freeMemory();
+    }
+
+    /* Session looked up in a heap map of instances */
+    @Benchmark
+    public boolean processInstance() {
+        int i = this.cursor++ & __Mask;
+        return this.instances.get(this.keys[i]).process(this.messageIds[i]);
+    }
+
+    /* Session looked up in the off-heap store */
+    @Benchmark
+    public int processStore() {
+        int i = this.cursor++ & __Mask;
+        return this.store.process(this.keys[i], this.messageIds[i]);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMJournal;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of journaling the transitions of a FSM, forcing the
+ * segments every record, every batch of records or never, and the time to
+ * recover the states of the instances from a journal.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final int __Mask = 1023;
+    private static final int __Instances = 10000;
+
+    /* Records between forces of the segments; 0 never forces */
+    @Param({ "0", "1", "256" })
+    public int syncRecords;
+
+    private Path directory;
+    private FSMDefinition definition;
+    private FSMJournal journal;
+    private FSM fsm;
+    private int[] messageIds;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.definition = new FSMDefinition(
+                ConfigGenerator.xml(1000).getPath(), true);
+        this.definition.setDefaultAction(ProcessBenchmark.ACCEPT);
+        this.directory = Files.createTempDirectory("dynamicfsm-journal");
+        this.journal = new FSMJournal(this.directory, this.definition,
+                64 << 20, this.syncRecords, 0);
+        this.fsm = new FSM(this.definition, ProcessBenchmark.ACCEPT);
+        this.fsm.setJournal(this.journal, 1);
+
+        String[] messages = ConfigGenerator.messages(__Mask + 1, 42);
+        this.messageIds = new int[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            this.messageIds[i] = this.definition.getMessageId(messages[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.journal.close();
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p ->
+                    p.toFile().delete());
+        }
+    }
+
+    /* Message processed by a journaled FSM */
+    @Benchmark
+    public int processJournaled() {
+        return this.fsm.process(this.messageIds[this.cursor++ & __Mask]);
+    }
+
+    /**
+     * Journal of a million transitions taken by ten thousand instances,
+     * to be recovered
+     */
+    @State(Scope.Benchmark)
+    public static class Recovery {
+
+        Path directory;
+        FSMDefinition definition;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            this.definition = new FSMDefinition(
+                    ConfigGenerator.xml(1000).getPath(), true);
+            this.directory = Files.createTempDirectory("dynamicfsm-journal");
+            try (FSMJournal _j = new FSMJournal(this.directory,
+                    this.definition, 8 << 20, 0, 0)) {
+                int[] _s = new int[__Instances];
+                for (int i = 0; i < 1000000; i++) {
+                    int _i = i % __Instances;
+                    int _t = this.definition.getTransitions(_s[_i])[0];
+                    _j.append(_i, _t);
+                    _s[_i] = this.definition.getTransitionTarget(_t);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            try (Stream<Path> files = Files.walk(this.directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p ->
+                        p.toFile().delete());
+            }
+        }
+    }
+
+    /* States of all instances rebuilt from the whole journal */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<Long, Integer> recover(Recovery r) throws IOException {
+        return FSMJournal.recover(r.directory, r.definition, null, 0);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMBatchResult;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMMessageHandle;
+import com.github.ankzz.dynamicfsm.states.FSMMessageResolver;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures message processing by name against processing of messages
+ * resolved into handles, and decoding of messages from a buffer of UTF-8
+ * names separated by new lines.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageHandleBenchmark {
+
+    private static final int __Mask = 1023;
+
+    @Param({ "4", "1000" })
+    public int states;
+
+    private FSM fsm;
+    private FSMMessageResolver resolver;
+    private String[] messages;
+    private FSMMessageHandle[] handles;
+    private ByteBuffer wire;
+    private int[] offsets;
+    private int[] lengths;
+    private final int[] messageIds = new int[__Mask + 1];
+    private final FSMBatchResult result = new FSMBatchResult(__Mask + 1);
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(this.states).getPath(), true);
+        this.fsm = new FSM(def, ProcessBenchmark.ACCEPT);
+        this.resolver = new FSMMessageResolver(def);
+        this.messages = ConfigGenerator.messages(__Mask + 1, 42);
+        this.handles = new FSMMessageHandle[this.messages.length];
+        this.offsets = new int[this.messages.length];
+        this.lengths = new int[this.messages.length];
+
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < this.messages.length; i++) {
+            this.handles[i] = this.resolver.resolve(this.messages[i]);
+            this.offsets[i] = names.length();
+            this.lengths[i] = this.messages[i].length();
+            names.append(this.messages[i]).append('\n');
+        }
+        byte[] bytes = names.toString().getBytes(StandardCharsets.UTF_8);
+        this.wire = ByteBuffer.allocateDirect(bytes.length);
+        this.wire.put(bytes).flip();
+    }
+
+    @Benchmark
+    public Object processByName() {
+        return this.fsm.ProcessFSM(this.messages[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public Object processHandle() {
+        return this.fsm.ProcessFSM(this.handles[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public Object processDecodedFromBuffer() {
+        int i = this.cursor++ & __Mask;
+        ByteBuffer name = this.wire.duplicate();
+        name.position(this.offsets[i]);
+        byte[] bytes = new byte[this.lengths[i]];
+        name.get(bytes);
+        return this.fsm.ProcessFSM(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Object processFromBuffer() {
+        int i = this.cursor++ & __Mask;
+        return this.fsm.ProcessFSM(this.resolver.resolve(this.wire,
+                this.offsets[i], this.lengths[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(__Mask + 1)
+    public int processAllFromBuffer() {
+        this.wire.rewind();
+        int count = this.resolver.resolveAll(this.wire, (byte) '\n',
+                this.messageIds);
+        return this.fsm.processAll(this.messageIds, this.result) + count;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.metrics.FSMMetrics;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the overhead of metrics on message processing. The action
+ * method burns the specified amount of CPU, from none to the cost of a
+ * small but useful action, to compare the overhead with transitions of
+ * different weights.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private static final int __Mask = 1023;
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    @Param({ "0", "50", "500" })
+    public int work;
+
+    private FSM fsm;
+    private String[] messages;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(1000).getPath(), true);
+        this.fsm = new FSM(def, new WorkingAction(this.work));
+        if (this.metrics) {
+            this.fsm.setMetrics(new FSMMetrics(def));
+        }
+        this.messages = ConfigGenerator.messages(__Mask + 1, 42);
+    }
+
+    @Benchmark
+    public Object processFSM() {
+        return this.fsm.ProcessFSM(this.messages[this.cursor++ & __Mask]);
+    }
+
+    /*
+     * Action burning CPU, as a stand-in for real work
+     */
+    private static final class WorkingAction extends FSMAction {
+        private final int _work;
+
+        private WorkingAction(int work) { this._work = work; }
+
+        @Override
+        public boolean action(String curState, String message,
+                String nextState, Object args) {
+            Blackhole.consumeCPU(this._work);
+            return true;
+        }
+    }
+}
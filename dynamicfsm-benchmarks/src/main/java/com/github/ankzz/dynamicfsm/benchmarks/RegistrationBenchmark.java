@@ -0,0 +1,122 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMStateAction;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of registering actions and state hooks.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationBenchmark {
+
+    @Param({ "4", "1000", "10000" })
+    public int states;
+
+    private FSM fsm;
+    private FSMDefinition definition;
+    private String lastState;
+    private int cursor;
+
+    private static final FSMAction ACTION = new FSMAction() {
+        @Override
+        public boolean action(String curState, String message,
+                String nextState, Object args) {
+            return true;
+        }
+    };
+
+    private static final FSMStateAction HOOK = new FSMStateAction() {
+        @Override
+        public void stateTransition(String state, Object arg) {
+        }
+    };
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        String path = ConfigGenerator.xml(this.states).getPath();
+        this.definition = new FSMDefinition(path, true);
+        this.fsm = new FSM(this.definition, ACTION);
+        this.lastState = "S" + (this.states - 1);
+    }
+
+    private String nextState() {
+        return "S" + (this.cursor++ % this.states);
+    }
+
+    @Benchmark
+    public void setActionOneState() {
+        this.fsm.setAction(this.lastState, "NEXT", ACTION);
+    }
+
+    @Benchmark
+    public void setActionAllStates() {
+        this.fsm.setAction("NEXT", ACTION);
+    }
+
+    @Benchmark
+    public void setStatesBeforeTransitionOneState() {
+        this.fsm.setStatesBeforeTransition(nextState(), HOOK);
+    }
+
+    @Benchmark
+    public void setStatesBeforeTransitionAllStates() {
+        this.fsm.setStatesBeforeTransition(HOOK);
+    }
+
+    @Benchmark
+    public void definitionSetActionOneState() {
+        this.definition.setAction(this.lastState, "NEXT", ACTION);
+    }
+
+    @Benchmark
+    public void definitionSetStateBeforeTransitionOneState() {
+        this.definition.setStateBeforeTransition(nextState(), HOOK);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMRegistry;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares sessions held by the registry with sessions held in a 
+ * <code>ConcurrentHashMap</code>, each FSM guarded by its own lock, as
+ * applications do without the registry. Run with <code>-t 1,2,4,8</code>
+ * to see how they scale.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RegistryBenchmark {
+
+    private static final int __Mask = 1023;
+
+    @Param({ "10000" })
+    public int sessions;
+
+    /* Idle timeout of the registry, in milliseconds; 0 keeps idle FSMs */
+    @Param({ "0", "60000" })
+    public long idleMillis;
+
+    private FSMDefinition definition;
+    private FSMRegistry<String> registry;
+    private ConcurrentHashMap<String, FSM> map;
+    private String[] keys;
+    private int[] messageIds;
+
+    @Setup
+    public void setup() throws Exception {
+        this.definition = new FSMDefinition(
+                ConfigGenerator.xml(100).getPath(), true);
+        this.registry = new FSMRegistry<>(this.definition,
+                ProcessBenchmark.ACCEPT, 64, Integer.MAX_VALUE,
+                this.idleMillis);
+        this.map = new ConcurrentHashMap<>();
+        this.keys = new String[this.sessions];
+        for (int i = 0; i < this.sessions; i++) {
+            this.keys[i] = "session-" + i;
+            this.registry.get(this.keys[i]);
+            this.map.put(this.keys[i], new FSM(this.definition,
+                    ProcessBenchmark.ACCEPT, null));
+        }
+        String[] messages = ConfigGenerator.messages(__Mask + 1, 42);
+        this.messageIds = new int[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            this.messageIds[i] = this.definition.getMessageId(messages[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int _next = (int) Thread.currentThread().getId() * 7919;
+    }
+
+    /* Session looked up in the registry */
+    @Benchmark
+    public int registry(Cursor c) {
+        int i = c._next++;
+        String key = this.keys[((i * 31) & 0x7fffffff) % this.sessions];
+        return this.registry.process(key, this.messageIds[i & __Mask]);
+    }
+
+    /* Session looked up in a map and processed under its lock */
+    @Benchmark
+    public int map(Cursor c) {
+        int i = c._next++;
+        String key = this.keys[((i * 31) & 0x7fffffff) % this.sessions];
+        FSM fsm = this.map.computeIfAbsent(key,
+                k -> new FSM(this.definition, ProcessBenchmark.ACCEPT, null));
+        synchronized (fsm) {
+            return fsm.process(this.messageIds[i & __Mask]);
+        }
+    }
+}
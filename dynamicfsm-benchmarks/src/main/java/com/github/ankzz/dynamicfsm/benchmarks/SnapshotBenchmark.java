@@ -0,0 +1,183 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.fsm.FSMSnapshot;
+import com.github.ankzz.dynamicfsm.fsm.FSMSnapshotCodec;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDefinitionCache;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares saving and restoring a session with Java serialization of the
+ * FSM and with a compact snapshot, on configurations of increasing size.
+ * The size of each form is printed once per trial.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({ "4", "1000", "10000" })
+    public int states;
+
+    private FSM fsm;
+    private FSMInstance instance;
+    private byte[] serialized;
+    private byte[] snapshot;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(this.buffer);
+
+    /**
+     * Shared data of a session
+     */
+    public static final class Session implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+        private final int count;
+
+        public Session(long id, int count) {
+            this.id = id;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Codec writing the fields of a session
+     */
+    public static final FSMSnapshotCodec<Session> CODEC =
+            new FSMSnapshotCodec<Session>() {
+        @Override
+        public void write(DataOutput out, Session data) throws IOException {
+            out.writeLong(data.id);
+            out.writeInt(data.count);
+        }
+
+        @Override
+        public Session read(DataInput in) throws IOException {
+            return new Session(in.readLong(), in.readInt());
+        }
+    };
+
+    @Setup
+    public void setup() throws Exception {
+        String path = ConfigGenerator.xml(this.states).getPath();
+        FSMDefinition def = FSMDefinitionCache.getDefault().get(path, true);
+        Session session = new Session(42, 7);
+        this.fsm = new FSM(def, ProcessBenchmark.ACCEPT, session);
+        this.fsm.process(def.getMessageId("NEXT"));
+        this.instance = new FSMInstance(def, session);
+        this.instance.process("NEXT");
+
+        this.serialized = serialize();
+        this.snapshot = snapshotFsm();
+        System.out.println("Serialized FSM: " + this.serialized.length
+                + " bytes, snapshot: " + this.snapshot.length + " bytes");
+    }
+
+    /* Java serialization of the FSM, shared data included */
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream _b = new ByteArrayOutputStream();
+        try (ObjectOutputStream _o = new ObjectOutputStream(_b)) {
+            _o.writeObject(this.fsm);
+            _o.writeObject(this.fsm.getShareData());
+        }
+        return _b.toByteArray();
+    }
+
+    /* Java deserialization of the FSM; actions have to be set again */
+    @Benchmark
+    public FSM deserialize() throws Exception {
+        try (ObjectInputStream _i = new ObjectInputStream(
+                new ByteArrayInputStream(this.serialized))) {
+            FSM _f = (FSM) _i.readObject();
+            _f.setShareData(_i.readObject());
+            _f.setDefaultFsmAction(ProcessBenchmark.ACCEPT);
+            return _f;
+        }
+    }
+
+    /* Snapshot of the FSM, shared data included */
+    @Benchmark
+    public byte[] snapshotFsm() throws IOException {
+        this.buffer.reset();
+        FSMSnapshot.write(this.fsm, this.out, CODEC);
+        return this.buffer.toByteArray();
+    }
+
+    /* Snapshot restored into an existing FSM */
+    @Benchmark
+    public FSM restoreFsm() throws IOException {
+        FSMSnapshot.restore(this.fsm, new DataInputStream(
+                new ByteArrayInputStream(this.snapshot)), CODEC);
+        return this.fsm;
+    }
+
+    /* Snapshot of a lightweight instance, shared data included */
+    @Benchmark
+    public byte[] snapshotInstance() throws IOException {
+        this.buffer.reset();
+        FSMSnapshot.write(this.instance, this.out, CODEC);
+        return this.buffer.toByteArray();
+    }
+
+    /* Snapshot restored as an instance of the cached definition */
+    @Benchmark
+    public FSMInstance restoreInstance() throws IOException {
+        return FSMSnapshot.restore(new DataInputStream(
+                new ByteArrayInputStream(this.snapshot)), CODEC);
+    }
+}
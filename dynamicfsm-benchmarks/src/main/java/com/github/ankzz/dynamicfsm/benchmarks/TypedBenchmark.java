@@ -0,0 +1,127 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.benchmarks;
+
+import com.github.ankzz.dynamicfsm.fsm.FSM;
+import com.github.ankzz.dynamicfsm.fsm.FSMInstance;
+import com.github.ankzz.dynamicfsm.fsm.FSMTyped;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMTypedDefinition;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures message processing by enum constants against processing by
+ * name, on the configuration of 4 states generated by
+ * {@link ConfigGenerator}.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypedBenchmark {
+
+    private static final int __Mask = 1023;
+
+    /**
+     * States of the generated configuration
+     */
+    public enum States { S0, S1, S2, S3 }
+
+    /**
+     * Messages of the generated configuration
+     */
+    public enum Messages { NEXT, PREV, SKIP, RESET }
+
+    private FSM fsm;
+    private FSMInstance instance;
+    private FSMTyped<States, Messages> typed;
+    private FSMTyped<States, Messages> adapted;
+    private String[] messages;
+    private Messages[] constants;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        FSMDefinition def = new FSMDefinition(
+                ConfigGenerator.xml(4).getPath(), true);
+        def.setDefaultAction(ProcessBenchmark.ACCEPT);
+        this.fsm = new FSM(def, ProcessBenchmark.ACCEPT);
+        this.instance = new FSMInstance(def);
+
+        FSMTypedDefinition<States, Messages> binding =
+                new FSMTypedDefinition<>(def, States.class, Messages.class);
+        FSMTypedDefinition<States, Messages> legacy =
+                new FSMTypedDefinition<>(def, States.class, Messages.class);
+        binding.setDefaultAction((cur, message, next, args) -> true);
+        this.typed = new FSMTyped<>(binding, null);
+        this.adapted = new FSMTyped<>(legacy, null);
+
+        this.messages = ConfigGenerator.messages(__Mask + 1, 42);
+        this.constants = new Messages[this.messages.length];
+        for (int i = 0; i < this.messages.length; i++) {
+            this.constants[i] = Messages.valueOf(this.messages[i]);
+        }
+    }
+
+    @Benchmark
+    public Object processFSM() {
+        return this.fsm.ProcessFSM(this.messages[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean processInstance() {
+        return this.instance.process(this.messages[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean processTyped() {
+        return this.typed.process(this.constants[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean processTypedByName() {
+        return this.typed.process(this.messages[this.cursor++ & __Mask]);
+    }
+
+    @Benchmark
+    public boolean processTypedLegacyAction() {
+        return this.adapted.process(this.constants[this.cursor++ & __Mask]);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.action;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>An abstract implementation of an asynchronous Action for a Finite State
+ * Machine (FSM).</p>
+ * 
+ * <p>The action method returns a future instead of a status, so that an
+ * action waiting for I/O does not hold the thread processing the message.
+ * When the message is processed with 
+ * {@link com.github.ankzz.dynamicfsm.fsm.FSM#processAsync(String)}, the 
+ * transition is committed and the remaining callbacks are invoked once the
+ * future completes. When the message is processed synchronously, the
+ * calling thread waits for the future.
+ * </p>
+ * 
+ * <p>A future completing exceptionally, or with null or false, fails the
+ * transition.</p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public abstract class FSMAsyncAction extends FSMAction {
+
+    /**
+     * 
+     * Abstract method; needs to be implemented
+     * 
+     * @param curState
+     * This value represents the Current State of the FSM.
+     * @param message
+     * This value specifies the Message for the FSM in Current state. 
+     * @param args 
+     * This value specifies the argument if any to be passed to the State Node.
+     * @param nextState 
+     * This value specifies the State to be transitioned to; iff, FSM transition
+     * happens.
+     * @return  
+     * Returns a future completing with true if action was successfully 
+     * executed, otherwise false
+     */
+    public abstract CompletableFuture<Boolean> actionAsync(String curState,
+            String message, String nextState, Object args);
+
+    /**
+     * Method invokes {@link #actionAsync(String, String, String, Object)} and
+     * waits for its completion.
+     * 
+     * @return  
+     * Returns true if action was successfully executed, otherwise false
+     */
+    @Override
+    public boolean action(String curState, String message, String nextState,
+            Object args) {
+        return Boolean.TRUE.equals(
+                actionAsync(curState, message, nextState, args).join());
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.action;
+
+/**
+ * <p>Condition of a guarded transition of a Finite State Machine (FSM),
+ * set by the name given by the guard attribute of its MESSAGE element,
+ * on a FSM with
+ * {@link com.github.ankzz.dynamicfsm.fsm.FSM#setGuard(String, FSMGuard)}, or
+ * on a definition with
+ * {@link com.github.ankzz.dynamicfsm.states.FSMDefinition#setGuard(String, FSMGuard)}.
+ * </p>
+ * 
+ * <p>Of the transitions of a message in a state, the first one whose guard
+ * holds is taken. A guard shall only read the shared data: it may be
+ * evaluated for transitions which are not taken.</p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@FunctionalInterface
+public interface FSMGuard {
+
+    /**
+     * 
+     * @param args
+     * This value specifies the argument if any to be passed to the State Node.
+     * @return
+     * Returns true if the transition may be taken, otherwise false
+     */
+    boolean guard(Object args);
+}
@@ -0,0 +1,60 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.action;
+
+/**
+ * <p>Action of a Finite State Machine (FSM) whose states and messages are
+ * enum constants, bound to a configuration by
+ * {@link com.github.ankzz.dynamicfsm.states.FSMTypedDefinition}.</p>
+ * 
+ * <p>The action method receives the constants of the transition instead of
+ * their names, so that it can switch over them without comparing strings.
+ * </p>
+ * 
+ * @param <S> Enum of the states
+ * @param <M> Enum of the messages
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@FunctionalInterface
+public interface FSMTypedAction<S extends Enum<S>, M extends Enum<M>> {
+
+    /**
+     * 
+     * @param curState
+     * This value represents the Current State of the FSM.
+     * @param message
+     * This value specifies the Message for the FSM in Current state. 
+     * @param nextState 
+     * This value specifies the State to be transitioned to; iff, FSM transition
+     * happens.
+     * @param args 
+     * This value specifies the argument if any to be passed to the State Node.
+     * @return  
+     * Returns true if action was successfully executed, otherwise false
+     */
+    boolean action(S curState, M message, S nextState, Object args);
+}
@@ -0,0 +1,116 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.common;
+
+import org.xml.sax.SAXException;
+
+/**
+ * File: FSMConfigHandler.java
+ * <p>
+ * Receives the content of a XML Configuration file, in document order,
+ * while it is being read by {@link FSMConfigReader}.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public interface FSMConfigHandler {
+    /**
+     * Method is called for each STATE element. All following transitions
+     * belong to this state, until next call of this method.
+     * 
+     * @param stateId Id of the state
+     * 
+     * @throws SAXException
+     * In case the handler rejects the state
+     */
+    public void state(String stateId) throws SAXException;
+
+    /**
+     * Method is called for each STATE element, as {@link #state(String)} 
+     * is, along with the terminal attribute of the element. By default, the
+     * attribute is ignored.
+     * 
+     * @param stateId Id of the state
+     * @param terminal True if the state is marked terminal
+     * 
+     * @throws SAXException
+     * In case the handler rejects the state
+     */
+    public default void state(String stateId, boolean terminal)
+            throws SAXException {
+        state(stateId);
+    }
+
+    /**
+     * Method is called for each STATE element, as 
+     * {@link #state(String, boolean)} is, along with the id of the STATE 
+     * element it is nested in. Once a nested STATE element ends, this method 
+     * is called again for the enclosing one, whose transitions may follow. 
+     * By default, nesting is ignored.
+     * 
+     * @param stateId Id of the state
+     * @param terminal True if the state is marked terminal
+     * @param parentId Id of the enclosing state, or null
+     * 
+     * @throws SAXException
+     * In case the handler rejects the state
+     */
+    public default void state(String stateId, boolean terminal,
+            String parentId) throws SAXException {
+        state(stateId, terminal);
+    }
+
+    /**
+     * Method is called for each MESSAGE element of the current state.
+     * 
+     * @param message Id of the message
+     * @param action Name of action/message configured for the transition
+     * @param nextState Next state which is attained on successful transition
+     * 
+     * @throws SAXException
+     * In case the handler rejects the transition
+     */
+    public void transition(String message, String action, String nextState)
+            throws SAXException;
+
+    /**
+     * Method is called for each MESSAGE element of the current state, as
+     * {@link #transition(String, String, String)} is, along with the guard
+     * attribute of the element. By default, the guard is ignored.
+     * 
+     * @param message Id of the message
+     * @param action Name of action/message configured for the transition
+     * @param nextState Next state which is attained on successful transition
+     * @param guard Name of the guard of the transition, or null
+     * 
+     * @throws SAXException
+     * In case the handler rejects the transition
+     */
+    public default void transition(String message, String action,
+            String nextState, String guard) throws SAXException {
+        transition(message, action, nextState);
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.xml.sax.SAXException;
+
+/**
+ * File: FSMConfigReader.java
+ * <p>
+ * This implementation reads the FSM configuration from a XML file in a
+ * single streaming pass, and hands each state and transition over to a
+ * {@link FSMConfigHandler} as soon as it is read. No document is built in
+ * memory, hence memory used while reading does not depend upon the size
+ * of the configuration file.
+ * </p>
+ * 
+ * <p>
+ * Expected XML Format:
+ * </p>
+ * <pre>
+ * &lt;FSM&gt;
+ *  &lt;STATE id="state"&gt;
+ *      &lt;MESSAGE id="message01" action="action01" nextState="next01"/&gt;
+ *      &lt;MESSAGE id="message02" action="action02" nextState="next02"/&gt;
+ *  &lt;/STATE&gt;
+ *  &lt;STATE id="end" terminal="true"&gt;
+ *  &lt;/STATE&gt;
+ * &lt;/FSM&gt;
+ * </pre>
+ * 
+ * <p>
+ * STATE elements can be nested; MESSAGE elements belong to the STATE element
+ * they are directly enclosed in:
+ * </p>
+ * <pre>
+ * &lt;STATE id="active"&gt;
+ *     &lt;MESSAGE id="cancel" action="cancel" nextState="end"/&gt;
+ *     &lt;STATE id="running"&gt;
+ *         &lt;MESSAGE id="pause" action="pause" nextState="paused"/&gt;
+ *     &lt;/STATE&gt;
+ * &lt;/STATE&gt;
+ * </pre>
+ * 
+ * <p>
+ * A STATE element may hold several MESSAGE elements with the same id, each
+ * with a guard attribute naming a condition; the first one whose condition
+ * holds is taken, and the one without guard, if any, when none holds:
+ * </p>
+ * <pre>
+ * &lt;STATE id="checkout"&gt;
+ *     &lt;MESSAGE id="pay" action="review" nextState="review" guard="large"/&gt;
+ *     &lt;MESSAGE id="pay" action="pay" nextState="paid"/&gt;
+ * &lt;/STATE&gt;
+ * </pre>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMConfigReader {
+
+    /*
+     * Section to mark the tags to be read from
+     * the XML Configuration file
+     */
+    private static final String __StateTag     = "STATE";
+    private static final String __IdTag        = "id";
+    private static final String __TerminalTag  = "terminal";
+    private static final String __ActionTag    = "action";
+    private static final String __NextStateTag = "nextState";
+    private static final String __GuardTag     = "guard";
+
+    private FSMConfigReader() {
+    }
+
+    /**
+     * Method reads the configuration from the specified stream. Stream is
+     * not closed by this method.
+     * 
+     * @param configFStream InputStream of a XML Configuration file
+     * @param handler Handler receiving states and transitions
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format, or the handler rejects
+     * the content
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public static void read(InputStream configFStream, FSMConfigHandler handler)
+            throws SAXException, IOException {
+        if (configFStream == null) {
+            throw new IOException("Configuration stream is null");
+        }
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+
+        XMLStreamReader r = null;
+        try {
+            r = factory.createXMLStreamReader(configFStream);
+            int depth = 0;
+            /* Enclosing STATE elements: id, terminal attribute and depth */
+            ArrayDeque<Object[]> states = new ArrayDeque<>();
+            while (r.hasNext()) {
+                switch (r.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        Object[] _s = states.peek();
+                        if (__StateTag.equals(r.getLocalName())) {
+                            String id = attribute(r, __IdTag);
+                            boolean terminal = "true".equals(
+                                    attribute(r, __TerminalTag));
+                            String parent = (_s == null) ? null : (String) _s[0];
+                            states.push(new Object[] { id, terminal, parent,
+                                    depth });
+                            handler.state(id, terminal, parent);
+                        } else if (_s != null && depth == (Integer) _s[3] + 1) {
+                            String guard = attribute(r, __GuardTag);
+                            handler.transition(attribute(r, __IdTag),
+                                    attribute(r, __ActionTag),
+                                    attribute(r, __NextStateTag),
+                                    guard.isEmpty() ? null : guard);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (!states.isEmpty()
+                                && depth == (Integer) states.peek()[3]) {
+                            states.pop();
+                            Object[] _e = states.peek();
+                            if (_e != null) {
+                                /* Transitions following belong to it again */
+                                handler.state((String) _e[0], (Boolean) _e[1],
+                                        (String) _e[2]);
+                            }
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new SAXException(e.getMessage(), e);
+        } finally {
+            if (r != null) {
+                try { r.close(); } catch (XMLStreamException e) { /* ignore */ }
+            }
+        }
+    }
+
+    /*
+     * Returns the value of an attribute of current element; empty if absent
+     */
+    private static String attribute(XMLStreamReader r, String name) {
+        String _v = r.getAttributeValue(null, name);
+        return (_v == null) ? "" : _v;
+    }
+}
@@ -25,15 +25,27 @@
 package com.github.ankzz.dynamicfsm.fsm;
 
 import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.action.FSMGuard;
+import com.github.ankzz.dynamicfsm.metrics.FSMMetrics;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMMessageHandle;
 import com.github.ankzz.dynamicfsm.states.FSMState;
 import com.github.ankzz.dynamicfsm.states.FSMStateAction;
 import com.github.ankzz.dynamicfsm.states.FSMStates;
 import com.github.ankzz.dynamicfsm.states.FSMTransitionInfo;
+import com.github.ankzz.dynamicfsm.states.FSMTransitionPlan;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.SAXException;
 
@@ -94,8 +106,21 @@ public class FSM implements java.io.Serializable {
      * * Actions
      */
     private FSMStates _states;
-    private transient FSMAction _action;
     private transient Object _sharedData;
+    private FSMConflictPolicy _conflictPolicy;
+    private transient volatile AsyncQueue _async;
+    private transient FSMMetrics _metrics;
+    private transient FSMMetrics.Counters _counters;
+    private transient int _samples;
+    private transient boolean _dwell;
+    private transient long _enteredAt;
+    private transient volatile FSMStates _pending;
+    private transient FSMReloadPolicy _reloadPolicy;
+    private transient FSMState _deferred;
+    private transient LinkedHashMap<List<?>, Consumer<FSMStates>> _bindings;
+    private transient FSMJournal _journal;
+    private transient long _journalId;
+    private transient FSMJournal _pendingJournal;
     
     /**
      * Constructor allows to create a FSM from a specified file-name
@@ -116,7 +141,7 @@ public class FSM implements java.io.Serializable {
     public FSM(String configFName, FSMAction action) 
             throws ParserConfigurationException, SAXException, IOException {
         this._states = new FSMStates(configFName, !"".equals(configFName));
-        this._action = action;
+        this._states.setDefaultAction(action);
     }
     
     /**
@@ -230,7 +255,7 @@ public class FSM implements java.io.Serializable {
     public FSM(InputStream configFStream, FSMAction action, Object sharedData) 
             throws ParserConfigurationException, SAXException, IOException {
         this._states = new FSMStates(configFStream);
-        this._action = action;
+        this._states.setDefaultAction(action);
         this._sharedData = sharedData;
     }
 
@@ -254,6 +279,34 @@ public class FSM implements java.io.Serializable {
             throws ParserConfigurationException, SAXException, IOException {
         this(configFStream, action, null);
     }
+
+    /**
+     * Constructor allows to create a FSM from an already compiled definition
+     * and specified Actions along with Shared data.
+     * No configuration is parsed; the definition can be shared by any
+     * number of FSMs.
+     * 
+     * @param definition Compiled definition of the FSM
+     * @param action    Specified actions for the given FSM
+     * @param sharedData Shared Data passed across in FSM
+     */
+    public FSM(FSMDefinition definition, FSMAction action, Object sharedData) {
+        this._states = new FSMStates(definition);
+        this._states.setDefaultAction(action);
+        this._sharedData = sharedData;
+    }
+
+    /**
+     * Constructor allows to create a FSM from an already compiled definition
+     * and specified Actions
+     * 
+     * @param definition Compiled definition of the FSM
+     * @param action    Specified actions for the given FSM
+     */
+    public FSM(FSMDefinition definition, FSMAction action) {
+        this(definition, action, null);
+    }
+
     /**
      * Method on receiving the Message Id, takes appropriate action
      * and on successful execution of the action Transitions to the new-state
@@ -264,74 +317,676 @@ public class FSM implements java.io.Serializable {
      * @return Returns the Current State as String
      */
     public Object ProcessFSM(String recvdMsgId) {
-        Object _r;
-        _r = this._states.getCurrentState().getNewTransitionMap().get(recvdMsgId);
+        if (this._pending != null) migrate();
+        if (this._conflictPolicy != null) {
+            return processConcurrent(recvdMsgId);
+        }
+        
+        FSMTransitionInfo _r;
+        _r = this._states.getCurrentState().getTransition(recvdMsgId);
+        _r = guard(this._states, _r);
         if ( null != _r) {
-            String[] _t = new String[2];
-            _t[0] = ((FSMTransitionInfo)_r).getActionName();
-            _t[1] = ((FSMTransitionInfo)_r).getNextState();
-            boolean status = true;
-            for (Object _f: this._states.getAllStates()) {
-                if( ((FSMState)_f).getCurrentState().equals((String)_t[1])) {
-                    /* Check if the action specific to each message exists
-                       If not, then in this case call the generic action function
-                    */
-                    FSMStateAction _a = ((FSMState)_f).getBeforeTransition();
-                    if (_a!=null) {
-                        _a.stateTransition(((FSMState)_f).getCurrentState(), 
-                                this._sharedData);
-                    }
-                    
-                    FSMAction act = ((FSMTransitionInfo)_r).getAction();
-                    if (act!=null) {
-                        /* If customized action is declared, call an entry function */
-                        act.entry(this._states.getCurrentState().getCurrentState(), 
-                                (String)_t[0], (String)_t[1], this._sharedData);
-                        status = act.action(this._states.getCurrentState().getCurrentState(), 
-                                (String)_t[0], (String)_t[1], this._sharedData);
-                    } else if ( null != this._action) {
-                        status = 
-                        this._action.action(this._states.getCurrentState().getCurrentState(), 
-                                (String)_t[0], (String)_t[1], this._sharedData);
-                    }
-                    
-                    if(status) {
-                        this._states.setCurrentState((FSMState)_f);
-                        
-                        if (act!=null) {
-                            act.afterTransition(this._states.getCurrentState().getCurrentState(), 
-                                (String)_t[0], (String)_t[1], this._sharedData);
-                        }else if ( null != this._action) {
-                            this._action.afterTransition(this._states.getCurrentState().getCurrentState(), 
-                                    (String)_t[0], (String)_t[1], this._sharedData);
-                        }
-                    }
+            FSMTransitionPlan _p = this._states.getPlan(_r);
+            if (_p != null) {
+                transition(_p);
+            }
+        } else if (this._metrics != null) {
+            rejected(currentStateId());
+        }
+        return _r;
+    }
 
-                    if (act!=null) {
-                        /* Exit function called irrespective of transition status */
-                        act.exit(this._states.getCurrentState().getCurrentState(), 
-                                (String)_t[0], (String)_t[1], this._sharedData);
-                    }
-                    
-                    FSMStateAction _b = ((FSMState)_f).getAfterTransition();
-                    if (_b!=null) {
-                        _b.stateTransition(((FSMState)_f).getCurrentState(), 
-                                this._sharedData);
-                    }
-                    
-                    break;
+    /**
+     * Method on receiving the Message Id, takes appropriate action
+     * and on successful execution of the action Transitions to the new-state
+     * as per the transition map, as {@link #ProcessFSM(String)} does.
+     * 
+     * @param recvdMsgId Received Message Id
+     * 
+     * @return Returns the id of the current state after processing the 
+     *         message, or -1 if the message is not handled in the current state
+     */
+    public int process(String recvdMsgId) {
+        return (ProcessFSM(recvdMsgId) == null) ? -1 : currentStateId();
+    }
+
+    /**
+     * Method on receiving the numeric Message Id, takes appropriate action
+     * and on successful execution of the action Transitions to the new-state
+     * as per the transition table of the definition.
+     * 
+     * The transition is looked up by state and message id, without any
+     * hashing or comparison of names.
+     * 
+     * @param messageId Numeric id of the received message, as returned by
+     *                  {@link FSMDefinition#getMessageId(String)}
+     * 
+     * @return Returns the id of the current state after processing the 
+     *         message, or -1 if the message is not handled in the current state
+     */
+    public int process(int messageId) {
+        if (this._pending != null) migrate();
+        if (this._conflictPolicy != null) {
+            return processConcurrent(messageId);
+        }
+        
+        FSMDefinition _d = this._states.getDefinition();
+        int _t = this._states.selectTransition(_d.getTransition(
+                this._states.getCurrentState().getStateId(), messageId),
+                this._sharedData);
+        if (_t < 0) {
+            if (this._metrics != null) rejected(currentStateId());
+            return -1;
+        }
+        
+        transition(this._states.getPlan(this._states.getTransitionInfo(_t)));
+        return this._states.getCurrentState().getStateId();
+    }
+
+    /**
+     * Method on receiving a message resolved by a 
+     * {@link com.github.ankzz.dynamicfsm.states.FSMMessageResolver}, takes 
+     * appropriate action and on successful execution of the action 
+     * Transitions to the new-state, as {@link #ProcessFSM(String)} does.
+     * 
+     * The transition is looked up by the id held by the handle, without any
+     * hashing or comparison of names.
+     * 
+     * @param message Handle of the received message
+     * 
+     * @return Returns the transition taken, or null if the message is not
+     *         handled in the current state
+     */
+    public Object ProcessFSM(FSMMessageHandle message) {
+        if (this._pending != null) migrate();
+        if (this._conflictPolicy != null) {
+            return processConcurrent(message.getName());
+        }
+        
+        FSMDefinition _d = this._states.getDefinition();
+        int _t = this._states.selectTransition(_d.getTransition(
+                this._states.getCurrentState().getStateId(),
+                message.getMessageId(_d)), this._sharedData);
+        if (_t < 0) {
+            if (this._metrics != null) rejected(currentStateId());
+            return null;
+        }
+        
+        FSMTransitionInfo _r = this._states.getTransitionInfo(_t);
+        transition(this._states.getPlan(_r));
+        return _r;
+    }
+
+    /*
+     * Transition taken as per the guards of the transitions of a message,
+     * the first of which is specified; null if no guard holds
+     */
+    private FSMTransitionInfo guard(FSMStates _st, FSMTransitionInfo _r) {
+        int _t = (_r == null) ? -1 : _r.getTransitionId();
+        if (_t < 0) return _r;
+        int _g = _st.selectTransition(_t, this._sharedData);
+        return (_g == _t) ? _r : (_g < 0) ? null : _st.getTransitionInfo(_g);
+    }
+
+    /*
+     * Takes the transition as per the specified plan
+     */
+    private void transition(FSMTransitionPlan _p) {
+        if (this._metrics != null) {
+            transitionMeasured(_p, this._metrics);
+            return;
+        }
+        
+        final FSMState _s = this._states.getCurrentState();
+        boolean status = _p.enter(_s.getCurrentState(), this._sharedData);
+        if(status) {
+            this._states.setCurrentState(_p.getTarget());
+        }
+        _p.leave(this._states.getCurrentState().getCurrentState(), status, 
+                this._sharedData);
+        if (status && this._journal != null) journal(_s, _p);
+    }
+
+    /*
+     * Takes the transition as per the specified plan, counting it in the
+     * counters of the FSM, and timing the action method and hooks of 
+     * sampled transitions and the visits of states started by them
+     */
+    private void transitionMeasured(FSMTransitionPlan _p, FSMMetrics _m) {
+        final FSMState _s = this._states.getCurrentState();
+        final int _t = _p.getTransition();
+        if (_t >= 0) this._counters.recordTransition(_t);
+        
+        final boolean timed = _m.isSampled(++this._samples);
+        boolean status = _p.enter(_s.getCurrentState(), this._sharedData, 
+                timed ? _m : null);
+        if (status) {
+            if (timed || this._dwell) {
+                long now = System.nanoTime();
+                if (this._dwell) {
+                    _m.recordDwell(_s.getStateId(), now - this._enteredAt);
                 }
+                this._dwell = timed;
+                this._enteredAt = now;
+            }
+            this._states.setCurrentState(_p.getTarget());
+        }
+        _p.leave(this._states.getCurrentState().getCurrentState(), status, 
+                this._sharedData, timed ? _m : null);
+        if (status && this._journal != null) journal(_s, _p);
+    }
+
+    /*
+     * Records a message not handled in the specified state, in default mode
+     */
+    private void rejected(int stateId) {
+        FSMMetrics.Counters _c = this._counters;
+        if (_c != null) _c.recordRejected(stateId);
+    }
+
+    /*
+     * Records a message not handled in the specified state, in concurrent
+     * mode or asynchronously
+     */
+    private void rejectedShared(int stateId) {
+        FSMMetrics _m = this._metrics;
+        if (_m != null) _m.recordRejected(stateId);
+    }
+
+    /*
+     * Records a transition taken in concurrent mode or asynchronously
+     */
+    private void taken(FSMTransitionPlan _p) {
+        FSMMetrics _m = this._metrics;
+        if (_m != null && _p.getTransition() >= 0) {
+            _m.recordTransition(_p.getTransition());
+        }
+    }
+
+    /*
+     * Appends a transition taken to the journal
+     */
+    private void journal(FSMState _s, FSMTransitionPlan _p) {
+        final FSMJournal _j = this._journal;
+        if (_j == null || _p.getTransition() < 0) return;
+        try {
+            /* Taken from _s, which may inherit it from the declaring state */
+            _j.append(this._journalId, _s.getStateId(), _j.getDefinition()
+                    .getTransitionMessageId(_p.getTransition()),
+                    _p.getTargetId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method enables or disables the journaling of the transitions taken by
+     * the FSM.
+     * 
+     * <p>
+     * Each transition committed is appended to the journal, under the
+     * specified instance id, once its action method and hooks have been
+     * invoked; a record which cannot be appended fails the processing of 
+     * the message with an {@link UncheckedIOException}, the transition being
+     * taken. When the FSM moves to a reloaded definition, it moves to the
+     * journal of that definition, given by the reloader, under the same
+     * instance id.
+     * </p>
+     * 
+     * @param journal Journal of the definition of this FSM, possibly shared
+     *                with other FSMs, or null to disable journaling
+     * @param instanceId Id of the FSM in the journal
+     */
+    public void setJournal(FSMJournal journal, long instanceId) {
+        if (journal != null && journal.getDefinition() != getDefinition()) {
+            throw new IllegalArgumentException(
+                    "Journal belongs to another definition");
+        }
+        if (journal != null && this._pending != null 
+                && this._pendingJournal == null) {
+            throw new IllegalStateException("FSM moves to a reloaded " 
+                    + "definition, for which no journal is set");
+        }
+        this._journalId = instanceId;
+        this._journal = journal;
+    }
+
+    /**
+     * 
+     * @return Returns the journal of the FSM, or null if disabled
+     */
+    public FSMJournal getJournal() { return this._journal; }
+
+    /**
+     * Method enables or disables the metrics of the FSM.
+     * 
+     * <p>
+     * Metrics count the transitions taken and the messages not handled.
+     * Messages processed synchronously in default mode also record, for 
+     * sampled transitions, the latency of action methods and hooks, and the
+     * time spent in each state. In default mode, the FSM counts into 
+     * counters of its own, merged with those of other FSMs on export. 
+     * Disabled metrics cost nothing.
+     * </p>
+     * 
+     * @param metrics Metrics of the definition of this FSM, possibly shared
+     *                with other FSMs, or null to disable metrics
+     */
+    public void setMetrics(FSMMetrics metrics) {
+        if (metrics != null && metrics.getDefinition() != getDefinition()) {
+            throw new IllegalArgumentException(
+                    "Metrics belong to another definition");
+        }
+        if (this._counters != null) this._metrics.detach(this._counters);
+        this._counters = (metrics == null) ? null : metrics.attach();
+        this._samples = 0;
+        this._dwell = false;
+        this._metrics = metrics;
+    }
+
+    /**
+     * 
+     * @return Returns the metrics of the FSM, or null if disabled
+     */
+    public FSMMetrics getMetrics() { return this._metrics; }
+
+    /**
+     * Method processes the message as {@link #ProcessFSM(String)} does, 
+     * without waiting for asynchronous action methods.
+     * 
+     * <p>
+     * If the action method of the transition is a
+     * {@link com.github.ankzz.dynamicfsm.action.FSMAsyncAction}, the new 
+     * state is committed, and after-transition, exit and hook methods are
+     * invoked, once the future returned by the action completes, by the 
+     * thread completing it. Messages processed with this method while a 
+     * transition is in flight are queued and processed in order, once the
+     * transition is completed; no thread waits meanwhile.
+     * </p>
+     * 
+     * <p>
+     * Messages shall not be processed with other methods while transitions
+     * started by this method are in flight.
+     * </p>
+     * 
+     * @param recvdMsgId Received Message Id
+     * 
+     * @return Returns a future completing, once the message is processed,
+     *         with the value {@link #ProcessFSM(String)} would return; or 
+     *         exceptionally with the failure of a guard or of the action
+     *         method
+     */
+    public CompletableFuture<Object> processAsync(String recvdMsgId) {
+        AsyncQueue _q = this._async;
+        if (_q == null) _q = asyncQueue();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        _q.submit(recvdMsgId, result);
+        return result;
+    }
+
+    private synchronized AsyncQueue asyncQueue() {
+        if (this._async == null) this._async = new AsyncQueue();
+        return this._async;
+    }
+
+    /*
+     * Starts the transition for the message; returns a future completing
+     * once the transition is completed
+     */
+    private CompletableFuture<?> startAsync(String recvdMsgId, 
+            CompletableFuture<Object> result) {
+        if (this._pending != null) migrate();
+        final FSMState _s = this._states.getCurrentState();
+        final FSMTransitionInfo _r;
+        try {
+            _r = guard(this._states, _s.getTransition(recvdMsgId));
+        } catch (RuntimeException e) {
+            /* Completed, so that the queue goes on with the next message */
+            result.completeExceptionally(e);
+            return result;
+        }
+        final FSMTransitionPlan _p = (null == _r) 
+                ? null : this._states.getPlan(_r);
+        if (_p == null) {
+            if (null == _r) rejectedShared(_s.getStateId());
+            result.complete(_r);
+            return result;
+        }
+        
+        final Object _d = this._sharedData;
+        CompletableFuture<Boolean> _f;
+        try {
+            _f = _p.enterAsync(_s.getCurrentState(), _d);
+        } catch (RuntimeException e) {
+            _f = new CompletableFuture<>();
+            _f.completeExceptionally(e);
+        }
+        return _f.handle((status, failure) -> {
+            boolean _ok = (failure == null) && Boolean.TRUE.equals(status);
+            try {
+                if (_ok) {
+                    taken(_p);
+                    this._states.setCurrentState(_p.getTarget());
+                }
+                _p.leave(this._states.getCurrentState().getCurrentState(), 
+                        _ok, _d);
+                if (_ok) journal(_s, _p);
+            } catch (RuntimeException e) {
+                if (failure == null) failure = e;
+            }
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(_r);
+            }
+            return null;
+        });
+    }
+
+    /*
+     * Queue of messages processed asynchronously; the counter holds the 
+     * number of queued messages, including the one in flight. The submitter
+     * which makes the counter leave 0 starts processing, and the completion
+     * of each transition starts the next one.
+     */
+    private final class AsyncQueue extends AtomicInteger {
+        private static final long serialVersionUID = 1L;
+
+        private final ConcurrentLinkedQueue<Object[]> _queue = 
+                new ConcurrentLinkedQueue<>();
+
+        private void submit(String recvdMsgId, 
+                CompletableFuture<Object> result) {
+            this._queue.offer(new Object[] { recvdMsgId, result });
+            if (getAndIncrement() == 0) drain();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            do {
+                Object[] _m = this._queue.poll();
+                CompletableFuture<?> _f = startAsync((String) _m[0], 
+                        (CompletableFuture<Object>) _m[1]);
+                if (!_f.isDone()) {
+                    /* Resumed by the thread completing the transition */
+                    _f.whenComplete((r, e) -> {
+                        if (decrementAndGet() > 0) drain();
+                    });
+                    return;
+                }
+            } while (decrementAndGet() > 0);
+        }
+    }
+
+    /**
+     * Method processes a batch of messages, in order, as 
+     * {@link #ProcessFSM(String)} would. The id of the state reached after
+     * each message and the indices of the messages not handled are recorded
+     * in the specified result, which can be reused from one batch to the 
+     * next. Processing stops early as configured by the result.
+     * 
+     * @param messages Received Message Ids
+     * @param result Result of the batch; cleared before processing
+     * 
+     * @return Returns the number of messages processed
+     */
+    public int processAll(String[] messages, FSMBatchResult result) {
+        if (this._pending != null) migrate();
+        if (!result.begin(messages.length, currentStateId())) return 0;
+        final FSMStates _st = this._states;
+        final boolean concurrent = (this._conflictPolicy != null);
+        for (String _m : messages) {
+            if (!(concurrent ? step(_m, result) : step(_st, _m, result))) break;
+        }
+        return result.getProcessedCount();
+    }
+
+    /**
+     * Method processes the messages of the specified iterator, in order, as
+     * {@link #ProcessFSM(String)} would. The id of the state reached after
+     * each message and the indices of the messages not handled are recorded
+     * in the specified result, which can be reused from one batch to the 
+     * next. Processing stops early as configured by the result, in which 
+     * case the remaining messages are not consumed from the iterator.
+     * 
+     * @param messages Received Message Ids
+     * @param result Result of the batch; cleared before processing
+     * 
+     * @return Returns the number of messages processed
+     */
+    public int processAll(Iterator<String> messages, FSMBatchResult result) {
+        if (this._pending != null) migrate();
+        if (!result.begin(0, currentStateId())) return 0;
+        final FSMStates _st = this._states;
+        final boolean concurrent = (this._conflictPolicy != null);
+        while (messages.hasNext()) {
+            String _m = messages.next();
+            if (!(concurrent ? step(_m, result) : step(_st, _m, result))) break;
+        }
+        return result.getProcessedCount();
+    }
+
+    /**
+     * Method processes a batch of numeric messages, in order, as 
+     * {@link #process(int)} would. The id of the state reached after each
+     * message and the indices of the messages not handled are recorded in
+     * the specified result, which can be reused from one batch to the next.
+     * Processing stops early as configured by the result.
+     * 
+     * @param messageIds Numeric ids of the received messages, as returned by
+     *                   {@link FSMDefinition#getMessageId(String)}
+     * @param result Result of the batch; cleared before processing
+     * 
+     * @return Returns the number of messages processed
+     */
+    public int processAll(int[] messageIds, FSMBatchResult result) {
+        if (this._pending != null) migrate();
+        if (!result.begin(messageIds.length, currentStateId())) return 0;
+        if (this._conflictPolicy != null) {
+            for (int _m : messageIds) {
+                int _n = processConcurrent(_m);
+                if (!result.add(_n < 0 ? currentStateId() : _n, _n >= 0)) break;
+            }
+            return result.getProcessedCount();
+        }
+        
+        final FSMStates _st = this._states;
+        final FSMDefinition _d = _st.getDefinition();
+        int _s = currentStateId();
+        for (int _m : messageIds) {
+            int _t = _st.selectTransition(_d.getTransition(_s, _m),
+                    this._sharedData);
+            if (_t >= 0) {
+                transition(this._states.getPlan(
+                        this._states.getTransitionInfo(_t)));
+                _s = currentStateId();
+            } else if (this._metrics != null) {
+                rejected(_s);
+            }
+            if (!result.add(_s, _t >= 0)) break;
+        }
+        return result.getProcessedCount();
+    }
+
+    /*
+     * Processes one message of a batch in concurrent mode; returns false if
+     * the batch shall stop
+     */
+    private boolean step(String recvdMsgId, FSMBatchResult result) {
+        boolean handled = (processConcurrent(recvdMsgId) != null);
+        return result.add(currentStateId(), handled);
+    }
+
+    /*
+     * Processes one message of a batch with the FSM States read once for
+     * the batch; returns false if the batch shall stop
+     */
+    private boolean step(FSMStates _st, String recvdMsgId,
+            FSMBatchResult result) {
+        final FSMState _s = _st.getCurrentState();
+        final FSMTransitionInfo _r = guard(_st, _s.getTransition(recvdMsgId));
+        if (null == _r) {
+            if (this._metrics != null) rejected(_s.getStateId());
+            return result.add(_s.getStateId(), false);
+        }
+        FSMTransitionPlan _p = _st.getPlan(_r);
+        if (_p != null) transition(_p);
+        return result.add(_st.getCurrentState().getStateId(), true);
+    }
+
+    private int currentStateId() {
+        return currentState().getStateId();
+    }
+
+    private FSMState currentState() {
+        FSMState _s = this._states.getCurrentState();
+        if (_s == null) {
+            /* Read the previous states of a FSM moved by another thread */
+            migrate();
+            _s = this._states.getCurrentState();
+        }
+        return _s;
+    }
+
+    /*
+     * Processes the message in concurrent mode; returns the transition
+     * information, or null if the message is not handled or is rejected
+     */
+    private Object processConcurrent(String recvdMsgId) {
+        for (;;) {
+            final FSMStates _st = this._states;
+            final FSMState _s = _st.getCurrentState();
+            if (_s == null) {
+                migrate();
+                continue;
+            }
+            FSMTransitionInfo _r = guard(_st, _s.getTransition(recvdMsgId));
+            if (null == _r) {
+                rejectedShared(_s.getStateId());
+                return null;
+            }
+            
+            FSMTransitionPlan _p = _st.getPlan(_r);
+            if (_p == null || transition(_st, _s, _p)) return _r;
+            if (this._conflictPolicy == FSMConflictPolicy.REJECT) {
+                rejectedShared(_s.getStateId());
+                return null;
             }
         }
-        return _r;
+    }
+    
+    /*
+     * Processes the message in concurrent mode; returns the id of the state
+     * reached, or -1 if the message is not handled or is rejected
+     */
+    private int processConcurrent(int messageId) {
+        for (;;) {
+            final FSMStates _st = this._states;
+            final FSMState _s = _st.getCurrentState();
+            if (_s == null) {
+                migrate();
+                continue;
+            }
+            int _t = _st.selectTransition(_st.getDefinition().getTransition(
+                    _s.getStateId(), messageId), this._sharedData);
+            if (_t < 0) {
+                rejectedShared(_s.getStateId());
+                return -1;
+            }
+            
+            FSMTransitionPlan _p = _st.getPlan(_st.getTransitionInfo(_t));
+            if (transition(_st, _s, _p)) {
+                return currentStateId();
+            }
+            if (this._conflictPolicy == FSMConflictPolicy.REJECT) {
+                rejectedShared(_s.getStateId());
+                return -1;
+            }
+        }
+    }
+    
+    /*
+     * Takes the transition as per the specified plan from the specified 
+     * state of the specified FSM States, committing the new state only if
+     * the FSM is still in that state. Returns false if the state has been
+     * changed by another thread, in which case the transition is completed
+     * as a failed one.
+     */
+    private boolean transition(FSMStates _st, FSMState _s, 
+            FSMTransitionPlan _p) {
+        boolean status = _p.enter(_s.getCurrentState(), this._sharedData);
+        boolean committed = !status 
+                || _st.compareAndSetCurrentState(_s, _p.getTarget());
+        status = status && committed;
+        if (status) taken(_p);
+        _p.leave(status ? _p.getNextState() : _s.getCurrentState(), status, 
+                this._sharedData);
+        if (status && this._journal != null) journal(_s, _p);
+        return committed;
     }
 
+    /**
+     * Method enables or disables the concurrent mode of the FSM.
+     * 
+     * <p>
+     * By default a FSM shall be fed by one thread at a time. In concurrent 
+     * mode messages can be processed by several threads at the same time,
+     * without any lock: the new state is committed with compare-and-set, 
+     * only if no other thread has changed the state while the action was
+     * executed. A transition which loses such a race is completed as if its
+     * action had failed, then the message is retried or rejected as per the
+     * specified policy.
+     * </p>
+     * 
+     * <p>
+     * Concurrent mode shall be set before the FSM is shared among threads.
+     * Actions and hooks are invoked concurrently and shall be thread-safe.
+     * </p>
+     * 
+     * @param policy Behavior on conflicting transitions, or null to
+     *               disable concurrent mode
+     */
+    public void setConflictPolicy(FSMConflictPolicy policy) {
+        this._conflictPolicy = policy;
+        this._states.setConcurrent(policy != null);
+        FSMStates _n = this._pending;
+        if (_n != null) _n.setConcurrent(policy != null);
+    }
+    
+    /**
+     * 
+     * @return Returns the behavior on conflicting transitions, or null if 
+     *         the FSM is not in concurrent mode
+     */
+    public FSMConflictPolicy getConflictPolicy() { return this._conflictPolicy; }
+
     /**
      * Method returns the current state of the FSM
      * 
      * @return Current state of the FSM
      */
-    public String getCurrentState() { return this._states.getCurrentState().getCurrentState(); }
+    public String getCurrentState() { return currentState().getCurrentState(); }
+    
+    /**
+     * Method returns the id of the current state of the FSM
+     * 
+     * @return Id of the current state, as defined by the definition
+     */
+    public int getCurrentStateId() { return currentStateId(); }
+    
+    /**
+     * Method allows to move the FSM to the specified state, without invoking
+     * any action.
+     * 
+     * @param stateId Id of the state, as defined by the definition
+     */
+    public void setCurrentStateId(int stateId) {
+        if (this._pending != null) migrate();
+        if (stateId < 0 || stateId >= getDefinition().getStateCount()) {
+            throw new IllegalArgumentException("Invalid state id: " + stateId);
+        }
+        this._states.setCurrentState(this._states.getState(stateId));
+    }
     
     /**
      * Method sets the shared data for the FSM
@@ -342,6 +997,12 @@ public class FSM implements java.io.Serializable {
      */
     public void setShareData(Object data) { this._sharedData = data; }
     
+    /**
+     * 
+     * @return Returns the shared data of the FSM
+     */
+    public Object getShareData() { return this._sharedData; }
+    
     /**
      *
      * @param states
@@ -355,7 +1016,9 @@ public class FSM implements java.io.Serializable {
      */
     public void setAction(ArrayList<String> states, String message, 
             FSMAction act) {
-        _states.setAction(states, message, act);
+        final ArrayList<String> l = new ArrayList<>(states);
+        bind(Arrays.asList("action", l, message),
+                s -> s.setAction(l, message, act));
     }
     
     /**
@@ -383,35 +1046,182 @@ public class FSM implements java.io.Serializable {
      * Action associated with the message
      */
     public void setAction(String message, FSMAction act) {
-        _states.setAction(message, act);
+        bind(Arrays.asList("action", null, message),
+                s -> s.setAction(message, act));
     }
 
     public void setStatesBeforeTransition(String state, FSMStateAction act) {
-        _states.setStateBeforeTransition(state, act);
+        bind(Arrays.asList("before", Arrays.asList(state)),
+                s -> s.setStateBeforeTransition(state, act));
     }
     
     public void setStatesBeforeTransition(ArrayList<String> states, 
             FSMStateAction act) {
-        _states.setStateBeforeTransition(states, act);
+        final ArrayList<String> l = 
+                (states == null) ? null : new ArrayList<>(states);
+        bind(Arrays.asList("before", l),
+                s -> s.setStateBeforeTransition(l, act));
     }
 
     public void setStatesBeforeTransition(FSMStateAction act) {
         ArrayList<String> l = null;
-        _states.setStateBeforeTransition(l, act);
+        setStatesBeforeTransition(l, act);
     }
     
     public void setStatesAfterTransition(String state, FSMStateAction act) {
-        _states.setStateAfterTransition(state, act);
+        bind(Arrays.asList("after", Arrays.asList(state)),
+                s -> s.setStateAfterTransition(state, act));
     }
     
     public void setStatesAfterTransition(ArrayList<String> states, 
             FSMStateAction act) {
-        _states.setStateAfterTransition(states, act);
+        final ArrayList<String> l = 
+                (states == null) ? null : new ArrayList<>(states);
+        bind(Arrays.asList("after", l),
+                s -> s.setStateAfterTransition(l, act));
     }
 
     public void setStatesAfterTransition(FSMStateAction act) {
         ArrayList<String> l = null;
-        _states.setStateAfterTransition(l, act);
+        setStatesAfterTransition(l, act);
+    }
+
+    /**
+     * Method sets the condition of the transitions guarded by the specified
+     * guard name. Guards are set on this FSM only, as actions are, and are
+     * set again on a reloaded definition.
+     * 
+     * @param guard
+     * Guard name, as per the guard attribute of MESSAGE elements
+     * 
+     * @param condition
+     * Condition evaluated over the shared data of the FSM
+     */
+    public void setGuard(String guard, FSMGuard condition) {
+        bind(Arrays.asList("guard", guard),
+                s -> s.setGuard(guard, condition));
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition, as defined by the definition
+     * 
+     * @return Returns the number of times the guard of the transition held
+     *         for this FSM, since it moved to its current definition
+     */
+    public long getGuardHits(int transition) {
+        return this._states.getGuardHits(transition);
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition, as defined by the definition
+     * 
+     * @return Returns the number of times the guard of the transition did
+     *         not hold for this FSM, since it moved to its current definition
+     */
+    public long getGuardMisses(int transition) {
+        return this._states.getGuardMisses(transition);
+    }
+
+    /*
+     * Applies the binding of actions or hooks to the states of the FSM, and
+     * records it so that it is applied again on a reloaded definition. A
+     * binding replaces the one recorded with the same key, which it
+     * overrides, so that rebinding does not grow the record. A binding
+     * rejected by the states of the FSM is not recorded.
+     */
+    private synchronized void bind(List<?> key, Consumer<FSMStates> binding) {
+        binding.accept(this._states);
+        if (this._bindings == null) this._bindings = new LinkedHashMap<>();
+        this._bindings.remove(key);
+        this._bindings.put(key, binding);
+        FSMStates _n = this._pending;
+        if (_n != null) binding.accept(_n);
+    }
+
+    /*
+     * Publishes the specified definition, to which the FSM moves at the next
+     * message processed, along with the specified journal of the definition
+     * if the FSM is journaled. States are built, and actions and hooks 
+     * bound, by the calling thread; a binding rejected by the new states, 
+     * e.g. for a message now inherited from an enclosing state, is dropped
+     * for this definition, and kept for the next ones.
+     */
+    void reload(FSMDefinition definition, FSMReloadPolicy policy,
+            FSMJournal journal) {
+        FSMStates _n = new FSMStates(definition);
+        synchronized (this) {
+            _n.setDefaultAction(this._states.getDefaultAction());
+            _n.setConcurrent(this._conflictPolicy != null);
+            if (this._bindings != null) {
+                for (Consumer<FSMStates> _b : this._bindings.values()) {
+                    try {
+                        _b.accept(_n);
+                    } catch (IllegalArgumentException e) {
+                        /* Dropped, as actions of removed messages are */
+                    }
+                }
+            }
+            this._reloadPolicy = policy;
+            this._pendingJournal = journal;
+            this._deferred = null;
+            this._pending = _n;
+        }
+    }
+
+    /*
+     * Moves the FSM to the published definition, in the state of the same
+     * name, as per the reload policy. The move deferred in a state is not 
+     * looked up again while the FSM stays in that state; the state is read
+     * after the pending definition, which is published after the deferred
+     * state is cleared.
+     */
+    private void migrate() {
+        if (this._states.getCurrentState() != this._deferred) migrateNow();
+    }
+
+    private synchronized void migrateNow() {
+        final FSMStates _n = this._pending;
+        if (_n == null) return;
+        final FSMStates _o = this._states;
+        final FSMDefinition _d = _n.getDefinition();
+        final boolean defer = (this._reloadPolicy == FSMReloadPolicy.DEFER);
+        FSMState _s = _o.getCurrentState();
+        if (defer && _d.getStateId(_s.getCurrentState()) < 0) {
+            this._deferred = _s;
+            return;
+        }
+        
+        /* Transitions still taken on the previous states fail to commit */
+        while (!_o.compareAndSetCurrentState(_s, null)) {
+            _s = _o.getCurrentState();
+        }
+        int _i = _d.getStateId(_s.getCurrentState());
+        if (_i < 0) {
+            if (defer) {
+                _o.setCurrentState(_s);
+                this._deferred = _s;
+                return;
+            }
+            _i = _d.getInitialState();
+        }
+        _n.setCurrentState(_n.getState(_i));
+        this._states = _n;
+        setMetrics(null);
+        final FSMJournal _j = (this._journal == null) 
+                ? null : this._pendingJournal;
+        this._journal = _j;
+        this._pendingJournal = null;
+        this._deferred = null;
+        this._pending = null;
+        if (_j != null) {
+            try {
+                _j.appendSwitch(this._journalId, _i);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
     /**
@@ -421,10 +1231,21 @@ public class FSM implements java.io.Serializable {
      */
     public List getAllStates() { return _states.getAllStates(); }
  
+    /**
+     * Method returns the compiled definition of the FSM
+     * 
+     * @return Returns the definition the FSM is created from
+     */
+    public FSMDefinition getDefinition() { return _states.getDefinition(); }
+ 
     /**
      * 
      * @param act 
      * Default Action method for the FSM 
      */
-    public void setDefaultFsmAction(FSMAction act) { _action = act; }    
+    public synchronized void setDefaultFsmAction(FSMAction act) {
+        _states.setDefaultAction(act);
+        FSMStates _n = this._pending;
+        if (_n != null) _n.setDefaultAction(act);
+    }    
 }
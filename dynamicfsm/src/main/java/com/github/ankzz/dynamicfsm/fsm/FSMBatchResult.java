@@ -0,0 +1,233 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Class holds the trace of a batch of messages processed by
+ * {@link FSM#processAll(String[], FSMBatchResult)} and the conditions on
+ * which the batch stops early.
+ * 
+ * <p>
+ * A result is meant to be reused from one batch to the next: its buffers
+ * are cleared, not reallocated, and only grow when a batch is longer than
+ * any previous one. Processing a batch therefore does not allocate per
+ * message.
+ * </p>
+ * 
+ * <pre>
+ *  FSMBatchResult result = new FSMBatchResult(1024);
+ *  result.addStopState(definition.getStateId("STOP"));
+ *  result.setStopOnReject(true);
+ *  
+ *  fsm.processAll(messages, result);
+ *  for (int i = 0; i &lt; result.getProcessedCount(); i++) {
+ *      ... result.getState(i) ...
+ *  }
+ * </pre>
+ * 
+ * <p>
+ * A result is not thread-safe.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMBatchResult {
+
+    private final BitSet _stopStates = new BitSet();
+    private boolean _stopOnReject;
+
+    private int[] _states;
+    private int _count;
+    private int[] _rejected;
+    private int _rejectedCount;
+    private boolean _stopped;
+
+    /**
+     * Constructor creates a result with buffers sized for 64 messages.
+     */
+    public FSMBatchResult() {
+        this(64);
+    }
+
+    /**
+     * 
+     * @param capacity Expected number of messages per batch
+     */
+    public FSMBatchResult(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this._states = new int[capacity];
+        this._rejected = new int[Math.min(capacity, 16)];
+    }
+
+    /**
+     * Method adds a state on which processing of a batch stops. Processing
+     * stops once a message leads to the state, or does not start if the
+     * FSM is already in the state.
+     * 
+     * @param stateId Id of the state, as defined by the definition of the FSM
+     */
+    public void addStopState(int stateId) {
+        if (stateId < 0) {
+            throw new IllegalArgumentException("Invalid state id: " + stateId);
+        }
+        this._stopStates.set(stateId);
+    }
+
+    /**
+     * Method removes all stop states.
+     */
+    public void clearStopStates() { this._stopStates.clear(); }
+
+    /**
+     * 
+     * @param stop True to stop processing of a batch on the first message
+     *             which is not handled in the current state
+     */
+    public void setStopOnReject(boolean stop) { this._stopOnReject = stop; }
+
+    /**
+     * 
+     * @return Returns true if processing stops on the first message which is
+     *         not handled in the current state
+     */
+    public boolean isStopOnReject() { return this._stopOnReject; }
+
+    /**
+     * 
+     * @return Returns the number of messages of the last batch which have
+     *         been processed, including the rejected ones
+     */
+    public int getProcessedCount() { return this._count; }
+
+    /**
+     * 
+     * @param index Index of the message within the batch
+     * 
+     * @return Returns the id of the state of the FSM after processing the 
+     *         message
+     */
+    public int getState(int index) {
+        if (index < 0 || index >= this._count) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        return this._states[index];
+    }
+
+    /**
+     * Method returns the buffer of visited states. Only the first 
+     * {@link #getProcessedCount()} entries are valid; the buffer is reused
+     * by the next batch.
+     * 
+     * @return Returns the ids of the states of the FSM after each message
+     */
+    public int[] getStates() { return this._states; }
+
+    /**
+     * 
+     * @return Returns the number of messages of the last batch which were
+     *         not handled in the state they were received in
+     */
+    public int getRejectedCount() { return this._rejectedCount; }
+
+    /**
+     * 
+     * @param i Rank of the rejected message
+     * 
+     * @return Returns the index within the batch of the i-th rejected message
+     */
+    public int getRejectedIndex(int i) {
+        if (i < 0 || i >= this._rejectedCount) {
+            throw new IndexOutOfBoundsException("Invalid index: " + i);
+        }
+        return this._rejected[i];
+    }
+
+    /**
+     * Method returns the buffer of rejected indices. Only the first 
+     * {@link #getRejectedCount()} entries are valid; the buffer is reused
+     * by the next batch.
+     * 
+     * @return Returns the indices of the rejected messages within the batch
+     */
+    public int[] getRejectedIndices() { return this._rejected; }
+
+    /**
+     * 
+     * @return Returns true if the last batch stopped on a stop state or a
+     *         rejected message; messages after it were not processed
+     */
+    public boolean isStopped() { return this._stopped; }
+
+    /*
+     * Clears the result for a new batch; returns false if the batch shall
+     * not be started because the FSM is in a stop state
+     */
+    boolean begin(int length, int stateId) {
+        if (this._states.length < length) {
+            this._states = new int[length];
+        }
+        this._count = 0;
+        this._rejectedCount = 0;
+        this._stopped = stateId >= 0 && this._stopStates.get(stateId);
+        return !this._stopped;
+    }
+
+    /*
+     * Records the state after the next message; returns false if the batch
+     * shall stop
+     */
+    boolean add(int stateId, boolean handled) {
+        int i = this._count;
+        if (i == this._states.length) {
+            /* Only for batches of unknown length */
+            this._states = Arrays.copyOf(this._states, Math.max(16, i * 2));
+        }
+        this._states[i] = stateId;
+        this._count = i + 1;
+
+        if (!handled) {
+            if (this._rejectedCount == this._rejected.length) {
+                this._rejected = Arrays.copyOf(this._rejected,
+                        Math.max(16, this._rejectedCount * 2));
+            }
+            this._rejected[this._rejectedCount++] = i;
+            if (this._stopOnReject) {
+                this._stopped = true;
+                return false;
+            }
+        }
+        if (this._stopStates.get(stateId)) {
+            this._stopped = true;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMTransitionPlan;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class implements a columnar engine advancing a large number of instances
+ * of one definition
+ * 
+ * <p>
+ * The current states of all instances are held in a single 
+ * <code>int[]</code>, indexed by instance. Events, pairs of instance index
+ * and message id, are applied in batches: events are grouped by ranges of
+ * instances, in their original order, and the ranges are processed in
+ * parallel on a {@link ForkJoinPool}. Events of a given instance are
+ * therefore applied in order, by one thread.
+ * </p>
+ * 
+ * <pre>
+ *  FSMBulkEngine engine = new FSMBulkEngine(definition, 1000000);
+ *  engine.apply(instances, messageIds, count);
+ *  int state = engine.getState(42);
+ * </pre>
+ * 
+ * <p>
+ * Action methods and hooks bound to the definition are invoked only for 
+ * the transitions they are configured for, with the shared data of the 
+ * instance if any; transitions without callbacks only update the state.
+ * Callbacks are invoked concurrently for instances of different ranges and
+ * shall be thread-safe.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMBulkEngine {
+
+    private final FSMDefinition _definition;
+    private final int[] _states;
+    private final ForkJoinPool _pool;
+    private final int _partitions;
+    private Object[] _sharedData;
+
+    /* Buffers reused by batches */
+    private final int[] _start;
+    private final long[] _handled;
+    private int[] _order = new int[0];
+
+    /**
+     * Constructor creates an engine running on the common pool, with all
+     * instances in the initial state of the definition.
+     * 
+     * @param definition Definition of the instances
+     * @param instances Number of instances
+     */
+    public FSMBulkEngine(FSMDefinition definition, int instances) {
+        this(definition, instances, ForkJoinPool.commonPool(),
+                ForkJoinPool.commonPool().getParallelism() * 4);
+    }
+
+    /**
+     * Constructor creates an engine running on the specified pool, with all
+     * instances in the initial state of the definition.
+     * 
+     * @param definition Definition of the instances
+     * @param instances Number of instances
+     * @param pool Pool applying the ranges of instances
+     * @param partitions Number of ranges the instances are split in; 1 
+     *                   applies batches in the calling thread
+     */
+    public FSMBulkEngine(FSMDefinition definition, int instances,
+            ForkJoinPool pool, int partitions) {
+        if (instances < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid number of instances: " + instances);
+        }
+        if (partitions < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid number of partitions: " + partitions);
+        }
+        this._definition = definition;
+        this._states = new int[instances];
+        this._pool = pool;
+        this._partitions = Math.max(1, Math.min(partitions, instances));
+        this._start = new int[this._partitions + 1];
+        this._handled = new long[this._partitions];
+        Arrays.fill(this._states, definition.getInitialState());
+    }
+
+    /**
+     * Method applies a batch of events. The i-th event delivers message
+     * <code>messageIds[i]</code> to instance <code>instances[i]</code>; 
+     * events are applied in order for each instance. Events whose message is
+     * not handled in the current state of their instance are ignored.
+     * 
+     * @param instances Instance index of each event
+     * @param messageIds Numeric message id of each event, as returned by
+     *                   {@link FSMDefinition#getMessageId(String)}
+     * @param count Number of events
+     * 
+     * @return Returns the number of events which were handled
+     */
+    public synchronized long apply(int[] instances, int[] messageIds,
+            int count) {
+        if (count > instances.length || count > messageIds.length) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        if (this._partitions == 1) {
+            for (int e = 0; e < count; e++) check(instances[e]);
+            return applyRange(instances, messageIds, null, 0, count);
+        }
+
+        /* Group events by range of instances, keeping their order */
+        int[] _s = this._start;
+        Arrays.fill(_s, 0);
+        for (int e = 0; e < count; e++) {
+            _s[partition(check(instances[e])) + 1]++;
+        }
+        for (int p = 0; p < this._partitions; p++) _s[p + 1] += _s[p];
+        if (this._order.length < count) this._order = new int[count];
+        int[] _o = this._order;
+        for (int e = 0; e < count; e++) {
+            _o[_s[partition(instances[e])]++] = e;
+        }
+        /* Cursors now hold the end of each range; shift them back */
+        System.arraycopy(_s, 0, _s, 1, this._partitions);
+        _s[0] = 0;
+
+        this._pool.invoke(new Batch(instances, messageIds, 0,
+                this._partitions));
+        long handled = 0;
+        for (long h : this._handled) handled += h;
+        return handled;
+    }
+
+    private int check(int instance) {
+        if (instance < 0 || instance >= this._states.length) {
+            throw new IndexOutOfBoundsException(
+                    "Invalid instance: " + instance);
+        }
+        return instance;
+    }
+
+    private int partition(int instance) {
+        return (int) ((long) instance * this._partitions / this._states.length);
+    }
+
+    /*
+     * Applies the events from..to, in the order specified by the order
+     * array if any
+     */
+    private long applyRange(int[] instances, int[] messageIds, int[] order,
+            int from, int to) {
+        final FSMDefinition _d = this._definition;
+        final int[] _st = this._states;
+        final Object[] _sd = this._sharedData;
+        long handled = 0;
+        for (int i = from; i < to; i++) {
+            int e = (order == null) ? i : order[i];
+            int _n = instances[e];
+            Object data = (_sd == null) ? null : _sd[_n];
+            int _t = _d.getTransition(_st[_n], messageIds[e], data);
+            if (_t < 0) continue;
+
+            handled++;
+            FSMTransitionPlan _p = _d.getPlan(_t);
+            if (!_p.hasCallbacks()) {
+                _st[_n] = _p.getTargetId();
+                continue;
+            }
+            boolean status = _p.enter(_d.getStateName(_st[_n]), data);
+            if (status) {
+                _st[_n] = _p.getTargetId();
+            }
+            _p.leave(_d.getStateName(_st[_n]), status, data);
+        }
+        return handled;
+    }
+
+    /**
+     * 
+     * @param instance Index of the instance
+     * 
+     * @return Returns the id of the current state of the instance
+     */
+    public int getState(int instance) { return this._states[instance]; }
+
+    /**
+     * Method allows to move an instance to the specified state, without
+     * invoking any action.
+     * 
+     * @param instance Index of the instance
+     * @param stateId Id of the state, as defined by the definition
+     */
+    public void setState(int instance, int stateId) {
+        if (stateId < 0 || stateId >= this._definition.getStateCount()) {
+            throw new IllegalArgumentException("Invalid state id: " + stateId);
+        }
+        this._states[instance] = stateId;
+    }
+
+    /**
+     * Method returns the states of all instances. The array is the one
+     * updated by the engine and shall not be modified while a batch is 
+     * applied.
+     * 
+     * @return Returns the id of the current state of each instance
+     */
+    public int[] getStates() { return this._states; }
+
+    /**
+     * Method sets the shared data passed to the callbacks of each instance.
+     * 
+     * @param sharedData Shared data of each instance, indexed by instance,
+     *                   or null
+     */
+    public void setSharedData(Object[] sharedData) {
+        if (sharedData != null && sharedData.length < this._states.length) {
+            throw new IllegalArgumentException(
+                    "Shared data shall be provided for every instance");
+        }
+        this._sharedData = sharedData;
+    }
+
+    /**
+     * 
+     * @return Returns the number of instances
+     */
+    public int getInstanceCount() { return this._states.length; }
+
+    /**
+     * 
+     * @return Returns the number of ranges the instances are split in
+     */
+    public int getPartitionCount() { return this._partitions; }
+
+    /**
+     * 
+     * @return Returns the definition of the instances
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /*
+     * Applies the events of ranges from..to, splitting them in halves
+     */
+    private final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] _instances;
+        private final int[] _messageIds;
+        private final int _from;
+        private final int _to;
+
+        private Batch(int[] instances, int[] messageIds, int from, int to) {
+            this._instances = instances;
+            this._messageIds = messageIds;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to - this._from == 1) {
+                _handled[this._from] = applyRange(this._instances,
+                        this._messageIds, _order, _start[this._from],
+                        _start[this._from + 1]);
+                return;
+            }
+            int mid = (this._from + this._to) >>> 1;
+            invokeAll(new Batch(this._instances, this._messageIds,
+                    this._from, mid),
+                    new Batch(this._instances, this._messageIds, mid,
+                    this._to));
+        }
+    }
+}
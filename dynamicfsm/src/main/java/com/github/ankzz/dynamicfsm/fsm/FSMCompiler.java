@@ -0,0 +1,90 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMOptimizer;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Command line tool compiling a XML Configuration file into the binary
+ * format of {@link FSMDefinition}.
+ * 
+ * <p>
+ * The binary file can be passed to any FSM constructor in place of the XML
+ * Configuration file; it is memory-mapped and loaded without parsing XML,
+ * which reduces start-up time for large configurations.
+ * </p>
+ * 
+ * <p>
+ * With option <code>-O</code>, the definition is optimized (see
+ * {@link FSMOptimizer}) before it is written, and the states removed are
+ * reported.
+ * </p>
+ * 
+ * <pre>
+ *  java -cp dynamicfsm.jar com.github.ankzz.dynamicfsm.fsm.FSMCompiler [-O] config.xml config.fsmb
+ * </pre>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMCompiler {
+
+    private FSMCompiler() {
+    }
+
+    /**
+     * 
+     * @param args Optional <code>-O</code>, XML Configuration file and binary
+     *             file to be written
+     * 
+     * @throws Exception
+     * In case configuration can not be read or binary file can not be written
+     */
+    public static void main(String[] args) throws Exception {
+        boolean optimize = (args.length == 3 && "-O".equals(args[0]));
+        if (args.length != (optimize ? 3 : 2)) {
+            System.err.println(
+                    "Usage: FSMCompiler [-O] <config.xml> <output.fsmb>");
+            System.exit(1);
+        }
+        String in = args[args.length - 2];
+        String bin = args[args.length - 1];
+        FSMDefinition def = new FSMDefinition(in, true);
+        if (optimize) {
+            FSMOptimizer opt = new FSMOptimizer(def);
+            System.out.println(opt);
+            def = opt.getOptimized();
+        }
+        try (OutputStream out = new FileOutputStream(bin)) {
+            def.writeBinary(out);
+        }
+        System.out.println(bin + ": " + def.getStateCount() + " states, "
+                + def.getMessageCount() + " messages, "
+                + def.getTransitionCount() + " transitions");
+    }
+}
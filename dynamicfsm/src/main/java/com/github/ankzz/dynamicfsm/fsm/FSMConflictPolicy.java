@@ -0,0 +1,55 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+/**
+ * Enumerates the behaviors of a concurrent FSM when its state is changed
+ * by another thread while a transition is being taken.
+ * 
+ * <p>
+ * In concurrent mode the new state is committed with compare-and-set, only
+ * if the FSM is still in the state the transition was taken from. If it is
+ * not, the transition has lost a race and the policy decides what happens
+ * to the message.
+ * </p>
+ * 
+ * @see FSM#setConflictPolicy(FSMConflictPolicy)
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public enum FSMConflictPolicy {
+    
+    /**
+     * The message is processed again from the new current state. Action
+     * methods may therefore be invoked more than once for a message.
+     */
+    RETRY,
+    
+    /**
+     * The message is dropped and processing reports it as not handled.
+     */
+    REJECT
+}
@@ -0,0 +1,58 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+/**
+ * Enumerates the reasons for which a {@link FSMRegistry} lets go of a FSM.
+ * 
+ * @see FSMEvictionListener
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public enum FSMEvictionCause {
+
+    /**
+     * The FSM reached a state marked terminal in the configuration.
+     */
+    TERMINAL,
+
+    /**
+     * The FSM has not been used for longer than the idle timeout of the
+     * registry.
+     */
+    IDLE,
+
+    /**
+     * The shard of the FSM was full; the least recently used FSM of the
+     * shard made room for a new one.
+     */
+    SIZE,
+
+    /**
+     * The FSM was removed from the registry by the application.
+     */
+    REMOVED
+}
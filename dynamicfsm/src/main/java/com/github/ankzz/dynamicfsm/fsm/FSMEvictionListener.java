@@ -0,0 +1,49 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+/**
+ * Interface to be implemented to be notified of the FSMs a 
+ * {@link FSMRegistry} lets go of, e.g. to save them.
+ * 
+ * @param <K> Type of the keys of the registry
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+@FunctionalInterface
+public interface FSMEvictionListener<K> {
+
+    /**
+     * Method is invoked once a FSM has been removed from the registry, 
+     * outside any lock of the registry, by the thread which caused the
+     * eviction.
+     * 
+     * @param key Key of the FSM
+     * @param fsm FSM removed from the registry
+     * @param cause Reason of the eviction
+     */
+    void evicted(K key, FSM fsm, FSMEvictionCause cause);
+}
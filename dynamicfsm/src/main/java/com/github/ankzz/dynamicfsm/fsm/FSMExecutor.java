@@ -0,0 +1,361 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class implements an executor which multiplexes many FSMs on a small
+ * pool of threads
+ * 
+ * <p>
+ * Each registered FSM gets a mailbox. Messages are submitted to the mailbox
+ * of a FSM without blocking, from any thread, and are processed by a worker
+ * thread with {@link FSM#ProcessFSM(String)} or {@link FSM#process(int)}.
+ * A mailbox is drained by at most one worker at a time, so that each FSM
+ * stays single-threaded and processes its messages in the order they were
+ * submitted; FSMs therefore need neither locking nor concurrent mode.
+ * </p>
+ * 
+ * <pre>
+ *  FSMExecutor&lt;Long&gt; executor = new FSMExecutor&lt;&gt;(4, 1024, 32);
+ *  executor.register(sessionId, new FSM(definition, action, session));
+ *  ...
+ *  if (!executor.submit(sessionId, "MOVELEFT")) {
+ *      // mailbox full, or session unknown
+ *  }
+ * </pre>
+ * 
+ * <p>
+ * A worker processes at most <code>batchSize</code> messages of a mailbox
+ * before moving on to the next mailbox, so that a busy FSM does not starve
+ * the others. Workers can be provided by any {@link Executor}, e.g. an
+ * executor of virtual threads where available.
+ * </p>
+ * 
+ * <p>
+ * An exception thrown while processing a message is reported to the
+ * uncaught exception handler of the worker thread; processing goes on with
+ * the next message.
+ * </p>
+ * 
+ * @param <K> Type of the keys identifying the FSMs
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMExecutor<K> {
+
+    private final ConcurrentHashMap<K, Mailbox> _mailboxes = 
+            new ConcurrentHashMap<>();
+    private final Executor _executor;
+    private final ExecutorService _pool;
+    private final int _capacity;
+    private final int _batchSize;
+    private final LongAdder _rejected = new LongAdder();
+    /* Boxed message ids, shared by the numeric messages of each id */
+    private volatile Integer[] _ids = new Integer[0];
+    private volatile boolean _shutdown;
+
+    /**
+     * Constructor creates an executor with its own pool of worker threads.
+     * 
+     * @param workers Number of worker threads
+     * @param mailboxCapacity Maximum number of pending messages per FSM
+     * @param batchSize Maximum number of messages of a FSM processed by a
+     *                  worker at once
+     */
+    public FSMExecutor(int workers, int mailboxCapacity, int batchSize) {
+        this(Executors.newFixedThreadPool(workers, new WorkerFactory()),
+                mailboxCapacity, batchSize, true);
+    }
+
+    /**
+     * Constructor creates an executor running its mailboxes on the specified
+     * executor. The specified executor is not shut down by 
+     * {@link #shutdown()}.
+     * 
+     * @param executor Executor providing the worker threads
+     * @param mailboxCapacity Maximum number of pending messages per FSM
+     * @param batchSize Maximum number of messages of a FSM processed by a
+     *                  worker at once
+     */
+    public FSMExecutor(Executor executor, int mailboxCapacity, int batchSize) {
+        this(executor, mailboxCapacity, batchSize, false);
+    }
+
+    private FSMExecutor(Executor executor, int mailboxCapacity, int batchSize,
+            boolean owned) {
+        if (mailboxCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid mailbox capacity: " + mailboxCapacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid batch size: " + batchSize);
+        }
+        this._executor = executor;
+        this._pool = owned ? (ExecutorService) executor : null;
+        this._capacity = mailboxCapacity;
+        this._batchSize = batchSize;
+    }
+
+    /**
+     * Method registers a FSM with the executor.
+     * Messages still pending for a FSM replaced by this call are processed
+     * by the FSM they were submitted to.
+     * 
+     * @param key Key identifying the FSM
+     * @param fsm FSM to be registered
+     * 
+     * @return Returns the FSM previously registered with the key, or null
+     */
+    public FSM register(K key, FSM fsm) {
+        Mailbox _m = this._mailboxes.put(key, new Mailbox(fsm));
+        return _m == null ? null : _m._fsm;
+    }
+
+    /**
+     * Method removes a FSM from the executor.
+     * Messages already submitted to the FSM are still processed.
+     * 
+     * @param key Key identifying the FSM
+     * 
+     * @return Returns the FSM removed, or null if no FSM is registered with
+     *         the key
+     */
+    public FSM unregister(K key) {
+        Mailbox _m = this._mailboxes.remove(key);
+        return _m == null ? null : _m._fsm;
+    }
+
+    /**
+     * 
+     * @param key Key identifying the FSM
+     * 
+     * @return Returns the FSM registered with the key, or null
+     */
+    public FSM getFSM(K key) {
+        Mailbox _m = this._mailboxes.get(key);
+        return _m == null ? null : _m._fsm;
+    }
+
+    /**
+     * 
+     * @return Returns the number of FSMs registered
+     */
+    public int size() { return this._mailboxes.size(); }
+
+    /**
+     * Method submits a message to a FSM, without blocking.
+     * 
+     * @param key Key identifying the FSM
+     * @param recvdMsgId Message Id to be processed by the FSM
+     * 
+     * @return Returns true if the message is queued, false if no FSM is
+     *         registered with the key, its mailbox is full or the executor
+     *         is shut down
+     */
+    public boolean submit(K key, String recvdMsgId) {
+        return offer(key, recvdMsgId);
+    }
+
+    /**
+     * Method submits a numeric message to a FSM, without blocking.
+     * 
+     * @param key Key identifying the FSM
+     * @param messageId Numeric id of the message to be processed by the FSM,
+     *                  as returned by 
+     *                  {@link com.github.ankzz.dynamicfsm.states.FSMDefinition#getMessageId(String)}
+     * 
+     * @return Returns true if the message is queued, false if no FSM is
+     *         registered with the key, its mailbox is full or the executor
+     *         is shut down
+     */
+    public boolean submit(K key, int messageId) {
+        Mailbox _m = this._shutdown ? null : this._mailboxes.get(key);
+        return offer(_m, (_m == null) ? null : id(_m._fsm, messageId));
+    }
+
+    private boolean offer(K key, Object message) {
+        return offer(this._shutdown ? null : this._mailboxes.get(key), message);
+    }
+
+    private boolean offer(Mailbox _m, Object message) {
+        if (_m == null || !_m.offer(message)) {
+            this._rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * Boxed message id, shared by all messages of the id; ids which are not
+     * ids of the definition of the FSM are boxed anew
+     */
+    private Integer id(FSM fsm, int messageId) {
+        Integer[] ids = this._ids;
+        if (messageId >= 0 && messageId < ids.length) return ids[messageId];
+        int count = fsm.getDefinition().getMessageCount();
+        return (messageId < 0 || messageId >= count) 
+                ? Integer.valueOf(messageId) : ids(count)[messageId];
+    }
+
+    private synchronized Integer[] ids(int count) {
+        Integer[] ids = this._ids;
+        if (ids.length >= count) return ids;
+        ids = Arrays.copyOf(ids, count);
+        for (int i = this._ids.length; i < count; i++) {
+            ids[i] = Integer.valueOf(i);
+        }
+        this._ids = ids;
+        return ids;
+    }
+
+    /**
+     * 
+     * @return Returns the number of messages which could not be submitted
+     */
+    public long getRejectedCount() { return this._rejected.sum(); }
+
+    /**
+     * Method stops accepting messages. Messages already submitted are still
+     * processed. The pool of worker threads is shut down if it was created
+     * by this executor.
+     */
+    public void shutdown() {
+        this._shutdown = true;
+        if (this._pool != null) {
+            this._pool.shutdown();
+        }
+    }
+
+    /**
+     * Method waits for the pool of worker threads created by this executor
+     * to terminate, after {@link #shutdown()}.
+     * 
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * 
+     * @return Returns true if the pool terminated, false if the timeout
+     *         elapsed or the worker threads are not owned by this executor
+     * 
+     * @throws InterruptedException
+     * In case the current thread is interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) 
+            throws InterruptedException {
+        return this._pool != null && this._pool.awaitTermination(timeout, unit);
+    }
+
+    /*
+     * Mailbox of a FSM; the counter holds the number of pending messages.
+     * The submitter which makes the counter leave 0 schedules the mailbox,
+     * and the mailbox reschedules itself as long as the counter is not 0
+     * after a batch. Hence at most one worker drains a mailbox at a time.
+     */
+    private final class Mailbox extends AtomicInteger implements Runnable {
+        private static final long serialVersionUID = 1L;
+
+        private final FSM _fsm;
+        private final ConcurrentLinkedQueue<Object> _queue = 
+                new ConcurrentLinkedQueue<>();
+
+        private Mailbox(FSM fsm) { this._fsm = fsm; }
+
+        private boolean offer(Object message) {
+            int n = getAndIncrement();
+            if (n >= _capacity) {
+                decrementAndGet();
+                return false;
+            }
+            this._queue.offer(message);
+            if (n == 0 && !schedule()) {
+                /* Workers are gone; drain pending messages in this thread */
+                run();
+            }
+            return true;
+        }
+
+        private boolean schedule() {
+            try {
+                _executor.execute(this);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                int n = 0;
+                for (Object _o; n < _batchSize 
+                        && (_o = this._queue.poll()) != null; n++) {
+                    deliver(_o);
+                }
+                if (addAndGet(-n) == 0) return;
+            } while (!schedule());
+        }
+
+        private void deliver(Object message) {
+            try {
+                if (message instanceof String) {
+                    this._fsm.ProcessFSM((String) message);
+                } else {
+                    this._fsm.process(((Integer) message).intValue());
+                }
+            } catch (RuntimeException e) {
+                Thread _t = Thread.currentThread();
+                _t.getUncaughtExceptionHandler().uncaughtException(_t, e);
+            }
+        }
+    }
+
+    /*
+     * Creates daemon worker threads
+     */
+    private static final class WorkerFactory implements ThreadFactory {
+        private static final AtomicInteger __Count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread _t = new Thread(r, 
+                    "dynamicfsm-worker-" + __Count.incrementAndGet());
+            _t.setDaemon(true);
+            return _t;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDispatch;
+import com.github.ankzz.dynamicfsm.states.FSMMessageHandle;
+import com.github.ankzz.dynamicfsm.states.FSMTransitionPlan;
+
+/**
+ * Class implements a lightweight instance of a FSM
+ * 
+ * <p>
+ * An instance only holds its current state and its shared data; states,
+ * transitions and actions are held by the {@link FSMDefinition} it is created
+ * from. Memory held by an instance therefore does not depend upon the size of
+ * the configuration, which allows to keep one instance per session.
+ * </p>
+ * 
+ * <p>
+ * The definition is compiled once and shared by all instances:
+ * </p>
+ * <pre>
+ *  FSMDefinition def = new FSMDefinition("config.xml", true);
+ *  def.setDefaultAction(action);
+ * 
+ *  FSMInstance session = new FSMInstance(def, sessionData);
+ *  session.process("MOVELEFT");
+ * </pre>
+ * 
+ * <p>
+ * An instance created from a {@link FSMDispatch} takes transitions through
+ * it, e.g. through the class generated for the definition by
+ * {@link FSMDispatch#compile(FSMDefinition)}.
+ * </p>
+ * 
+ * <p>
+ * An instance is not thread-safe; messages for a given instance shall be
+ * processed by one thread at a time.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMInstance {
+
+    private final FSMDefinition _definition;
+    private final FSMDispatch _dispatch;
+    private int _state;
+    private Object _sharedData;
+
+    /**
+     * Constructor allows to create an instance of the specified definition,
+     * in the initial state of the definition.
+     * 
+     * @param definition Definition of the FSM
+     * @param sharedData Shared Data passed across in FSM
+     */
+    public FSMInstance(FSMDefinition definition, Object sharedData) {
+        this._definition = definition;
+        this._dispatch = null;
+        this._state = definition.getInitialState();
+        this._sharedData = sharedData;
+    }
+
+    /**
+     * Constructor allows to create an instance of the specified definition,
+     * in the initial state of the definition.
+     * 
+     * @param definition Definition of the FSM
+     */
+    public FSMInstance(FSMDefinition definition) {
+        this(definition, null);
+    }
+
+    /**
+     * Constructor allows to create an instance taking transitions through
+     * the specified dispatch, in the initial state of its definition.
+     * 
+     * @param dispatch Dispatch of the definition of the FSM
+     * @param sharedData Shared Data passed across in FSM
+     */
+    public FSMInstance(FSMDispatch dispatch, Object sharedData) {
+        this._definition = dispatch.getDefinition();
+        this._dispatch = dispatch;
+        this._state = this._definition.getInitialState();
+        this._sharedData = sharedData;
+    }
+
+    /**
+     * Method on receiving the Message Id, takes appropriate action
+     * and on successful execution of the action Transitions to the new-state
+     * as per the definition.
+     * 
+     * @param recvdMsgId Received Message Id
+     * 
+     * @return Returns true if the message is handled in the current state,
+     *         otherwise false
+     */
+    public boolean process(String recvdMsgId) {
+        if (this._dispatch != null) {
+            return dispatch(this._definition.getMessageId(recvdMsgId));
+        }
+        return fire(this._definition.getTransition(this._state, recvdMsgId,
+                this._sharedData));
+    }
+
+    /**
+     * Method on receiving the numeric Message Id, takes appropriate action
+     * and on successful execution of the action Transitions to the new-state
+     * as per the definition.
+     * 
+     * @param messageId Numeric id of the received message, as returned by
+     *                  {@link FSMDefinition#getMessageId(String)}
+     * 
+     * @return Returns true if the message is handled in the current state,
+     *         otherwise false
+     */
+    public boolean process(int messageId) {
+        if (this._dispatch != null) return dispatch(messageId);
+        return fire(this._definition.getTransition(this._state, messageId,
+                this._sharedData));
+    }
+
+    /**
+     * Method on receiving a message resolved by a 
+     * {@link com.github.ankzz.dynamicfsm.states.FSMMessageResolver}, 
+     * processes it as per {@link #process(int)}.
+     * 
+     * @param message Handle of the received message
+     * 
+     * @return Returns true if the message is handled in the current state,
+     *         otherwise false
+     */
+    public boolean process(FSMMessageHandle message) {
+        return process(message.getMessageId(this._definition));
+    }
+
+    private boolean dispatch(int messageId) {
+        if (messageId < 0) return false;
+        int next = this._dispatch.process(this._state, messageId,
+                this._sharedData);
+        if (next < 0) return false;
+        this._state = next;
+        return true;
+    }
+
+    private boolean fire(int transition) {
+        if (transition < 0) return false;
+
+        FSMTransitionPlan plan = this._definition.getPlan(transition);
+        boolean status = plan.enter(
+                this._definition.getStateName(this._state), this._sharedData);
+        if (status) {
+            this._state = plan.getTargetId();
+        }
+        plan.leave(this._definition.getStateName(this._state), status,
+                this._sharedData);
+        return true;
+    }
+
+    /**
+     * Method returns the current state of the FSM
+     * 
+     * @return Current state of the FSM
+     */
+    public String getCurrentState() {
+        return this._definition.getStateName(this._state);
+    }
+
+    /**
+     * Method returns the id of the current state of the FSM
+     * 
+     * @return Id of the current state, as defined by the definition
+     */
+    public int getCurrentStateId() { return this._state; }
+
+    /**
+     * Method allows to move the FSM to the specified state, without invoking
+     * any action.
+     * 
+     * @param stateId Id of the state, as defined by the definition
+     */
+    public void setCurrentStateId(int stateId) {
+        if (stateId < 0 || stateId >= this._definition.getStateCount()) {
+            throw new IllegalArgumentException("Invalid state id: " + stateId);
+        }
+        this._state = stateId;
+    }
+
+    /**
+     * Method sets the shared data for the FSM
+     * This method overwrites the previous shared data
+     * 
+     * @param data  Set shared data for the FSM.
+     */
+    public void setShareData(Object data) { this._sharedData = data; }
+
+    /**
+     * 
+     * @return Returns the shared data of the FSM
+     */
+    public Object getShareData() { return this._sharedData; }
+
+    /**
+     * 
+     * @return Returns the definition this instance is created from
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+}
@@ -0,0 +1,442 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMTransitionPlan;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class implements an off-heap store of the current states of instances of
+ * one definition, keyed by 64-bit session keys
+ * 
+ * <p>
+ * Instances are not objects: each instance takes a fixed-width slot of a
+ * direct or memory-mapped buffer, holding its key, the id of its current
+ * state and a version, incremented on every change of state. Slots are
+ * found by open addressing with linear probing, so that millions of
+ * sessions add nothing to the heap, and processing a message allocates
+ * nothing.
+ * </p>
+ * 
+ * <pre>
+ *  FSMInstanceStore store = new FSMInstanceStore(definition, 10000000, file);
+ *  int state = store.process(sessionKey, messageId);
+ * </pre>
+ * 
+ * <p>
+ * A store backed by a file keeps the states of its instances across
+ * restarts, without replaying any journal: opening the file again, with the
+ * same definition and capacity, finds the instances where they were. Like
+ * any memory-mapped file, changes survive a crash of the JVM;
+ * {@link #sync()} forces them to the storage device.
+ * </p>
+ * 
+ * <p>
+ * Action methods and hooks bound to the definition are invoked only for the
+ * transitions they are configured for, with the shared data passed to
+ * {@link #process(long, int, Object)}. A store shall be fed by one thread at
+ * a time.
+ * </p>
+ * 
+ * <p>
+ * Format of the buffer, all integers big-endian:
+ * </p>
+ * <pre>
+ *  int magic ("FSMS"), int version, long fingerprint of the definition,
+ *  int number of slots, int number of instances, int capacity,
+ *  4 bytes reserved
+ *  slots x { long key, int state id + 1 (0: free slot), int version }
+ * </pre>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMInstanceStore implements Closeable {
+
+    private static final int __Magic = 0x46534D53;
+    private static final int __Version = 1;
+    private static final int __Header = 32;
+    private static final int __Size = 20;
+    private static final int __Capacity = 24;
+    private static final int __Slot = 16;
+    private static final int __MaxSlots = 1 << 26;
+
+    private final FSMDefinition _definition;
+    private final ByteBuffer _buffer;
+    private final FileChannel _channel;
+    private final int _capacity;
+    private final int _mask;
+    private int _size;
+
+    /**
+     * Constructor creates a store in a direct buffer, which is lost with
+     * the store.
+     * 
+     * @param definition Definition of the instances
+     * @param capacity Maximum number of instances
+     */
+    public FSMInstanceStore(FSMDefinition definition, int capacity) {
+        this._definition = definition;
+        this._capacity = capacity;
+        this._mask = slots(capacity) - 1;
+        this._channel = null;
+        this._buffer = ByteBuffer.allocateDirect(
+                __Header + (this._mask + 1) * __Slot);
+        header();
+    }
+
+    /**
+     * Constructor creates a store in the specified file, or opens the store
+     * the file holds.
+     * 
+     * @param definition Definition of the instances
+     * @param capacity Maximum number of instances
+     * @param file File of the store
+     * 
+     * @throws IOException
+     * In case an error is encountered mapping the file, or the file holds a
+     * store of another definition or capacity
+     */
+    public FSMInstanceStore(FSMDefinition definition, int capacity, Path file)
+            throws IOException {
+        this._definition = definition;
+        this._capacity = capacity;
+        this._mask = slots(capacity) - 1;
+        long length = __Header + (long) (this._mask + 1) * __Slot;
+        this._channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long existing = this._channel.size();
+            if (existing != 0 && existing != length) {
+                throw new InvalidObjectException(
+                        "FSM instance store of another capacity: " + file);
+            }
+            MappedByteBuffer _b = this._channel.map(
+                    FileChannel.MapMode.READ_WRITE, 0, length);
+            this._buffer = _b;
+            if (existing == 0) {
+                header();
+            } else {
+                if (_b.getInt(0) != __Magic || _b.getInt(4) != __Version
+                        || _b.getInt(16) != this._mask + 1) {
+                    throw new InvalidObjectException(
+                            "Not a FSM instance store: " + file);
+                }
+                if (_b.getLong(8) != definition.getFingerprint()) {
+                    throw new InvalidObjectException(
+                            "FSM instance store of another definition: "
+                            + file);
+                }
+                /* Stores written before the capacity was saved hold 0 */
+                int saved = _b.getInt(__Capacity);
+                this._size = _b.getInt(__Size);
+                if ((saved != 0 && saved != capacity) || this._size < 0 
+                        || this._size > capacity) {
+                    throw new InvalidObjectException(
+                            "FSM instance store of another capacity: " 
+                            + file);
+                }
+                _b.putInt(__Capacity, capacity);
+            }
+        } catch (IOException | RuntimeException e) {
+            this._channel.close();
+            throw e;
+        }
+    }
+
+    /*
+     * Number of slots for the capacity: a power of two, at most 3/4 full
+     */
+    private static int slots(int capacity) {
+        if (capacity < 1 || capacity > __MaxSlots / 4 * 3) {
+            throw new IllegalArgumentException(
+                    "Invalid capacity: " + capacity);
+        }
+        int min = capacity + capacity / 3 + 1;
+        int slots = Integer.highestOneBit(min);
+        return (slots < min) ? slots << 1 : slots;
+    }
+
+    private void header() {
+        this._buffer.putInt(0, __Magic).putInt(4, __Version)
+                .putLong(8, this._definition.getFingerprint())
+                .putInt(16, this._mask + 1).putInt(__Size, 0)
+                .putInt(__Capacity, this._capacity);
+    }
+
+    private static int hash(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (key ^ (key >>> 33));
+    }
+
+    /*
+     * Offset of the slot of the key, or the complement of the offset of the
+     * free slot it would take
+     */
+    private int find(long key) {
+        final ByteBuffer _b = this._buffer;
+        int i = hash(key) & this._mask;
+        for (;;) {
+            int offset = __Header + i * __Slot;
+            if (_b.getInt(offset + 8) == 0) return ~offset;
+            if (_b.getLong(offset) == key) return offset;
+            i = (i + 1) & this._mask;
+        }
+    }
+
+    /*
+     * Offset of the slot of the key, which is added in the initial state if
+     * missing
+     */
+    private int slot(long key) {
+        int offset = find(key);
+        if (offset >= 0) return offset;
+        if (this._size >= this._capacity) {
+            throw new IllegalStateException(
+                    "FSM instance store is full: " + this._capacity);
+        }
+        offset = ~offset;
+        this._buffer.putLong(offset, key).putInt(offset + 12, 0)
+                .putInt(offset + 8, this._definition.getInitialState() + 1);
+        this._buffer.putInt(__Size, ++this._size);
+        return offset;
+    }
+
+    /**
+     * Method on receiving the numeric Message Id for the specified session,
+     * takes appropriate action and on successful execution of the action
+     * Transitions to the new-state as per the transition table of the
+     * definition. A session not in the store is added in the initial state.
+     * 
+     * @param key Key of the session
+     * @param messageId Numeric id of the received message, as returned by
+     *                  {@link FSMDefinition#getMessageId(String)}
+     * 
+     * @return Returns the id of the current state after processing the
+     *         message, or -1 if the message is not handled in the current
+     *         state
+     * 
+     * @throws IllegalStateException
+     * In case the session is to be added to a full store
+     */
+    public int process(long key, int messageId) {
+        return process(key, messageId, null);
+    }
+
+    /**
+     * Method on receiving the numeric Message Id for the specified session,
+     * as {@link #process(long, int)} does, passing the specified shared data
+     * to the action methods and hooks.
+     * 
+     * @param key Key of the session
+     * @param messageId Numeric id of the received message
+     * @param sharedData Shared data of the session, or null
+     * 
+     * @return Returns the id of the current state after processing the
+     *         message, or -1 if the message is not handled in the current
+     *         state
+     * 
+     * @throws IllegalStateException
+     * In case the session is to be added to a full store
+     */
+    public int process(long key, int messageId, Object sharedData) {
+        final FSMDefinition _d = this._definition;
+        final ByteBuffer _b = this._buffer;
+        final int offset = slot(key);
+        final int state = _b.getInt(offset + 8) - 1;
+        final int _t = _d.getTransition(state, messageId, sharedData);
+        if (_t < 0) return -1;
+
+        final FSMTransitionPlan _p = _d.getPlan(_t);
+        if (!_p.hasCallbacks()) {
+            commit(offset, _p.getTargetId());
+            return _p.getTargetId();
+        }
+        boolean status = _p.enter(_d.getStateName(state), sharedData);
+        int next = status ? _p.getTargetId() : state;
+        if (status) commit(offset, next);
+        _p.leave(_d.getStateName(next), status, sharedData);
+        return next;
+    }
+
+    /**
+     * Method on receiving the Message Id for the specified session, as
+     * {@link #process(long, int)} does.
+     * 
+     * @param key Key of the session
+     * @param message Received Message Id
+     * 
+     * @return Returns the id of the current state after processing the
+     *         message, or -1 if the message is not handled in the current
+     *         state
+     * 
+     * @throws IllegalStateException
+     * In case the session is to be added to a full store
+     */
+    public int process(long key, String message) {
+        int messageId = this._definition.getMessageId(message);
+        return (messageId < 0) ? -1 : process(key, messageId, null);
+    }
+
+    private void commit(int offset, int state) {
+        this._buffer.putInt(offset + 8, state + 1)
+                .putInt(offset + 12, this._buffer.getInt(offset + 12) + 1);
+    }
+
+    /**
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns the id of the current state of the session, or -1 if
+     *         the session is not in the store
+     */
+    public int getState(long key) {
+        int offset = find(key);
+        return (offset < 0) ? -1 : this._buffer.getInt(offset + 8) - 1;
+    }
+
+    /**
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns the number of changes of state of the session, or -1
+     *         if the session is not in the store
+     */
+    public int getVersion(long key) {
+        int offset = find(key);
+        return (offset < 0) ? -1 : this._buffer.getInt(offset + 12);
+    }
+
+    /**
+     * Method allows to move a session to the specified state, without
+     * invoking any action. A session not in the store is added.
+     * 
+     * @param key Key of the session
+     * @param stateId Id of the state, as defined by the definition
+     * 
+     * @throws IllegalStateException
+     * In case the session is to be added to a full store
+     */
+    public void setState(long key, int stateId) {
+        if (stateId < 0 || stateId >= this._definition.getStateCount()) {
+            throw new IllegalArgumentException("Invalid state id: " + stateId);
+        }
+        commit(slot(key), stateId);
+    }
+
+    /**
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns true if the session is in the store
+     */
+    public boolean contains(long key) { return find(key) >= 0; }
+
+    /**
+     * Method removes a session from the store.
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns true if the session was in the store
+     */
+    public boolean remove(long key) {
+        int offset = find(key);
+        if (offset < 0) return false;
+
+        /* Shift back the following slots of the cluster, if they may */
+        final ByteBuffer _b = this._buffer;
+        int free = (offset - __Header) / __Slot;
+        int i = free;
+        for (;;) {
+            i = (i + 1) & this._mask;
+            int next = __Header + i * __Slot;
+            if (_b.getInt(next + 8) == 0) break;
+            int home = hash(_b.getLong(next)) & this._mask;
+            if (((i - home) & this._mask) >= ((i - free) & this._mask)) {
+                int to = __Header + free * __Slot;
+                _b.putLong(to, _b.getLong(next))
+                        .putInt(to + 8, _b.getInt(next + 8))
+                        .putInt(to + 12, _b.getInt(next + 12));
+                free = i;
+            }
+        }
+        int to = __Header + free * __Slot;
+        _b.putInt(to + 8, 0).putLong(to, 0).putInt(to + 12, 0);
+        _b.putInt(__Size, --this._size);
+        return true;
+    }
+
+    /**
+     * 
+     * @return Returns the number of sessions in the store
+     */
+    public int size() { return this._size; }
+
+    /**
+     * 
+     * @return Returns the maximum number of sessions in the store
+     */
+    public int getCapacity() { return this._capacity; }
+
+    /**
+     * 
+     * @return Returns the definition of the instances
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /**
+     * Method forces the changes of a store backed by a file to the storage
+     * device.
+     */
+    public void sync() {
+        if (this._buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) this._buffer).force();
+        }
+    }
+
+    /**
+     * Method forces the changes of a store backed by a file to the storage
+     * device and closes the file. The store shall not be used afterwards.
+     * 
+     * @throws IOException
+     * In case an error is encountered closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (this._channel != null && this._channel.isOpen()) {
+            sync();
+            this._channel.close();
+        }
+    }
+}
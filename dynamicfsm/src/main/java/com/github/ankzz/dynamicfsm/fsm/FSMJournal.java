@@ -0,0 +1,497 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Class implements an append-only journal of the transitions taken by FSMs
+ * 
+ * <p>
+ * Each transition committed by a FSM attached to the journal (see
+ * {@link FSM#setJournal(FSMJournal, long)}) is appended as a fixed-size
+ * record: instance id, source state id, message id, target state id and
+ * timestamp. Records are written to memory-mapped segment files of a
+ * directory; a new segment is started once the current one is full, and
+ * whenever a journal is opened.
+ * </p>
+ * 
+ * <p>
+ * Records are made durable in groups: segments are forced to the storage
+ * device once a number of records, or an amount of time, has gone by since
+ * the last force, and by {@link #sync()}. The time bound holds when no 
+ * record follows: records still not forced are forced by a daemon thread,
+ * shared by all journals, at the same interval. Records not forced yet 
+ * survive a crash of the JVM, not a crash of the system.
+ * </p>
+ * 
+ * <p>
+ * A FSM which moves to a reloaded definition moves to the journal of that
+ * definition (see
+ * {@link FSMReloader#setJournals(java.util.function.Function)}), to which
+ * it appends a switch record, with state and message ids -1, holding the 
+ * id of its state in the new definition.
+ * </p>
+ * 
+ * <p>
+ * At start-up, {@link #recover(Path, FSMDefinition, Map, long)} replays the
+ * segments to rebuild the current state of each instance, optionally
+ * starting from states saved at a known position of the journal, e.g.
+ * along with {@link FSMSnapshot}s; segments before that position can then
+ * be deleted with {@link #deleteBefore(Path, long)}.
+ * </p>
+ * 
+ * <pre>
+ *  Map&lt;Long, Integer&gt; states = FSMJournal.recover(dir, def, null, 0);
+ *  FSMJournal journal = new FSMJournal(dir, def, 64 &lt;&lt; 20, 256, 10);
+ *  fsm.setJournal(journal, sessionId);
+ * </pre>
+ * 
+ * <p>
+ * Format of a segment, all integers big-endian:
+ * </p>
+ * <pre>
+ *  int magic ("FSMJ"), int version, long fingerprint of the definition,
+ *  long segment number, 8 bytes reserved
+ *  records x { long instance, int from, int message, int to,
+ *              long timestamp, int CRC-32 of the preceding 28 bytes }
+ * </pre>
+ * The first record whose checksum does not match ends a segment.
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMJournal implements Closeable {
+
+    private static final int __Magic = 0x46534D4A;
+    private static final int __Version = 1;
+    private static final int __Header = 32;
+    private static final int __Record = 32;
+    private static final String __Suffix = ".fsmj";
+    private static final ScheduledThreadPoolExecutor __Flusher = flusher();
+
+    private final Path _directory;
+    private final FSMDefinition _definition;
+    private final int _segmentSize;
+    private final int _syncRecords;
+    private final long _syncMillis;
+
+    private final byte[] _scratch = new byte[__Record];
+    private final ByteBuffer _record = ByteBuffer.wrap(this._scratch);
+    private final CRC32 _crc = new CRC32();
+
+    private FileChannel _channel;
+    private MappedByteBuffer _segment;
+    private long _segmentNumber;
+    private int _unsynced;
+    private long _syncedAt;
+    private long _appended;
+    private boolean _closed;
+    private ScheduledFuture<?> _flush;
+
+    /**
+     * Constructor opens a journal in the specified directory, starting a
+     * new segment after the existing ones.
+     * 
+     * @param directory Directory of the segment files; created if needed
+     * @param definition Definition of the FSMs journaled
+     * @param segmentSize Size of a segment file, in bytes
+     * @param syncRecords Number of records after which the segment is
+     *                    forced to the storage device; 0 to never force on
+     *                    record count
+     * @param syncMillis Time in milliseconds after which appended records
+     *                   are forced to the storage device, whether or not
+     *                   other records follow; 0 to never force on time
+     * 
+     * @throws IOException
+     * In case an error is encountered creating the segment file
+     */
+    public FSMJournal(Path directory, FSMDefinition definition,
+            int segmentSize, int syncRecords, long syncMillis)
+            throws IOException {
+        if (segmentSize < __Header + __Record) {
+            throw new IllegalArgumentException(
+                    "Invalid segment size: " + segmentSize);
+        }
+        if (syncRecords < 0 || syncMillis < 0) {
+            throw new IllegalArgumentException("Invalid sync interval");
+        }
+        this._directory = directory;
+        this._definition = definition;
+        this._segmentSize = segmentSize - (segmentSize - __Header) % __Record;
+        this._syncRecords = syncRecords;
+        this._syncMillis = syncMillis;
+
+        Files.createDirectories(directory);
+        List<Long> segments = segments(directory);
+        this._segmentNumber = segments.isEmpty()
+                ? 0 : segments.get(segments.size() - 1);
+        roll();
+        this._syncedAt = System.currentTimeMillis();
+        if (syncMillis > 0) {
+            this._flush = __Flusher.scheduleWithFixedDelay(this::flush,
+                    syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Method appends a transition to the journal, as taken from the state
+     * declaring it; a transition inherited by a nested state shall be
+     * appended by {@link #append(long, int, int, int)}.
+     * 
+     * @param instance Id of the instance which took the transition
+     * @param transition Id of the transition within the definition
+     * 
+     * @throws IOException
+     * In case an error is encountered starting a new segment, or forcing
+     * the segment to the storage device
+     */
+    public void append(long instance, int transition) throws IOException {
+        append(instance, this._definition.getTransitionSource(transition),
+                this._definition.getTransitionMessageId(transition),
+                this._definition.getTransitionTarget(transition));
+    }
+
+    /**
+     * Method appends a transition to the journal.
+     * 
+     * @param instance Id of the instance which took the transition
+     * @param from Id of the state the transition is taken from
+     * @param message Id of the message which triggered the transition
+     * @param to Id of the state the transition leads to
+     * 
+     * @throws IOException
+     * In case an error is encountered starting a new segment, or forcing
+     * the segment to the storage device
+     */
+    public synchronized void append(long instance, int from, int message,
+            int to) throws IOException {
+        if (this._closed) throw new IOException("Journal is closed");
+
+        long now = System.currentTimeMillis();
+        ByteBuffer _r = this._record;
+        _r.clear();
+        _r.putLong(instance).putInt(from).putInt(message).putInt(to)
+                .putLong(now);
+        this._crc.reset();
+        this._crc.update(this._scratch, 0, __Record - 4);
+        _r.putInt((int) this._crc.getValue());
+
+        if (this._segment.remaining() < __Record) roll();
+        this._segment.put(this._scratch);
+        this._appended++;
+
+        this._unsynced++;
+        if ((this._syncRecords > 0 && this._unsynced >= this._syncRecords)
+                || (this._syncMillis > 0
+                        && now - this._syncedAt >= this._syncMillis)) {
+            force(now);
+        }
+    }
+
+    /**
+     * Method appends a switch record: the instance has moved to the 
+     * definition of the journal, in the specified state.
+     * 
+     * @param instance Id of the instance which moved
+     * @param to Id of the state of the instance in the definition
+     * 
+     * @throws IOException
+     * In case an error is encountered starting a new segment, or forcing
+     * the segment to the storage device
+     */
+    public void appendSwitch(long instance, int to) throws IOException {
+        append(instance, -1, -1, to);
+    }
+
+    /**
+     * Method forces the records appended so far to the storage device.
+     */
+    public synchronized void sync() {
+        if (!this._closed) force(System.currentTimeMillis());
+    }
+
+    /*
+     * Forces the records appended since the last force, on the flusher
+     */
+    private synchronized void flush() {
+        if (this._closed || this._unsynced == 0) return;
+        try {
+            force(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            /* Forced again, and reported, by the next append */
+        }
+    }
+
+    private void force(long now) {
+        this._segment.force();
+        this._unsynced = 0;
+        this._syncedAt = now;
+    }
+
+    /*
+     * Starts the next segment
+     */
+    private void roll() throws IOException {
+        if (this._segment != null) {
+            this._segment.force();
+            this._channel.close();
+        }
+        this._segmentNumber++;
+        Path path = this._directory.resolve(name(this._segmentNumber));
+        this._channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this._segment = this._channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                this._segmentSize);
+        this._segment.putInt(__Magic).putInt(__Version)
+                .putLong(this._definition.getFingerprint())
+                .putLong(this._segmentNumber).putLong(0);
+    }
+
+    /**
+     * Method returns the position of the next record, to be passed to
+     * {@link #recover(Path, FSMDefinition, Map, long)} along with states
+     * saved at this point.
+     * 
+     * @return Returns the position of the next record
+     */
+    public synchronized long getPosition() {
+        return (this._segmentNumber << 32) | this._segment.position();
+    }
+
+    /**
+     * 
+     * @return Returns the number of records appended since the journal was
+     *         opened
+     */
+    public synchronized long getAppendedCount() { return this._appended; }
+
+    /**
+     * 
+     * @return Returns the definition of the FSMs journaled
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /**
+     * Method forces the records appended so far to the storage device and
+     * closes the journal.
+     * 
+     * @throws IOException
+     * In case an error is encountered closing the segment file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this._closed) return;
+        this._closed = true;
+        if (this._flush != null) this._flush.cancel(false);
+        this._segment.force();
+        this._channel.close();
+    }
+
+    /**
+     * Visitor of the records of a journal
+     */
+    public interface Visitor {
+
+        /**
+         * Method is invoked for each record, in order of appending.
+         * 
+         * @param instance Id of the instance which took the transition
+         * @param from Id of the state the transition is taken from, or -1 
+         *             for a switch record
+         * @param message Id of the message which triggered the transition,
+         *             or -1 for a switch record
+         * @param to Id of the state the transition leads to
+         * @param timestamp Time the record was appended, in milliseconds
+         */
+        void record(long instance, int from, int message, int to,
+                long timestamp);
+    }
+
+    /**
+     * Method replays the records of a journal, from the specified position.
+     * 
+     * @param directory Directory of the segment files
+     * @param definition Definition of the FSMs journaled
+     * @param position Position to start from, as returned by
+     *                 {@link #getPosition()}, or 0 to start from the first
+     *                 segment
+     * @param visitor Visitor invoked for each record
+     * 
+     * @return Returns the number of records replayed
+     * 
+     * @throws IOException
+     * In case an error is encountered reading a segment, or a segment was
+     * written for another definition
+     */
+    public static long replay(Path directory, FSMDefinition definition,
+            long position, Visitor visitor) throws IOException {
+        long first = position >>> 32;
+        int offset = (int) position;
+        long count = 0;
+        byte[] record = new byte[__Record];
+        ByteBuffer r = ByteBuffer.wrap(record);
+        CRC32 crc = new CRC32();
+
+        for (long number : segments(directory)) {
+            if (number < first) continue;
+            try (FileChannel ch = FileChannel.open(
+                    directory.resolve(name(number)), StandardOpenOption.READ)) {
+                ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                        ch.size());
+                if (b.remaining() < __Header || b.getInt() != __Magic
+                        || b.getInt() != __Version) {
+                    throw new InvalidObjectException(
+                            "Not a FSM journal segment: " + name(number));
+                }
+                if (b.getLong() != definition.getFingerprint()) {
+                    throw new InvalidObjectException("FSM journal segment "
+                            + name(number) + " of another definition");
+                }
+                b.position((number == first && offset > __Header)
+                        ? offset : __Header);
+
+                while (b.remaining() >= __Record) {
+                    b.get(record);
+                    crc.reset();
+                    crc.update(record, 0, __Record - 4);
+                    if (r.getInt(__Record - 4) != (int) crc.getValue()) break;
+                    visitor.record(r.getLong(0), r.getInt(8), r.getInt(12),
+                            r.getInt(16), r.getLong(20));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method rebuilds the current state of each instance from a journal.
+     * 
+     * @param directory Directory of the segment files
+     * @param definition Definition of the FSMs journaled
+     * @param states States of the instances at the specified position, or
+     *               null to replay the whole journal
+     * @param position Position the states were saved at, as returned by
+     *                 {@link #getPosition()}; ignored if states is null
+     * 
+     * @return Returns the id of the current state of each instance found in
+     *         the states or the journal
+     * 
+     * @throws IOException
+     * In case an error is encountered reading a segment, or a segment was
+     * written for another definition
+     */
+    public static Map<Long, Integer> recover(Path directory,
+            FSMDefinition definition, Map<Long, Integer> states,
+            long position) throws IOException {
+        final HashMap<Long, Integer> current = (states == null)
+                ? new HashMap<Long, Integer>() : new HashMap<>(states);
+        if (Files.isDirectory(directory)) {
+            replay(directory, definition, (states == null) ? 0 : position,
+                    (instance, from, message, to, timestamp) ->
+                            current.put(instance, to));
+        }
+        return current;
+    }
+
+    /**
+     * Method deletes the segments which only hold records before the
+     * specified position, e.g. once states have been saved at that position.
+     * 
+     * @param directory Directory of the segment files
+     * @param position Position, as returned by {@link #getPosition()}
+     * 
+     * @return Returns the number of segments deleted
+     * 
+     * @throws IOException
+     * In case an error is encountered deleting a segment file
+     */
+    public static int deleteBefore(Path directory, long position)
+            throws IOException {
+        int deleted = 0;
+        for (long number : segments(directory)) {
+            if (number >= (position >>> 32)) break;
+            Files.delete(directory.resolve(name(number)));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private static ScheduledThreadPoolExecutor flusher() {
+        ScheduledThreadPoolExecutor _f = new ScheduledThreadPoolExecutor(1,
+                r -> {
+                    Thread _t = new Thread(r, "dynamicfsm-journal-flusher");
+                    _t.setDaemon(true);
+                    return _t;
+                });
+        _f.setRemoveOnCancelPolicy(true);
+        return _f;
+    }
+
+    private static String name(long number) {
+        return String.format("%016d", number) + __Suffix;
+    }
+
+    /*
+     * Numbers of the segments of a directory, in order
+     */
+    private static List<Long> segments(Path directory) throws IOException {
+        ArrayList<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+                Files.newDirectoryStream(directory, "*" + __Suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(0,
+                            name.length() - __Suffix.length())));
+                } catch (NumberFormatException e) {
+                    /* Not a segment */
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
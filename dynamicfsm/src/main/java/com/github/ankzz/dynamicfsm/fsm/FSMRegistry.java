@@ -0,0 +1,571 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Class implements a concurrent registry of the FSMs of one definition,
+ * keyed by session
+ * 
+ * <p>
+ * FSMs are created on first use of their key, from the shared definition,
+ * with the default action and the shared data returned by the factory set
+ * by {@link #setSharedDataFactory(Function)}. Keys are spread over shards,
+ * each guarded by its own lock, so that threads working on different
+ * sessions seldom contend.
+ * </p>
+ * 
+ * <pre>
+ *  FSMRegistry&lt;String&gt; sessions = new FSMRegistry&lt;&gt;(definition, action,
+ *          16, 1000000, 30000);
+ *  sessions.setEvictionListener((key, fsm, cause) -&gt; save(key, fsm));
+ *  int state = sessions.process(sessionId, "MOVELEFT");
+ * </pre>
+ * 
+ * <p>
+ * A FSM is let go of, and passed to the eviction listener, once:
+ * </p>
+ * <ul>
+ * <li>it reaches a state marked terminal in the configuration
+ * (<code>&lt;STATE id="STOP" terminal="true"&gt;</code>)</li>
+ * <li>it has not been used for longer than the idle timeout</li>
+ * <li>its shard is full and it is the least recently used FSM of the
+ * shard</li>
+ * <li>it is removed by {@link #remove(Object)} or {@link #clear()}</li>
+ * </ul>
+ * 
+ * <p>
+ * Messages processed through the registry are processed by one thread at a
+ * time for each session, and a FSM is never evicted for being idle, or to
+ * make room, while it processes a message. FSMs returned by
+ * {@link #get(Object)} are driven by the caller, and may be evicted while
+ * doing so; terminal states they reach are noticed at the next access to
+ * their key.
+ * </p>
+ * 
+ * @param <K> Type of the keys of the sessions
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMRegistry<K> {
+
+    private final FSMDefinition _definition;
+    private final FSMAction _action;
+    private final Shard<K>[] _shards;
+    private final int _mask;
+    private final int _maxPerShard;
+    private final long _idleNanos;
+    private volatile Function<? super K, ?> _sharedData;
+    private volatile FSMEvictionListener<? super K> _listener;
+
+    /**
+     * Constructor creates a registry of 16 shards, without any limit of
+     * size nor idle timeout.
+     * 
+     * @param definition Definition of the FSMs
+     * @param action Default action of the FSMs
+     */
+    public FSMRegistry(FSMDefinition definition, FSMAction action) {
+        this(definition, action, 16, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Constructor creates a registry.
+     * 
+     * @param definition Definition of the FSMs
+     * @param action Default action of the FSMs
+     * @param shards Number of shards; rounded up to a power of two
+     * @param maxSize Maximum number of FSMs, shared evenly by the shards
+     * @param idleMillis Time in milliseconds after which an unused FSM is
+     *                   evicted; 0 to keep unused FSMs
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public FSMRegistry(FSMDefinition definition, FSMAction action,
+            int shards, int maxSize, long idleMillis) {
+        if (shards < 1 || shards > (1 << 16)) {
+            throw new IllegalArgumentException(
+                    "Invalid number of shards: " + shards);
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid size: " + maxSize);
+        }
+        if (idleMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid idle timeout: " + idleMillis);
+        }
+        int count = Integer.highestOneBit(shards);
+        if (count < shards) count <<= 1;
+
+        this._definition = definition;
+        this._action = action;
+        this._shards = new Shard[count];
+        for (int i = 0; i < count; i++) this._shards[i] = new Shard<>();
+        this._mask = count - 1;
+        this._maxPerShard = (maxSize == Integer.MAX_VALUE) ? maxSize
+                : (int) (((long) maxSize + count - 1) / count);
+        this._idleNanos = idleMillis * 1000000L;
+    }
+
+    /**
+     * Method sets the factory of the shared data of the FSMs created from
+     * now on.
+     * 
+     * @param factory Function returning the shared data of the FSM of a
+     *                key, or null to create FSMs without shared data
+     */
+    public void setSharedDataFactory(Function<? super K, ?> factory) {
+        this._sharedData = factory;
+    }
+
+    /**
+     * Method sets the listener notified of the FSMs evicted from now on.
+     * 
+     * @param listener Listener, or null
+     */
+    public void setEvictionListener(FSMEvictionListener<? super K> listener) {
+        this._listener = listener;
+    }
+
+    /**
+     * Method on receiving the Message Id for the specified session, takes
+     * appropriate action and on successful execution of the action
+     * Transitions to the new-state, as {@link FSM#process(String)} does. The
+     * FSM of the session is created if needed, and evicted if it reaches a
+     * terminal state.
+     * 
+     * @param key Key of the session
+     * @param message Received Message Id
+     * 
+     * @return Returns the id of the current state after processing the
+     *         message, or -1 if the message is not handled in the current
+     *         state
+     */
+    public int process(K key, String message) {
+        final Shard<K> _s = shard(key);
+        final Entry _e = acquire(_s, key);
+        int state = -1;
+        try {
+            synchronized (_e) {
+                state = _e._fsm.process(message);
+            }
+        } finally {
+            release(_s, key, _e, state);
+        }
+        return state;
+    }
+
+    /**
+     * Method on receiving the numeric Message Id for the specified session,
+     * as {@link #process(Object, String)} does.
+     * 
+     * @param key Key of the session
+     * @param messageId Numeric id of the received message, as returned by
+     *                  {@link FSMDefinition#getMessageId(String)}
+     * 
+     * @return Returns the id of the current state after processing the
+     *         message, or -1 if the message is not handled in the current
+     *         state
+     */
+    public int process(K key, int messageId) {
+        final Shard<K> _s = shard(key);
+        final Entry _e = acquire(_s, key);
+        int state = -1;
+        try {
+            synchronized (_e) {
+                state = _e._fsm.process(messageId);
+            }
+        } finally {
+            release(_s, key, _e, state);
+        }
+        return state;
+    }
+
+    /**
+     * Method returns the FSM of the specified session, which is created if
+     * needed.
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns the FSM of the session
+     */
+    public FSM get(K key) {
+        final Shard<K> _s = shard(key);
+        final Entry _e = acquire(_s, key);
+        release(_s, key, _e, -1);
+        return _e._fsm;
+    }
+
+    /**
+     * Method returns the FSM of the specified session, if any, which counts
+     * as an access to it, as {@link #get(Object)} does.
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns the FSM of the specified session, or null if the
+     *         registry holds none
+     */
+    public FSM getIfPresent(K key) {
+        final Shard<K> _s = shard(key);
+        long now = System.nanoTime();
+        synchronized (_s) {
+            /* The lookup moves the entry last; its access time shall follow */
+            Entry _e = _s._map.get(key);
+            if (_e == null) return null;
+            _e._accessed = now;
+            return _e._fsm;
+        }
+    }
+
+    /**
+     * Method removes the FSM of the specified session, which is passed to
+     * the eviction listener. A message being processed by the FSM completes.
+     * 
+     * @param key Key of the session
+     * 
+     * @return Returns the FSM removed, or null if the registry held none
+     */
+    public FSM remove(K key) {
+        final Shard<K> _s = shard(key);
+        Evicted<K> evicted;
+        synchronized (_s) {
+            Entry _e = _s._map.get(key);
+            if (_e == null) return null;
+            evicted = _s.evict(key, _e, FSMEvictionCause.REMOVED, null);
+        }
+        notify(evicted);
+        return evicted._fsm;
+    }
+
+    /**
+     * Method removes all FSMs, which are passed to the eviction listener,
+     * e.g. to save all sessions at shutdown.
+     * 
+     * @return Returns the number of FSMs removed
+     */
+    public int clear() {
+        int count = 0;
+        for (Shard<K> _s : this._shards) {
+            Evicted<K> evicted = null;
+            synchronized (_s) {
+                Iterator<Map.Entry<K, Entry>> i = _s._map.entrySet().iterator();
+                while (i.hasNext()) {
+                    Map.Entry<K, Entry> _e = i.next();
+                    i.remove();
+                    evicted = _s.evicted(_e.getKey(), _e.getValue(),
+                            FSMEvictionCause.REMOVED, evicted);
+                    count++;
+                }
+            }
+            notify(evicted);
+        }
+        return count;
+    }
+
+    /**
+     * Method evicts the FSMs idle for longer than the idle timeout. Idle FSMs
+     * are otherwise evicted while their shard is accessed.
+     * 
+     * @return Returns the number of FSMs evicted
+     */
+    public int evictIdle() {
+        if (this._idleNanos == 0) return 0;
+        int count = 0;
+        long now = System.nanoTime();
+        for (Shard<K> _s : this._shards) {
+            Evicted<K> evicted;
+            synchronized (_s) {
+                evicted = expire(_s, now, null);
+            }
+            for (Evicted<K> _v = evicted; _v != null; _v = _v._next) count++;
+            notify(evicted);
+        }
+        return count;
+    }
+
+    private Shard<K> shard(K key) {
+        int h = key.hashCode();
+        return this._shards[(h ^ (h >>> 16)) & this._mask];
+    }
+
+    /*
+     * Entry of the key, created if needed, which is not evicted for being
+     * idle or to make room until released
+     */
+    private Entry acquire(Shard<K> _s, K key) {
+        Entry created = null;
+        for (;;) {
+            Entry _e;
+            Evicted<K> evicted = null;
+            long now = System.nanoTime();
+            synchronized (_s) {
+                if (this._idleNanos != 0 && now - _s._sweptAt
+                        >= (this._idleNanos >>> 3)) {
+                    evicted = expire(_s, now, null);
+                }
+                _e = _s._map.get(key);
+                if (_e != null && _e._users == 0 && terminal(_e._fsm,
+                        _e._fsm.getCurrentStateId())) {
+                    _s._map.remove(key);
+                    evicted = _s.evicted(key, _e, FSMEvictionCause.TERMINAL,
+                            evicted);
+                    _e = null;
+                }
+                if (_e == null && created != null) {
+                    _e = created;
+                    _s._map.put(key, _e);
+                    _s._creations++;
+                    evicted = trim(_s, evicted);
+                }
+                if (_e != null) {
+                    _e._users++;
+                    _e._accessed = now;
+                }
+            }
+            notify(evicted);
+            if (_e != null) return _e;
+
+            /* FSMs are not created under the lock of the shard */
+            Function<? super K, ?> factory = this._sharedData;
+            created = new Entry(new FSM(this._definition, this._action,
+                    (factory == null) ? null : factory.apply(key)));
+        }
+    }
+
+    /*
+     * Releases an entry acquired, evicting it if the message processed led
+     * to a terminal state
+     */
+    private void release(Shard<K> _s, K key, Entry _e, int state) {
+        Evicted<K> evicted = null;
+        synchronized (_s) {
+            _e._users--;
+            if (!_e._removed && _e._users == 0 && state >= 0
+                    && terminal(_e._fsm, state)) {
+                evicted = _s.evict(key, _e, FSMEvictionCause.TERMINAL, null);
+            }
+        }
+        notify(evicted);
+    }
+
+    private static boolean terminal(FSM fsm, int state) {
+        return fsm.getDefinition().isTerminal(state);
+    }
+
+    /*
+     * Evicts the entries of the shard idle for longer than the timeout,
+     * from the least recently used one
+     */
+    private Evicted<K> expire(Shard<K> _s, long now, Evicted<K> evicted) {
+        _s._sweptAt = now;
+        Iterator<Map.Entry<K, Entry>> i = _s._map.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<K, Entry> _e = i.next();
+            Entry _v = _e.getValue();
+            if (now - _v._accessed < this._idleNanos) break;
+            if (_v._users > 0) continue;
+            i.remove();
+            evicted = _s.evicted(_e.getKey(), _v, FSMEvictionCause.IDLE,
+                    evicted);
+        }
+        return evicted;
+    }
+
+    /*
+     * Evicts the least recently used entries of a shard over its size
+     */
+    private Evicted<K> trim(Shard<K> _s, Evicted<K> evicted) {
+        if (_s._map.size() <= this._maxPerShard) return evicted;
+        Iterator<Map.Entry<K, Entry>> i = _s._map.entrySet().iterator();
+        while (_s._map.size() > this._maxPerShard && i.hasNext()) {
+            Map.Entry<K, Entry> _e = i.next();
+            if (_e.getValue()._users > 0) continue;
+            i.remove();
+            evicted = _s.evicted(_e.getKey(), _e.getValue(),
+                    FSMEvictionCause.SIZE, evicted);
+        }
+        return evicted;
+    }
+
+    private void notify(Evicted<K> evicted) {
+        FSMEvictionListener<? super K> listener = this._listener;
+        if (listener == null) return;
+        for (; evicted != null; evicted = evicted._next) {
+            listener.evicted(evicted._key, evicted._fsm, evicted._cause);
+        }
+    }
+
+    /**
+     * 
+     * @return Returns the number of FSMs in the registry
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < this._shards.length; i++) size += getSize(i);
+        return size;
+    }
+
+    /**
+     * 
+     * @return Returns the number of FSMs created
+     */
+    public long getCreationCount() {
+        long count = 0;
+        for (int i = 0; i < this._shards.length; i++) {
+            count += getCreationCount(i);
+        }
+        return count;
+    }
+
+    /**
+     * 
+     * @return Returns the number of FSMs evicted, for any reason
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for (int i = 0; i < this._shards.length; i++) {
+            count += getEvictionCount(i);
+        }
+        return count;
+    }
+
+    /**
+     * 
+     * @return Returns the number of shards
+     */
+    public int getShardCount() { return this._shards.length; }
+
+    /**
+     * 
+     * @param shard Index of the shard
+     * 
+     * @return Returns the number of FSMs in the shard
+     */
+    public int getSize(int shard) {
+        Shard<K> _s = this._shards[shard];
+        synchronized (_s) {
+            return _s._map.size();
+        }
+    }
+
+    /**
+     * 
+     * @param shard Index of the shard
+     * 
+     * @return Returns the number of FSMs created in the shard
+     */
+    public long getCreationCount(int shard) {
+        Shard<K> _s = this._shards[shard];
+        synchronized (_s) {
+            return _s._creations;
+        }
+    }
+
+    /**
+     * 
+     * @param shard Index of the shard
+     * 
+     * @return Returns the number of FSMs evicted from the shard, for any
+     *         reason
+     */
+    public long getEvictionCount(int shard) {
+        Shard<K> _s = this._shards[shard];
+        synchronized (_s) {
+            return _s._evictions;
+        }
+    }
+
+    /**
+     * 
+     * @return Returns the definition of the FSMs
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /*
+     * FSMs of some keys, from the least recently used one, with counters;
+     * guarded by its own lock
+     */
+    private static final class Shard<K> {
+        private final LinkedHashMap<K, Entry> _map =
+                new LinkedHashMap<>(16, 0.75f, true);
+        private long _creations;
+        private long _evictions;
+        private long _sweptAt;
+
+        private Evicted<K> evict(K key, Entry e, FSMEvictionCause cause,
+                Evicted<K> next) {
+            this._map.remove(key);
+            return evicted(key, e, cause, next);
+        }
+
+        /*
+         * Records the eviction of an entry already removed from the map
+         */
+        private Evicted<K> evicted(K key, Entry e, FSMEvictionCause cause,
+                Evicted<K> next) {
+            e._removed = true;
+            this._evictions++;
+            return new Evicted<>(key, e._fsm, cause, next);
+        }
+    }
+
+    /*
+     * FSM of a key; users and accessed are guarded by the lock of the shard
+     */
+    private static final class Entry {
+        private final FSM _fsm;
+        private int _users;
+        private long _accessed;
+        private boolean _removed;
+
+        private Entry(FSM fsm) {
+            this._fsm = fsm;
+        }
+    }
+
+    /*
+     * FSMs evicted under the lock of a shard, to be notified once released
+     */
+    private static final class Evicted<K> {
+        private final K _key;
+        private final FSM _fsm;
+        private final FSMEvictionCause _cause;
+        private final Evicted<K> _next;
+
+        private Evicted(K key, FSM fsm, FSMEvictionCause cause,
+                Evicted<K> next) {
+            this._key = key;
+            this._fsm = fsm;
+            this._cause = cause;
+            this._next = next;
+        }
+    }
+}
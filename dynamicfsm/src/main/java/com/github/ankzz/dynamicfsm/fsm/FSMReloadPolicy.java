@@ -0,0 +1,57 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+/**
+ * Enumerates the behaviors of a FSM whose current state no longer exists
+ * in a reloaded definition.
+ * 
+ * <p>
+ * When a definition is reloaded, each FSM moves to the state of the same
+ * name in the new definition, at the next message it processes. If the
+ * configuration no longer has a state of that name, the policy decides
+ * where the FSM goes.
+ * </p>
+ * 
+ * @see FSMReloader
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public enum FSMReloadPolicy {
+
+    /**
+     * The FSM moves to the initial state of the new definition. No action
+     * or hook is invoked.
+     */
+    INITIAL,
+
+    /**
+     * The FSM keeps processing messages as per the previous definition, and
+     * moves to the new definition once it reaches a state which exists in
+     * the new definition.
+     */
+    DEFER
+}
@@ -0,0 +1,416 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDefinitionCache;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/**
+ * Class implements the hot reload of the configuration file of FSMs
+ * 
+ * <p>
+ * The reloader watches an external configuration file. Whenever the file
+ * is changed, the new configuration is compiled by the watching thread and
+ * published to every attached FSM, which moves to the new definition at
+ * the next message it processes: the FSM keeps its current state, by name,
+ * and its shared data. Action methods and hooks set on the FSM with
+ * {@link FSM#setAction(String, FSMAction)},
+ * {@link FSM#setStatesBeforeTransition(String,
+ * com.github.ankzz.dynamicfsm.states.FSMStateAction)} and alike are set
+ * again on the new definition; actions set for messages or states which no
+ * longer exist are dropped. Numeric message and state ids are those of the
+ * current definition of the FSM, see {@link FSM#getDefinition()}.
+ * </p>
+ * 
+ * <pre>
+ *  FSMReloader reloader = new FSMReloader("config.xml", FSMReloadPolicy.INITIAL);
+ *  reloader.start();
+ * 
+ *  FSM fsm = reloader.newFSM(action, session);
+ *  fsm.ProcessFSM("MOVELEFT");
+ * </pre>
+ * 
+ * <p>
+ * Messages are never blocked by a reload: the configuration is compiled,
+ * and the states of each FSM are built, before they are published. A
+ * configuration which fails to compile is ignored; FSMs keep their current
+ * definition and the failure is reported by {@link #getLastFailure()}, as
+ * is the failure of a FSM to take a new definition, which leaves that FSM
+ * in its current definition.
+ * </p>
+ * 
+ * <p>
+ * FSMs are held weakly; a FSM which is no longer referenced elsewhere is
+ * detached automatically. Metrics of a FSM are disabled when it moves to a
+ * new definition, as they belong to the previous one. A journaled FSM 
+ * moves to the journal of the new definition, opened by the function set 
+ * with {@link #setJournals(Function)}; without it, a configuration is not
+ * reloaded while an attached FSM is journaled.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMReloader implements Closeable {
+
+    /* Time left to the writer of the file to complete its changes */
+    private static final long __SettleMillis = 50;
+    private static final AtomicInteger __Count = new AtomicInteger();
+
+    private final Path _path;
+    private final FSMReloadPolicy _policy;
+    private final Set<FSM> _fsms =
+            Collections.newSetFromMap(new WeakHashMap<FSM, Boolean>());
+    private volatile FSMDefinition _definition;
+    private volatile Function<FSMDefinition, FSMJournal> _journals;
+    private FSMJournal _journal;
+    private final AtomicLong _reloads = new AtomicLong();
+    private final AtomicLong _failures = new AtomicLong();
+    private volatile Exception _lastFailure;
+    private WatchService _watcher;
+    private Thread _thread;
+
+    /**
+     * Constructor compiles the specified configuration file; FSMs whose
+     * state no longer exists after a reload move to the initial state.
+     * 
+     * @param configFName Configuration file path
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public FSMReloader(String configFName)
+            throws ParserConfigurationException, SAXException, IOException {
+        this(configFName, FSMReloadPolicy.INITIAL);
+    }
+
+    /**
+     * Constructor compiles the specified configuration file.
+     * 
+     * @param configFName Configuration file path
+     * @param policy Behavior of FSMs whose state no longer exists after a
+     *               reload
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public FSMReloader(String configFName, FSMReloadPolicy policy)
+            throws ParserConfigurationException, SAXException, IOException {
+        if (policy == null) {
+            throw new IllegalArgumentException("Invalid reload policy: null");
+        }
+        this._path = Paths.get(configFName).toAbsolutePath();
+        this._policy = policy;
+        /* Same definition as FSMs created from the file name */
+        this._definition = FSMDefinitionCache.getDefault().get(
+                configFName, true);
+    }
+
+    /**
+     * Method creates a FSM from the current definition and attaches it.
+     * 
+     * @param action Default action method of the FSM
+     * @param sharedData Shared Data passed across in FSM
+     * 
+     * @return Returns the new FSM
+     */
+    public FSM newFSM(FSMAction action, Object sharedData) {
+        FSM fsm;
+        synchronized (this._fsms) {
+            fsm = new FSM(this._definition, action, sharedData);
+            this._fsms.add(fsm);
+        }
+        return fsm;
+    }
+
+    /**
+     * Method attaches a FSM created from the watched configuration file, so
+     * that it follows the reloads of the file. If the file has been reloaded
+     * since the FSM has been created, the FSM moves to the current
+     * definition at the next message it processes.
+     * 
+     * @param fsm FSM to be attached
+     * 
+     * @throws IllegalStateException
+     * In case the FSM is journaled and no journal is set for the current
+     * definition
+     */
+    public void attach(FSM fsm) {
+        synchronized (this._fsms) {
+            if (fsm.getDefinition() != this._definition) {
+                checkJournal(fsm, this._journal);
+                if (this._fsms.add(fsm)) {
+                    fsm.reload(this._definition, this._policy, this._journal);
+                }
+            } else {
+                this._fsms.add(fsm);
+            }
+        }
+    }
+
+    /**
+     * Method detaches a FSM; the FSM keeps its current definition.
+     * 
+     * @param fsm FSM to be detached
+     * 
+     * @return Returns true if the FSM was attached
+     */
+    public boolean detach(FSM fsm) {
+        synchronized (this._fsms) {
+            return this._fsms.remove(fsm);
+        }
+    }
+
+    /**
+     * Method sets the function opening the journal of each reloaded 
+     * definition, e.g. in a directory of its own, as the segments of a 
+     * journal hold records of a single definition:
+     * 
+     * <pre>
+     *  reloader.setJournals(def -&gt; new FSMJournal(
+     *          root.resolve(Long.toHexString(def.getFingerprint())), 
+     *          def, 64 &lt;&lt; 20, 256, 10));
+     * </pre>
+     * 
+     * The journal is opened before the definition is published, by the 
+     * reloading thread; a function failing with a runtime exception fails
+     * the reload. Journals of previous definitions are left open, as FSMs
+     * which have not moved yet keep appending to them.
+     * 
+     * @param journals Function opening the journal of a definition, or null
+     */
+    public void setJournals(Function<FSMDefinition, FSMJournal> journals) {
+        this._journals = journals;
+    }
+
+    /**
+     * Method starts watching the configuration file, on a daemon thread.
+     * 
+     * @throws IOException
+     * In case the directory of the configuration file cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (this._thread != null) return;
+
+        final WatchService _w = this._path.getFileSystem().newWatchService();
+        this._path.getParent().register(_w,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this._watcher = _w;
+        this._thread = new Thread(() -> watch(_w),
+                "dynamicfsm-reloader-" + __Count.incrementAndGet());
+        this._thread.setDaemon(true);
+        this._thread.start();
+    }
+
+    /**
+     * Method stops watching the configuration file. Attached FSMs keep
+     * their current definition.
+     * 
+     * @throws IOException
+     * In case an error is encountered closing the watch service
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this._thread == null) return;
+        this._watcher.close();
+        this._thread.interrupt();
+        this._thread = null;
+        this._watcher = null;
+    }
+
+    /**
+     * Method compiles the configuration file and publishes the new
+     * definition to the attached FSMs. This method is invoked by the
+     * watching thread whenever the file is changed, and can be invoked
+     * directly to reload the file on demand.
+     * 
+     * @return Returns the new definition
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     * 
+     * @throws IllegalStateException
+     * In case an attached FSM is journaled and no journal is set for the
+     * new definition; the definition is not published
+     */
+    public synchronized FSMDefinition reload()
+            throws ParserConfigurationException, SAXException, IOException {
+        FSMDefinition def = new FSMDefinition(this._path.toString(), true);
+        Function<FSMDefinition, FSMJournal> _f = this._journals;
+        FSMJournal journal = (_f == null) ? null : _f.apply(def);
+        ArrayList<FSM> fsms;
+        synchronized (this._fsms) {
+            for (FSM fsm : this._fsms) checkJournal(fsm, journal);
+            this._definition = def;
+            this._journal = journal;
+            fsms = new ArrayList<>(this._fsms);
+        }
+        /* FSMs attached meanwhile are given the new definition on attach */
+        RuntimeException failure = null;
+        for (FSM fsm : fsms) {
+            try {
+                fsm.reload(def, this._policy, journal);
+            } catch (RuntimeException e) {
+                /* The FSM keeps its definition; others move on */
+                if (failure == null) failure = e; else failure.addSuppressed(e);
+            }
+        }
+        this._reloads.incrementAndGet();
+        if (failure != null) {
+            this._failures.incrementAndGet();
+            this._lastFailure = failure;
+        }
+        return def;
+    }
+
+    private void watch(WatchService w) {
+        try {
+            for (;;) {
+                WatchKey _k = w.take();
+                if (!changed(_k)) continue;
+
+                /* Coalesce the events of a single update of the file */
+                Thread.sleep(__SettleMillis);
+                while ((_k = w.poll()) != null) { changed(_k); }
+
+                try {
+                    reload();
+                } catch (ParserConfigurationException | SAXException
+                        | IOException | RuntimeException e) {
+                    this._failures.incrementAndGet();
+                    this._lastFailure = e;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            /* Closed */
+        }
+    }
+
+    /*
+     * Rejects the move of a journaled FSM to a definition without journal,
+     * which would silently stop journaling
+     */
+    private static void checkJournal(FSM fsm, FSMJournal journal) {
+        if (journal == null && fsm.getJournal() != null) {
+            throw new IllegalStateException("FSM is journaled, but no " 
+                    + "journal is set for the reloaded definition");
+        }
+    }
+
+    private boolean changed(WatchKey k) {
+        boolean changed = false;
+        for (WatchEvent<?> e : k.pollEvents()) {
+            if (e.kind() == StandardWatchEventKinds.OVERFLOW
+                    || this._path.getFileName().equals(e.context())) {
+                changed = true;
+            }
+        }
+        k.reset();
+        return changed;
+    }
+
+    /**
+     * 
+     * @return Returns the current definition of the configuration file, as
+     *         held by {@link FSMDefinitionCache}, hence shared by all its
+     *         users in the process
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /**
+     * 
+     * @return Returns the behavior of FSMs whose state no longer exists
+     *         after a reload
+     */
+    public FSMReloadPolicy getPolicy() { return this._policy; }
+
+    /**
+     * 
+     * @return Returns the number of FSMs currently attached
+     */
+    public int size() {
+        synchronized (this._fsms) {
+            return this._fsms.size();
+        }
+    }
+
+    /**
+     * 
+     * @return Returns the number of successful reloads
+     */
+    public long getReloadCount() { return this._reloads.get(); }
+
+    /**
+     * 
+     * @return Returns the number of changes of the file which could not be
+     *         reloaded, or not be published to every attached FSM
+     */
+    public long getFailureCount() { return this._failures.get(); }
+
+    /**
+     * 
+     * @return Returns the error of the last change of the file which could
+     *         not be reloaded, or null
+     */
+    public Exception getLastFailure() { return this._lastFailure; }
+}
@@ -0,0 +1,260 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMDefinitionCache;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+/**
+ * Class implements a compact snapshot of the state of a FSM
+ * 
+ * <p>
+ * Java serialization of a {@link FSM} writes all its states and
+ * transitions, and loses its actions. A snapshot only holds what differs
+ * from one session to the next: the fingerprint of the definition, the id
+ * of the current state and, optionally, the shared data written by a
+ * {@link FSMSnapshotCodec}. A snapshot without shared data takes about ten
+ * bytes, whatever the size of the configuration.
+ * </p>
+ * 
+ * <pre>
+ *  FSMSnapshot.write(session, out, codec);
+ *  ...
+ *  FSMInstance session = FSMSnapshot.restore(in, codec);
+ * </pre>
+ * 
+ * <p>
+ * A snapshot is restored into a FSM of the same definition, which brings
+ * its own actions and hooks, or as a {@link FSMInstance} of the definition,
+ * found by its fingerprint in the process-wide {@link FSMDefinitionCache},
+ * with the actions and hooks registered on it. Restoring a snapshot into a
+ * definition with another fingerprint fails.
+ * </p>
+ * 
+ * <p>
+ * Format:
+ * </p>
+ * <pre>
+ *  byte version, byte flags (1: shared data follows)
+ *  long fingerprint of the definition
+ *  varint id of the current state
+ *  shared data, as written by the codec
+ * </pre>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMSnapshot {
+
+    private static final int __Version = 1;
+    private static final int __SharedData = 1;
+
+    private FSMSnapshot() {
+    }
+
+    /**
+     * Method writes the snapshot of a FSM.
+     * 
+     * @param <T> Type of the shared data
+     * @param fsm FSM to be saved
+     * @param out Output the snapshot is written to
+     * @param codec Codec of the shared data, or null if the shared data is
+     *              not to be saved
+     * 
+     * @throws IOException
+     * In case an error is encountered writing to the output
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void write(FSM fsm, DataOutput out,
+            FSMSnapshotCodec<T> codec) throws IOException {
+        write(out, fsm.getDefinition(), fsm.getCurrentStateId(),
+                (T) fsm.getShareData(), codec);
+    }
+
+    /**
+     * Method writes the snapshot of an instance.
+     * 
+     * @param <T> Type of the shared data
+     * @param instance Instance to be saved
+     * @param out Output the snapshot is written to
+     * @param codec Codec of the shared data, or null if the shared data is
+     *              not to be saved
+     * 
+     * @throws IOException
+     * In case an error is encountered writing to the output
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void write(FSMInstance instance, DataOutput out,
+            FSMSnapshotCodec<T> codec) throws IOException {
+        write(out, instance.getDefinition(), instance.getCurrentStateId(),
+                (T) instance.getShareData(), codec);
+    }
+
+    private static <T> void write(DataOutput out, FSMDefinition def,
+            int state, T data, FSMSnapshotCodec<T> codec) throws IOException {
+        boolean shared = (codec != null && data != null);
+        out.writeByte(__Version);
+        out.writeByte(shared ? __SharedData : 0);
+        out.writeLong(def.getFingerprint());
+        while ((state & ~0x7f) != 0) {
+            out.writeByte((state & 0x7f) | 0x80);
+            state >>>= 7;
+        }
+        out.writeByte(state);
+        if (shared) codec.write(out, data);
+    }
+
+    /**
+     * Method restores a snapshot into the specified FSM: the FSM moves to
+     * the saved state, without invoking any action, and its shared data is
+     * replaced by the saved one, if any.
+     * 
+     * @param <T> Type of the shared data
+     * @param fsm FSM of the definition the snapshot was taken from
+     * @param in Input the snapshot is read from
+     * @param codec Codec of the shared data; may be null if the snapshot
+     *              holds no shared data
+     * 
+     * @throws IOException
+     * In case an error is encountered reading from the input, or the
+     * snapshot was taken from another definition
+     */
+    public static <T> void restore(FSM fsm, DataInput in,
+            FSMSnapshotCodec<T> codec) throws IOException {
+        FSMDefinition def = fsm.getDefinition();
+        int flags = header(in);
+        int state = state(in, def);
+        T data = data(in, flags, codec);
+        fsm.setCurrentStateId(state);
+        if ((flags & __SharedData) != 0) fsm.setShareData(data);
+    }
+
+    /**
+     * Method restores a snapshot as an instance of the specified definition.
+     * 
+     * @param <T> Type of the shared data
+     * @param definition Definition the snapshot was taken from
+     * @param in Input the snapshot is read from
+     * @param codec Codec of the shared data; may be null if the snapshot
+     *              holds no shared data
+     * 
+     * @return Returns the restored instance
+     * 
+     * @throws IOException
+     * In case an error is encountered reading from the input, or the
+     * snapshot was taken from another definition
+     */
+    public static <T> FSMInstance restore(FSMDefinition definition,
+            DataInput in, FSMSnapshotCodec<T> codec) throws IOException {
+        int flags = header(in);
+        int state = state(in, definition);
+        FSMInstance instance = new FSMInstance(definition,
+                data(in, flags, codec));
+        instance.setCurrentStateId(state);
+        return instance;
+    }
+
+    /**
+     * Method restores a snapshot as an instance of the definition it was
+     * taken from, which shall be held by the process-wide
+     * {@link FSMDefinitionCache}. The instance takes the actions registered
+     * on the cached definition, which is shared by all its users.
+     * 
+     * @param <T> Type of the shared data
+     * @param in Input the snapshot is read from
+     * @param codec Codec of the shared data; may be null if the snapshot
+     *              holds no shared data
+     * 
+     * @return Returns the restored instance
+     * 
+     * @throws IOException
+     * In case an error is encountered reading from the input, or the
+     * definition of the snapshot is not cached
+     */
+    public static <T> FSMInstance restore(DataInput in,
+            FSMSnapshotCodec<T> codec) throws IOException {
+        int flags = header(in);
+        long fingerprint = in.readLong();
+        FSMDefinition def = FSMDefinitionCache.getDefault().find(fingerprint);
+        if (def == null) {
+            throw new InvalidObjectException("No cached definition with "
+                    + "fingerprint " + Long.toHexString(fingerprint));
+        }
+        int state = stateId(in, def);
+        FSMInstance instance = new FSMInstance(def, data(in, flags, codec));
+        instance.setCurrentStateId(state);
+        return instance;
+    }
+
+    private static int header(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != __Version) {
+            throw new InvalidObjectException(
+                    "Unsupported FSM snapshot version " + version);
+        }
+        return in.readUnsignedByte();
+    }
+
+    private static int state(DataInput in, FSMDefinition def)
+            throws IOException {
+        long fingerprint = in.readLong();
+        if (fingerprint != def.getFingerprint()) {
+            throw new InvalidObjectException(
+                    "FSM snapshot of another definition");
+        }
+        return stateId(in, def);
+    }
+
+    private static int stateId(DataInput in, FSMDefinition def)
+            throws IOException {
+        int state = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            state |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) break;
+            if (shift >= 28) {
+                throw new InvalidObjectException("Corrupt FSM snapshot");
+            }
+        }
+        if (state < 0 || state >= def.getStateCount()) {
+            throw new InvalidObjectException("Corrupt FSM snapshot");
+        }
+        return state;
+    }
+
+    private static <T> T data(DataInput in, int flags,
+            FSMSnapshotCodec<T> codec) throws IOException {
+        if ((flags & __SharedData) == 0) return null;
+        if (codec == null) {
+            throw new InvalidObjectException(
+                    "FSM snapshot holds shared data, but no codec is given");
+        }
+        return codec.read(in);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface to be implemented to save the shared data of a FSM along with
+ * its snapshot.
+ * 
+ * <p>
+ * A codec writes only the fields the application needs to restore a
+ * session, in a format of its choice; it is invoked by
+ * {@link FSMSnapshot} once the state of the FSM has been written.
+ * </p>
+ * 
+ * @param <T> Type of the shared data
+ * 
+ * @see FSMSnapshot
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public interface FSMSnapshotCodec<T> {
+
+    /**
+     * Method writes the shared data of a FSM.
+     * 
+     * @param out Output the snapshot is written to
+     * @param data Shared data of the FSM; never null
+     * 
+     * @throws IOException
+     * In case an error is encountered writing to the output
+     */
+    void write(DataOutput out, T data) throws IOException;
+
+    /**
+     * Method reads the shared data written by
+     * {@link #write(DataOutput, Object)}.
+     * 
+     * @param in Input the snapshot is read from
+     * 
+     * @return Returns the shared data
+     * 
+     * @throws IOException
+     * In case an error is encountered reading from the input
+     */
+    T read(DataInput in) throws IOException;
+}
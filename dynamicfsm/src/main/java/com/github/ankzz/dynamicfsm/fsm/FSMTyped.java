@@ -0,0 +1,185 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.fsm;
+
+import com.github.ankzz.dynamicfsm.action.FSMTypedAction;
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMStateAction;
+import com.github.ankzz.dynamicfsm.states.FSMTransitionPlan;
+import com.github.ankzz.dynamicfsm.states.FSMTypedDefinition;
+
+/**
+ * Class implements an instance of a FSM whose states and messages are enum
+ * constants
+ * 
+ * <p>
+ * Messages are looked up by ordinal and transitions invoke the
+ * {@link FSMTypedAction}s of the {@link FSMTypedDefinition}, so that
+ * processing a message neither hashes nor compares strings:
+ * </p>
+ * <pre>
+ *  FSMTyped&lt;State, Message&gt; session = new FSMTyped&lt;&gt;(typed, sessionData);
+ *  session.process(Message.MOVELEFT);
+ *  if (session.getCurrentState() == State.STOP) { ... }
+ * </pre>
+ * 
+ * <p>
+ * Transitions without a typed action invoke the action method of the
+ * definition, as {@link FSMInstance} does. Messages can still be processed
+ * by name, e.g. as received from the network, through
+ * {@link #process(String)}.
+ * </p>
+ * 
+ * <p>
+ * An instance is not thread-safe; messages for a given instance shall be
+ * processed by one thread at a time.
+ * </p>
+ * 
+ * @param <S> Enum of the states
+ * @param <M> Enum of the messages
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMTyped<S extends Enum<S>, M extends Enum<M>> {
+
+    private final FSMTypedDefinition<S, M> _typed;
+    private final FSMDefinition _definition;
+    private int _state;
+    private Object _sharedData;
+
+    /**
+     * Constructor allows to create an instance of the specified definition,
+     * in the initial state of the definition.
+     * 
+     * @param typed Definition of the FSM, bound to its enums
+     * @param sharedData Shared Data passed across in FSM
+     */
+    public FSMTyped(FSMTypedDefinition<S, M> typed, Object sharedData) {
+        this._typed = typed;
+        this._definition = typed.getDefinition();
+        this._state = this._definition.getInitialState();
+        this._sharedData = sharedData;
+    }
+
+    /**
+     * Method on receiving the message, takes appropriate action and on
+     * successful execution of the action Transitions to the new-state.
+     * 
+     * @param message Received message
+     * 
+     * @return Returns true if the message is handled in the current state,
+     *         otherwise false
+     */
+    public boolean process(M message) {
+        int _t = this._definition.getTransition(this._state,
+                this._typed.getMessageId(message), this._sharedData);
+        if (_t < 0) return false;
+
+        FSMTypedAction<S, M> act = this._typed.getAction(_t);
+        FSMTransitionPlan plan = this._definition.getPlan(_t);
+        if (act == null) {
+            boolean status = plan.enter(
+                    this._definition.getStateName(this._state),
+                    this._sharedData);
+            if (status) this._state = plan.getTargetId();
+            plan.leave(this._definition.getStateName(this._state), status,
+                    this._sharedData);
+            return true;
+        }
+
+        FSMStateAction before = plan.getBefore();
+        if (before != null) {
+            before.stateTransition(plan.getNextState(), this._sharedData);
+        }
+        if (act.action(this._typed.getState(this._state), message,
+                this._typed.getTarget(_t), this._sharedData)) {
+            this._state = plan.getTargetId();
+        }
+        FSMStateAction after = plan.getAfter();
+        if (after != null) {
+            after.stateTransition(plan.getNextState(), this._sharedData);
+        }
+        return true;
+    }
+
+    /**
+     * Method on receiving the Message Id, processes it as per
+     * {@link #process(Enum)}.
+     * 
+     * @param recvdMsgId Received Message Id
+     * 
+     * @return Returns true if the message is handled in the current state,
+     *         otherwise false
+     */
+    public boolean process(String recvdMsgId) {
+        M message = this._typed.getMessage(recvdMsgId);
+        return (message != null) && process(message);
+    }
+
+    /**
+     * Method returns the current state of the FSM
+     * 
+     * @return Current state of the FSM
+     */
+    public S getCurrentState() { return this._typed.getState(this._state); }
+
+    /**
+     * Method returns the id of the current state of the FSM
+     * 
+     * @return Id of the current state, as defined by the definition
+     */
+    public int getCurrentStateId() { return this._state; }
+
+    /**
+     * Method allows to move the FSM to the specified state, without invoking
+     * any action.
+     * 
+     * @param state State to be moved to
+     */
+    public void setCurrentState(S state) {
+        this._state = this._typed.getStateId(state);
+    }
+
+    /**
+     * Method sets the shared data for the FSM
+     * This method overwrites the previous shared data
+     * 
+     * @param data  Set shared data for the FSM.
+     */
+    public void setShareData(Object data) { this._sharedData = data; }
+
+    /**
+     * 
+     * @return Returns the shared data of the FSM
+     */
+    public Object getShareData() { return this._sharedData; }
+
+    /**
+     * 
+     * @return Returns the typed definition this instance is created from
+     */
+    public FSMTypedDefinition<S, M> getTypedDefinition() { return this._typed; }
+}
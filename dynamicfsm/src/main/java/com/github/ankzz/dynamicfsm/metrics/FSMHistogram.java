@@ -0,0 +1,189 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * File: FSMHistogram.java
+ * <p>
+ * Implements a histogram of durations, in nanoseconds, with lock-free
+ * recording.
+ * </p>
+ * 
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split in
+ * 8 buckets, so that any value is known within 12.5%, from 1 nanosecond to
+ * the largest <code>long</code>, in a fixed array of counters. Recording a
+ * value only increments counters and never allocates.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMHistogram {
+
+    private static final int __SubBits = 3;
+    private static final int __SubCount = 1 << __SubBits;
+    private static final int __Buckets = (64 - __SubBits) * __SubCount;
+
+    private final AtomicLongArray _counts;
+    private final LongAdder _sum;
+    private final AtomicLong _max;
+
+    /**
+     * Constructor creates an empty histogram.
+     */
+    public FSMHistogram() {
+        this._counts = new AtomicLongArray(__Buckets);
+        this._sum = new LongAdder();
+        this._max = new AtomicLong();
+    }
+
+    /**
+     * Method records a value; negative values are recorded as 0.
+     * 
+     * @param value Duration in nanoseconds
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this._counts.incrementAndGet(bucket(value));
+        this._sum.add(value);
+        long m;
+        while (value > (m = this._max.get())
+                && !this._max.compareAndSet(m, value)) {
+            /* Retry until the maximum is at least the value */
+        }
+    }
+
+    /**
+     * 
+     * @return Returns the number of values recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < __Buckets; i++) count += this._counts.get(i);
+        return count;
+    }
+
+    /**
+     * 
+     * @return Returns the sum of values recorded
+     */
+    public long getSum() { return this._sum.sum(); }
+
+    /**
+     * 
+     * @return Returns the largest value recorded, or 0
+     */
+    public long getMax() { return this._max.get(); }
+
+    /**
+     * 
+     * @return Returns the mean of values recorded, or 0
+     */
+    public double getMean() {
+        long count = getCount();
+        return (count == 0) ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * 
+     * @param percentile Percentile, from 0 to 100
+     * 
+     * @return Returns the value below which the specified percentage of
+     *         values fall, within the precision of the histogram; 0 if the
+     *         histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(count * Math.min(100, percentile) / 100);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < __Buckets; i++) {
+            seen += this._counts.get(i);
+            if (seen >= rank) return Math.min(highest(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Method returns a copy of this histogram. Values recorded meanwhile
+     * may or may not be included.
+     * 
+     * @return Returns a copy of the histogram
+     */
+    public FSMHistogram snapshot() {
+        FSMHistogram _h = new FSMHistogram();
+        for (int i = 0; i < __Buckets; i++) {
+            _h._counts.set(i, this._counts.get(i));
+        }
+        _h._sum.add(getSum());
+        _h._max.set(getMax());
+        return _h;
+    }
+
+    /**
+     * Method removes all values recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < __Buckets; i++) this._counts.set(i, 0);
+        this._sum.reset();
+        this._max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + (long) getMean()
+                + "ns, p50=" + getValueAtPercentile(50)
+                + "ns, p99=" + getValueAtPercentile(99)
+                + "ns, max=" + getMax() + "ns";
+    }
+
+    /*
+     * Values below 8 have a bucket each; above, the highest bit selects a
+     * group of 8 buckets and the next 3 bits a bucket in the group
+     */
+    private static int bucket(long value) {
+        if (value < __SubCount) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - __SubBits)) & (__SubCount - 1);
+        return (exp - __SubBits + 1) * __SubCount + sub;
+    }
+
+    /*
+     * Highest value counted in a bucket
+     */
+    private static long highest(int bucket) {
+        if (bucket < __SubCount) return bucket;
+        int exp = bucket / __SubCount + __SubBits - 1;
+        long sub = bucket % __SubCount;
+        long low = (1L << exp) | (sub << (exp - __SubBits));
+        return low + (1L << (exp - __SubBits)) - 1;
+    }
+}
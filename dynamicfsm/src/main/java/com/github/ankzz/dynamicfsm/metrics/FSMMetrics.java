@@ -0,0 +1,375 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.metrics;
+
+import com.github.ankzz.dynamicfsm.states.FSMDefinition;
+import com.github.ankzz.dynamicfsm.states.FSMTransitionPlan;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * File: FSMMetrics.java
+ * <p>
+ * Implements the metrics of the FSMs of one definition: how often each 
+ * transition is taken, how long action methods and hooks take, how long
+ * FSMs stay in each state and how many messages each state rejects.
+ * </p>
+ * 
+ * <p>
+ * Metrics are enabled per FSM and can be shared by any number of FSMs of 
+ * the same definition, which then add up:
+ * </p>
+ * <pre>
+ *  FSMMetrics metrics = new FSMMetrics(definition);
+ *  fsm.setMetrics(metrics);
+ *  ...
+ *  metrics.export(sink);
+ * </pre>
+ * 
+ * <p>
+ * Counters are exact. Durations are sampled: reading the clock costs as
+ * much as a simple transition, so only one transition in every sampling
+ * period (64 by default) is timed, and one state visit in every period
+ * is measured for dwell time.
+ * </p>
+ * 
+ * <p>
+ * Recording is lock-free. A FSM in default mode counts into its own
+ * {@link Counters}, with plain increments, which are merged on export; 
+ * FSMs in concurrent mode or processing messages asynchronously count
+ * into counters shared by all threads. Histograms are created on first
+ * use, so that only transitions and states actually exercised take memory.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMMetrics implements FSMTransitionPlan.Timing {
+
+    private final FSMDefinition _definition;
+    private final int _sampleMask;
+    private final AtomicLongArray _transitions;
+    private final AtomicLongArray _rejected;
+    private final AtomicReferenceArray<FSMHistogram> _action;
+    private final AtomicReferenceArray<FSMHistogram> _dwell;
+    private final AtomicReferenceArray<FSMHistogram> _before;
+    private final AtomicReferenceArray<FSMHistogram> _after;
+    private final ArrayList<Counters> _counters = new ArrayList<>();
+
+    /**
+     * 
+     * @param definition Definition of the FSMs measured
+     */
+    public FSMMetrics(FSMDefinition definition) {
+        this(definition, 64);
+    }
+
+    /**
+     * 
+     * @param definition Definition of the FSMs measured
+     * @param samplingPeriod One transition in every sampling period is 
+     *                       timed; shall be a power of two, 1 times every
+     *                       transition
+     */
+    public FSMMetrics(FSMDefinition definition, int samplingPeriod) {
+        if (samplingPeriod < 1 || Integer.bitCount(samplingPeriod) != 1) {
+            throw new IllegalArgumentException(
+                    "Invalid sampling period: " + samplingPeriod);
+        }
+        this._sampleMask = samplingPeriod - 1;
+        int states = definition.getStateCount();
+        int transitions = definition.getTransitionCount();
+        this._definition = definition;
+        this._transitions = new AtomicLongArray(transitions);
+        this._rejected = new AtomicLongArray(states);
+        this._action = new AtomicReferenceArray<>(transitions);
+        this._dwell = new AtomicReferenceArray<>(states);
+        this._before = new AtomicReferenceArray<>(states);
+        this._after = new AtomicReferenceArray<>(states);
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition taken
+     */
+    public void recordTransition(int transition) {
+        this._transitions.incrementAndGet(transition);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state in which a message was not handled
+     */
+    public void recordRejected(int stateId) {
+        this._rejected.incrementAndGet(stateId);
+    }
+
+    /**
+     * Method creates the counters of a FSM, which are merged with those of
+     * all FSMs on export, until detached.
+     * 
+     * @return Returns counters to be updated by a single thread at a time
+     */
+    public synchronized Counters attach() {
+        Counters _c = new Counters(this._transitions.length(), 
+                this._rejected.length());
+        this._counters.add(_c);
+        return _c;
+    }
+
+    /**
+     * Method detaches the counters of a FSM, whose counts are kept.
+     * 
+     * @param counters Counters returned by {@link #attach()}
+     */
+    public synchronized void detach(Counters counters) {
+        if (!this._counters.remove(counters)) return;
+        for (int t = 0; t < counters._transitions.length; t++) {
+            this._transitions.addAndGet(t, counters._transitions[t]);
+        }
+        for (int s = 0; s < counters._rejected.length; s++) {
+            this._rejected.addAndGet(s, counters._rejected[s]);
+        }
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * @param nanos Time taken by the action method of the transition
+     */
+    @Override
+    public void recordAction(int transition, long nanos) {
+        histogram(this._action, transition).record(nanos);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state left
+     * @param nanos Time spent in the state
+     */
+    public void recordDwell(int stateId, long nanos) {
+        histogram(this._dwell, stateId).record(nanos);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * @param nanos Time taken by the before-transition hook of the state
+     */
+    @Override
+    public void recordBeforeHook(int stateId, long nanos) {
+        histogram(this._before, stateId).record(nanos);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * @param nanos Time taken by the after-transition hook of the state
+     */
+    @Override
+    public void recordAfterHook(int stateId, long nanos) {
+        histogram(this._after, stateId).record(nanos);
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the number of times the transition has been taken
+     */
+    public synchronized long getTransitionCount(int transition) {
+        long _n = this._transitions.get(transition);
+        for (Counters _c : this._counters) _n += _c._transitions[transition];
+        return _n;
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns the number of messages not handled in the state
+     */
+    public synchronized long getRejectedCount(int stateId) {
+        long _n = this._rejected.get(stateId);
+        for (Counters _c : this._counters) _n += _c._rejected[stateId];
+        return _n;
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns a snapshot of the latency of the action method of the
+     *         transition
+     */
+    public FSMHistogram getActionLatency(int transition) {
+        return snapshot(this._action, transition);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns a snapshot of the time spent in the state
+     */
+    public FSMHistogram getDwellTime(int stateId) {
+        return snapshot(this._dwell, stateId);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns a snapshot of the latency of the before-transition
+     *         hook of the state
+     */
+    public FSMHistogram getBeforeHookLatency(int stateId) {
+        return snapshot(this._before, stateId);
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns a snapshot of the latency of the after-transition
+     *         hook of the state
+     */
+    public FSMHistogram getAfterHookLatency(int stateId) {
+        return snapshot(this._after, stateId);
+    }
+
+    /**
+     * 
+     * @param sample Number of transitions taken so far by a FSM
+     * 
+     * @return Returns true if the transition shall be timed
+     */
+    public boolean isSampled(int sample) {
+        return (sample & this._sampleMask) == 0;
+    }
+
+    /**
+     * 
+     * @return Returns the sampling period of durations
+     */
+    public int getSamplingPeriod() { return this._sampleMask + 1; }
+
+    /**
+     * 
+     * @return Returns the definition of the FSMs measured
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /**
+     * Method exports a snapshot of all metrics to the specified sink.
+     * 
+     * @param sink Sink receiving the metrics
+     */
+    public void export(FSMMetricsSink sink) {
+        FSMDefinition _d = this._definition;
+        for (int s = 0; s < _d.getStateCount(); s++) {
+            sink.state(_d.getStateName(s), getRejectedCount(s), 
+                    getDwellTime(s), getBeforeHookLatency(s),
+                    getAfterHookLatency(s));
+        }
+        for (int t = 0; t < _d.getTransitionCount(); t++) {
+            sink.transition(_d.getStateName(_d.getTransitionSource(t)),
+                    _d.getTransitionMessage(t), _d.getTransitionNextState(t),
+                    getTransitionCount(t), getActionLatency(t));
+        }
+    }
+
+    /**
+     * Method resets all metrics. Counts of FSMs in default mode taking 
+     * transitions meanwhile may survive the reset.
+     */
+    public synchronized void reset() {
+        for (Counters _c : this._counters) {
+            Arrays.fill(_c._transitions, 0);
+            Arrays.fill(_c._rejected, 0);
+        }
+        for (int t = 0; t < this._transitions.length(); t++) {
+            this._transitions.set(t, 0);
+            this._action.set(t, null);
+        }
+        for (int s = 0; s < this._rejected.length(); s++) {
+            this._rejected.set(s, 0);
+            this._dwell.set(s, null);
+            this._before.set(s, null);
+            this._after.set(s, null);
+        }
+    }
+
+    private static FSMHistogram histogram(
+            AtomicReferenceArray<FSMHistogram> histograms, int i) {
+        FSMHistogram _h = histograms.get(i);
+        if (_h == null) {
+            histograms.compareAndSet(i, null, new FSMHistogram());
+            _h = histograms.get(i);
+        }
+        return _h;
+    }
+
+    private static FSMHistogram snapshot(
+            AtomicReferenceArray<FSMHistogram> histograms, int i) {
+        FSMHistogram _h = histograms.get(i);
+        return (_h == null) ? new FSMHistogram() : _h.snapshot();
+    }
+
+    /**
+     * Class implements the counters of a single FSM in default mode. The 
+     * counters are updated with plain increments, without any contention 
+     * with other FSMs, and read on export as last seen by the exporting 
+     * thread.
+     */
+    public static final class Counters {
+
+        private final long[] _transitions;
+        private final long[] _rejected;
+
+        private Counters(int transitions, int states) {
+            this._transitions = new long[transitions];
+            this._rejected = new long[states];
+        }
+
+        /**
+         * 
+         * @param transition Id of the transition taken
+         */
+        public void recordTransition(int transition) {
+            this._transitions[transition]++;
+        }
+
+        /**
+         * 
+         * @param stateId Id of the state in which a message was not handled
+         */
+        public void recordRejected(int stateId) {
+            this._rejected[stateId]++;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.metrics;
+
+/**
+ * Interface to receive the metrics exported by 
+ * {@link FSMMetrics#export(FSMMetricsSink)}
+ * 
+ * <p>
+ * An export calls {@link #state} once per state, then {@link #transition}
+ * once per transition of the definition. Histograms are snapshots and can
+ * be kept by the sink.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public interface FSMMetricsSink {
+
+    /**
+     * 
+     * @param state Name of the state
+     * @param rejected Number of messages not handled in the state
+     * @param dwellTime Time spent in the state before leaving it
+     * @param beforeHook Latency of the before-transition hook of the state
+     * @param afterHook Latency of the after-transition hook of the state
+     */
+    void state(String state, long rejected, FSMHistogram dwellTime,
+            FSMHistogram beforeHook, FSMHistogram afterHook);
+
+    /**
+     * 
+     * @param state Name of the state the transition leaves
+     * @param message Name of the message triggering the transition
+     * @param nextState Name of the state the transition leads to
+     * @param count Number of times the transition has been taken
+     * @param action Latency of the action method of the transition
+     */
+    void transition(String state, String message, String nextState,
+            long count, FSMHistogram action);
+}
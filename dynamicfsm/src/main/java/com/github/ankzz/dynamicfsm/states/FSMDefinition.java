@@ -0,0 +1,1562 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.action.FSMGuard;
+import com.github.ankzz.dynamicfsm.common.FSMConfigHandler;
+import com.github.ankzz.dynamicfsm.common.FSMConfigReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/**
+ * File: FSMDefinition.java
+ * <p>
+ * Implements the compiled definition of a FSM.
+ * </p>
+ * 
+ * <p>
+ * A definition is compiled once from the XML Configuration file and holds
+ * the states and transitions of the FSM. It does not hold any current state,
+ * hence a single definition can be shared by any number of FSM instances
+ * and across threads. States, messages and transitions are identified by a
+ * dense integer id, which instances use to keep their current state.
+ * </p>
+ * 
+ * <p>
+ * Transitions are kept in a flat table indexed by state and message id, so
+ * looking up the transition for a message is a single array access.
+ * </p>
+ * 
+ * <p>
+ * STATE elements can be nested: a nested state inherits the transitions of
+ * the enclosing states for the messages it does not handle itself, along
+ * with their hooks if it has none of its own. Inherited transitions are
+ * entered into the table of the nested state at load time, so dispatch is
+ * still a single array access; they remain a single transition, with a
+ * single plan and action, declared by the enclosing state, on which their
+ * actions are registered.
+ * </p>
+ * 
+ * <p>
+ * A state may have several transitions for a message, each with a guard
+ * naming a condition registered by {@link #setGuard(String, FSMGuard)}.
+ * They are ordered once at load time into a decision list per state and
+ * message, guarded transitions in configuration order followed by the one
+ * without guard, if any; the first transition whose guard holds over the
+ * shared data is taken. The definition counts how often each guard holds
+ * and fails.
+ * </p>
+ * 
+ * <p>
+ * A definition can also be saved in a compact binary format (see
+ * {@link #writeBinary(OutputStream)}), which constructors accept in place
+ * of the XML Configuration file and load without parsing any XML.
+ * </p>
+ * 
+ * <p>
+ * The states and transitions never change once compiled. Actions and state
+ * hooks registered on a definition are published copy-on-write, so they
+ * can be registered while instances are processing messages.
+ * </p>
+ * 
+ * <p>
+ * <b>Note:</b> actions, hooks and guards belong to the definition object,
+ * not to its users. A definition obtained from {@link FSMDefinitionCache},
+ * directly or through the FSM States, reloader or snapshots using it, is
+ * shared by every user of the configuration in the process, which sees the
+ * actions, hooks and guards registered on it by any other, and shares its
+ * guard counters. Users needing bindings of their own create their
+ * definition with a constructor, or bind FSMs rather than the definition.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMDefinition implements java.io.Serializable {
+    private static final long serialVersionUID = 2911462409750224118L;
+
+    static final String __DefaultConfig = "config.xml";
+
+    /*
+     * Binary format of a definition, see writeBinary
+     */
+    private static final int __BinaryMagic   = 0x46534D42;
+    private static final int __BinaryVersion = 1;
+    private static final int __BinaryVersionNested = 2;
+    private static final int __BinaryVersionGuarded = 3;
+
+    /*
+     * Flags of a state
+     */
+    private static final int __Terminal = 1;
+
+    /*
+     * States, indexed by state id
+     */
+    private final String[] _stateNames;
+    private final HashMap<String, Integer> _stateIds;
+    private final int[] _stateFlags;
+    private final int[] _stateParents;
+
+    /*
+     * Messages, indexed by message id
+     */
+    private final String[] _messageNames;
+    private final HashMap<String, Integer> _messageIds;
+
+    /*
+     * Transition table; entry (state * messages + message) holds the id of
+     * the transition, or -1 if the message is not handled in the state
+     */
+    private final int[] _table;
+
+    /*
+     * Transitions, indexed by transition id
+     */
+    private final int[] _transSource;
+    private final int[] _transMessage;
+    private final String[] _transAction;
+    private final int[] _transTarget;
+
+    /*
+     * Guards, or null if no transition is guarded: names of the guards, and
+     * by transition id the guard, or -1, and the transition evaluated next
+     * when the guard does not hold, or -1
+     */
+    private final String[] _guardNames;
+    private final int[] _transGuard;
+    private final int[] _transNext;
+
+    private transient volatile Bindings _bindings;
+    private transient volatile long _fingerprint;
+    private transient AtomicLongArray _guardHits;
+    private transient AtomicLongArray _guardMisses;
+
+    /**
+     * <p>
+     * This constructor allows to compile a FSM definition from a
+     * Configuration File.
+     * </p>
+     * 
+     * @param configFName
+     * Configuration file path. If empty, default configuration file is used.
+     * File can either be a XML Configuration file or a definition written by
+     * {@link #writeBinary(OutputStream)}; the latter is memory-mapped.
+     * 
+     * @param extFile
+     * Flag to indicate if resource file needs to be used or an external
+     * configuration file needs to be used.
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public FSMDefinition(String configFName, boolean extFile)
+            throws ParserConfigurationException, SAXException, IOException {
+        this(compile(configFName, extFile));
+    }
+
+    /**
+     * <p>
+     * This constructor allows to compile a FSM definition from the
+     * InputStream of a XML Configuration file.
+     * </p>
+     * 
+     * @param configFStream InputStream of a XML Configuration file, or of a
+     *                      definition written by {@link #writeBinary(OutputStream)}
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public FSMDefinition(InputStream configFStream)
+            throws ParserConfigurationException, SAXException, IOException {
+        this(compile(configFStream));
+    }
+
+    private FSMDefinition(Compiler c) throws SAXException {
+        this(c._stateNames, c._stateFlags, c._stateParents, c._messageNames,
+                c._source, c._message, c._action, c._target, c._guard);
+    }
+
+    private FSMDefinition(String[] stateNames, int[] stateFlags,
+            int[] stateParents, String[] messageNames, int[] transSource,
+            int[] transMessage, String[] transAction, int[] transTarget,
+            String[] transGuard) throws SAXException {
+        int count = stateNames.length;
+        if (count == 0) {
+            throw new SAXException("No STATE is defined in the configuration");
+        }
+        this._stateNames = stateNames;
+        this._stateFlags = stateFlags;
+        this._stateParents = stateParents;
+        this._stateIds = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) { this._stateIds.put(stateNames[i], i); }
+        this._messageNames = messageNames;
+        this._messageIds = new HashMap<>(messageNames.length * 2);
+        for (int m = 0; m < messageNames.length; m++) {
+            this._messageIds.put(messageNames[m], m);
+        }
+
+        this._transSource = transSource;
+        this._transMessage = transMessage;
+        this._transAction = transAction;
+        this._transTarget = transTarget;
+
+        long cells = (long) count * messageNames.length;
+        if (cells > Integer.MAX_VALUE) {
+            throw new SAXException("Configuration too large: " + count
+                    + " states and " + messageNames.length + " messages");
+        }
+        this._table = new int[(int) cells];
+        Arrays.fill(this._table, -1);
+        if (transGuard == null) {
+            this._guardNames = null;
+            this._transGuard = null;
+            this._transNext = null;
+            for (int t = 0; t < transSource.length; t++) {
+                this._table[transSource[t] * messageNames.length
+                        + transMessage[t]] = t;
+            }
+        } else {
+            ArrayList<String> names = new ArrayList<>();
+            this._transGuard = new int[transSource.length];
+            for (int t = 0; t < transSource.length; t++) {
+                int _g = (transGuard[t] == null) ? -1 : names.indexOf(transGuard[t]);
+                if (_g < 0 && transGuard[t] != null) {
+                    _g = names.size();
+                    names.add(transGuard[t]);
+                }
+                this._transGuard[t] = _g;
+            }
+            this._guardNames = names.toArray(new String[names.size()]);
+            this._transNext = chain();
+        }
+        if (stateParents != null) inherit();
+
+        this._bindings = newBindings();
+        newGuardStatistics();
+    }
+
+    /*
+     * Orders the transitions of each message of a state into the table and
+     * the list of alternatives: guarded ones in configuration order, then
+     * the one without guard
+     */
+    private int[] chain() {
+        int messages = this._messageNames.length;
+        int[] next = new int[this._transSource.length];
+        Arrays.fill(next, -1);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int t = 0; t < next.length; t++) {
+                if ((this._transGuard[t] < 0) != (pass == 1)) continue;
+                int cell = this._transSource[t] * messages + this._transMessage[t];
+                int _t = this._table[cell];
+                if (_t < 0) {
+                    this._table[cell] = t;
+                    continue;
+                }
+                while (next[_t] >= 0) _t = next[_t];
+                next[_t] = t;
+            }
+        }
+        return next;
+    }
+
+    private void newGuardStatistics() {
+        if (this._transGuard == null) return;
+        this._guardHits = new AtomicLongArray(this._transGuard.length);
+        this._guardMisses = new AtomicLongArray(this._transGuard.length);
+    }
+
+    /*
+     * Enters the transitions of enclosing states into the table of nested
+     * states, enclosing states first; transitions of the enclosing state
+     * follow the guarded ones of the nested state for the same message
+     */
+    private void inherit() throws SAXException {
+        int count = this._stateNames.length;
+        int messages = this._messageNames.length;
+        int[] depth = new int[count];
+        for (int i = 0; i < count; i++) {
+            for (int p = this._stateParents[i]; p >= 0;
+                    p = this._stateParents[p]) {
+                if (p >= count || ++depth[i] >= count) {
+                    throw new SAXException("STATE " + this._stateNames[i]
+                            + " is nested in itself");
+                }
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Integer.compare(depth[x], depth[y]));
+        for (int i : order) {
+            int p = this._stateParents[i];
+            if (p < 0) continue;
+            for (int m = 0; m < messages; m++) {
+                int inherited = this._table[p * messages + m];
+                int _t = this._table[i * messages + m];
+                if (_t < 0) {
+                    this._table[i * messages + m] = inherited;
+                } else if (this._transNext != null && inherited >= 0) {
+                    while (this._transNext[_t] >= 0) _t = this._transNext[_t];
+                    if (this._transGuard[_t] >= 0) this._transNext[_t] = inherited;
+                }
+            }
+        }
+    }
+
+    private static Compiler compile(String configFName, boolean extFile)
+            throws SAXException, IOException {
+        String name = "".equals(configFName) ? __DefaultConfig : configFName;
+        if (extFile) {
+            try (FileChannel ch = FileChannel.open(Paths.get(name),
+                    StandardOpenOption.READ)) {
+                ByteBuffer magic = ByteBuffer.allocate(4);
+                ch.read(magic, 0);
+                if (magic.position() == 4 && magic.getInt(0) == __BinaryMagic) {
+                    /* Binary definition; no parsing of XML required */
+                    return load(ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                            ch.size()));
+                }
+            }
+        }
+        InputStream in = extFile ? new FileInputStream(name)
+                : FSMDefinition.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Configuration resource not found: " + name);
+        }
+        try {
+            return compile(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Compiler compile(InputStream configFStream)
+            throws SAXException, IOException {
+        InputStream in = configFStream.markSupported() ? configFStream
+                : new BufferedInputStream(configFStream);
+        in.mark(4);
+        byte[] magic = new byte[4];
+        int read = 0;
+        while (read < 4) {
+            int n = in.read(magic, read, 4 - read);
+            if (n < 0) break;
+            read += n;
+        }
+        in.reset();
+        if (read == 4 && ByteBuffer.wrap(magic).getInt() == __BinaryMagic) {
+            ByteArrayOutputStream _b = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0;) { _b.write(buf, 0, n); }
+            return load(ByteBuffer.wrap(_b.toByteArray()));
+        }
+
+        Compiler c = new Compiler();
+        FSMConfigReader.read(in, c);
+        c.finish();
+        return c;
+    }
+
+    private static Compiler load(ByteBuffer b) throws IOException {
+        Compiler c = new Compiler();
+        try {
+            c.load(b);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated binary FSM definition", e);
+        }
+        return c;
+    }
+
+    /**
+     * Method writes this definition in the binary format, which can be
+     * loaded back by the constructors of this class in place of the XML
+     * Configuration file. Loading the binary format does not require any
+     * XML parsing; files are memory-mapped.
+     * 
+     * <p>
+     * Format, all integers big-endian:
+     * </p>
+     * <pre>
+     *  int magic ("FSMB"), int version
+     *  int states, int messages, int names, int transitions
+     *  states   x { string name, int flags (1: terminal) }
+     *  messages x { string name }
+     *  names    x { string action name }
+     *  int[transitions] source state, int[transitions] message,
+     *  int[transitions] action name, int[transitions] next state
+     *  int[states] enclosing state or -1, in versions 2 and 3
+     *  int[transitions] guard name or -1, in version 3 only
+     * </pre>
+     * where a string is written as an int length followed by the UTF-8 bytes.
+     * Version 1 is written for definitions without nested states or guards,
+     * version 2 for definitions with nested states but no guards.
+     * 
+     * @param out Stream the definition is written to; stream is flushed but
+     *            not closed
+     * 
+     * @throws IOException
+     * In case an error is encountered writing to the stream
+     */
+    public void writeBinary(OutputStream out) throws IOException {
+        HashMap<String, Integer> pool = new HashMap<>();
+        ArrayList<String> names = new ArrayList<>();
+        int transitions = this._transSource.length;
+        int[] action = new int[transitions];
+        for (int t = 0; t < transitions; t++) {
+            action[t] = Compiler.id(pool, names, this._transAction[t]);
+        }
+        int[] guard = null;
+        if (this._transGuard != null) {
+            guard = new int[transitions];
+            for (int t = 0; t < transitions; t++) {
+                guard[t] = (this._transGuard[t] < 0) ? -1 : Compiler.id(pool,
+                        names, this._guardNames[this._transGuard[t]]);
+            }
+        }
+
+        DataOutputStream d = new DataOutputStream(new BufferedOutputStream(out));
+        d.writeInt(__BinaryMagic);
+        d.writeInt((guard != null) ? __BinaryVersionGuarded
+                : (this._stateParents != null) ? __BinaryVersionNested
+                : __BinaryVersion);
+        d.writeInt(this._stateNames.length);
+        d.writeInt(this._messageNames.length);
+        d.writeInt(names.size());
+        d.writeInt(transitions);
+        for (int i = 0; i < this._stateNames.length; i++) {
+            writeString(d, this._stateNames[i]);
+            d.writeInt(flags(i));
+        }
+        for (String message : this._messageNames) { writeString(d, message); }
+        for (String name : names) { writeString(d, name); }
+        for (int t = 0; t < transitions; t++) { d.writeInt(this._transSource[t]); }
+        for (int t = 0; t < transitions; t++) { d.writeInt(this._transMessage[t]); }
+        for (int t = 0; t < transitions; t++) { d.writeInt(action[t]); }
+        for (int t = 0; t < transitions; t++) { d.writeInt(this._transTarget[t]); }
+        if (this._stateParents != null) {
+            for (int parent : this._stateParents) { d.writeInt(parent); }
+        } else if (guard != null) {
+            for (int i = 0; i < this._stateNames.length; i++) { d.writeInt(-1); }
+        }
+        if (guard != null) {
+            for (int t = 0; t < transitions; t++) { d.writeInt(guard[t]); }
+        }
+        d.flush();
+    }
+
+    private static void writeString(DataOutputStream d, String s)
+            throws IOException {
+        byte[] _b = s.getBytes(StandardCharsets.UTF_8);
+        d.writeInt(_b.length);
+        d.write(_b);
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this._bindings = newBindings();
+        newGuardStatistics();
+    }
+
+    /**
+     * Method returns a 64-bit fingerprint of the states and transitions of
+     * this definition. Definitions compiled from the same configuration have
+     * the same fingerprint, in any JVM; actions and hooks are not part of
+     * the fingerprint. Definitions without terminal or nested states or
+     * guards keep the fingerprint they had before these were introduced.
+     * 
+     * @return Returns the fingerprint of this definition
+     */
+    public long getFingerprint() {
+        long _f = this._fingerprint;
+        if (_f == 0) {
+            /* FNV-1a over names and transition table */
+            _f = 0xcbf29ce484222325L;
+            _f = fingerprint(_f, this._stateNames.length);
+            for (String state : this._stateNames) { _f = fingerprint(_f, state); }
+            _f = fingerprint(_f, this._messageNames.length);
+            for (String message : this._messageNames) { _f = fingerprint(_f, message); }
+            _f = fingerprint(_f, this._transSource.length);
+            for (int t = 0; t < this._transSource.length; t++) {
+                _f = fingerprint(_f, this._transSource[t]);
+                _f = fingerprint(_f, this._transMessage[t]);
+                _f = fingerprint(_f, this._transAction[t]);
+                _f = fingerprint(_f, this._transTarget[t]);
+            }
+            for (int i = 0; i < this._stateNames.length; i++) {
+                if (flags(i) == 0) continue;
+                _f = fingerprint(_f, i);
+                _f = fingerprint(_f, flags(i));
+            }
+            if (this._stateParents != null) {
+                for (int parent : this._stateParents) { _f = fingerprint(_f, parent); }
+            }
+            if (this._transGuard != null) {
+                for (int t = 0; t < this._transGuard.length; t++) {
+                    _f = fingerprint(_f, (this._transGuard[t] < 0)
+                            ? "" : this._guardNames[this._transGuard[t]]);
+                }
+            }
+            if (_f == 0) _f = 1;
+            this._fingerprint = _f;
+        }
+        return _f;
+    }
+
+    private static long fingerprint(long f, int value) {
+        for (int i = 0; i < 4; i++, value >>>= 8) {
+            f = (f ^ (value & 0xff)) * 0x100000001b3L;
+        }
+        return f;
+    }
+
+    private static long fingerprint(long f, String value) {
+        f = fingerprint(f, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            f = (f ^ (c & 0xff)) * 0x100000001b3L;
+            f = (f ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return f;
+    }
+
+    /**
+     * 
+     * @return Returns the number of states in this definition
+     */
+    public int getStateCount() { return this._stateNames.length; }
+
+    /**
+     * 
+     * @return Returns the number of transitions in this definition
+     */
+    public int getTransitionCount() { return this._transSource.length; }
+
+    /**
+     * 
+     * @return Returns the id of the initial state of the FSM
+     */
+    public int getInitialState() { return 0; }
+
+    /**
+     * 
+     * @param state Name of the state
+     * 
+     * @return Returns the id of the state, or -1 if no such state is defined
+     */
+    public int getStateId(String state) {
+        Integer _i = this._stateIds.get(state);
+        return (_i == null) ? -1 : _i;
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns the name of the state
+     */
+    public String getStateName(int stateId) { return this._stateNames[stateId]; }
+
+    /**
+     * Method tells whether the specified state is terminal, i.e. marked as
+     * such by the attribute <code>terminal="true"</code> of its STATE
+     * element: an instance reaching it has completed its session.
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns true if the state is terminal
+     */
+    public boolean isTerminal(int stateId) {
+        return (flags(stateId) & __Terminal) != 0;
+    }
+
+    /*
+     * Flags of a state; definitions serialized before flags were introduced
+     * have none
+     */
+    private int flags(int stateId) {
+        return (this._stateFlags == null) ? 0 : this._stateFlags[stateId];
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns the id of the state the specified state is nested in,
+     *         or -1 if it is not nested
+     */
+    public int getParent(int stateId) {
+        return (this._stateParents == null) ? -1 : this._stateParents[stateId];
+    }
+
+    /**
+     * 
+     * @return Returns true if some states are nested in others
+     */
+    public boolean isNested() { return this._stateParents != null; }
+
+    /**
+     * 
+     * @return Returns the names of all states, in configuration order
+     */
+    public List<String> getStateNames() {
+        return Collections.unmodifiableList(Arrays.asList(this._stateNames));
+    }
+
+    /**
+     * 
+     * @return Returns the number of distinct messages in this definition
+     */
+    public int getMessageCount() { return this._messageNames.length; }
+
+    /**
+     * 
+     * @param message Message Id, as specified in the configuration
+     * 
+     * @return Returns the numeric id of the message, or -1 if the message is
+     *         not handled in any state
+     */
+    public int getMessageId(String message) {
+        Integer _i = this._messageIds.get(message);
+        return (_i == null) ? -1 : _i;
+    }
+
+    /**
+     * 
+     * @param messageId Numeric id of the message
+     * 
+     * @return Returns the Message Id, as specified in the configuration
+     */
+    public String getMessageName(int messageId) { return this._messageNames[messageId]; }
+
+    /**
+     * Method looks up the transition for a message received in a state.
+     * 
+     * @param stateId Id of the state in which message is received
+     * @param message Received Message Id
+     * 
+     * @return Returns the id of the transition, or -1 if the message is not
+     *         handled in the specified state
+     */
+    public int getTransition(int stateId, String message) {
+        Integer _m = this._messageIds.get(message);
+        return (_m == null) ? -1 : getTransition(stateId, _m);
+    }
+
+    /**
+     * Method looks up the transition for a message received in a state.
+     * If the message has guarded transitions in the state, the first of
+     * them is returned, whatever its guard; see
+     * {@link #getTransition(int, int, Object)}.
+     * 
+     * @param stateId Id of the state in which message is received
+     * @param messageId Numeric id of the received message
+     * 
+     * @return Returns the id of the transition, or -1 if the message is not
+     *         handled in the specified state
+     */
+    public int getTransition(int stateId, int messageId) {
+        if (messageId < 0 || messageId >= this._messageNames.length) return -1;
+        return this._table[stateId * this._messageNames.length + messageId];
+    }
+
+    /**
+     * Method looks up the transition taken for a message received in a
+     * state, evaluating the guards of its transitions over the specified
+     * shared data as per {@link #selectTransition(int, Object)}.
+     * 
+     * @param stateId Id of the state in which message is received
+     * @param messageId Numeric id of the received message
+     * @param sharedData Shared data passed to the guards
+     * 
+     * @return Returns the id of the transition, or -1 if the message is not
+     *         handled in the specified state or no guard holds
+     */
+    public int getTransition(int stateId, int messageId, Object sharedData) {
+        return selectTransition(getTransition(stateId, messageId), sharedData);
+    }
+
+    /**
+     * Method looks up the transition taken for a message received in a
+     * state, as per {@link #getTransition(int, int, Object)}.
+     * 
+     * @param stateId Id of the state in which message is received
+     * @param message Received Message Id
+     * @param sharedData Shared data passed to the guards
+     * 
+     * @return Returns the id of the transition, or -1 if the message is not
+     *         handled in the specified state or no guard holds
+     */
+    public int getTransition(int stateId, String message, Object sharedData) {
+        return selectTransition(getTransition(stateId, message), sharedData);
+    }
+
+    /**
+     * Method evaluates the guards of the transitions of a message in a
+     * state, in order, starting from the specified one: the first transition
+     * whose guard holds, or which has no guard, is returned. A guard which
+     * is not registered does not hold. Transitions without guard are
+     * returned as they are, without any evaluation.
+     * 
+     * @param transition Id of the transition, as returned by
+     *                   {@link #getTransition(int, int)}, or -1
+     * @param sharedData Shared data passed to the guards
+     * 
+     * @return Returns the id of the transition to be taken, or -1 if no
+     *         guard holds
+     */
+    public int selectTransition(int transition, Object sharedData) {
+        final int[] _g = this._transGuard;
+        if (_g == null || transition < 0 || _g[transition] < 0) return transition;
+        final FSMGuard[] guards = this._bindings._guards;
+        for (int _t = transition; _t >= 0; _t = this._transNext[_t]) {
+            int guard = _g[_t];
+            if (guard < 0) return _t;
+            FSMGuard _p = guards[guard];
+            if (recordGuard(_t, _p != null && _p.guard(sharedData))) return _t;
+        }
+        return -1;
+    }
+
+    /*
+     * Counts an evaluation of the guard of a transition
+     */
+    boolean recordGuard(int transition, boolean holds) {
+        (holds ? this._guardHits : this._guardMisses).incrementAndGet(transition);
+        return holds;
+    }
+
+    /**
+     * 
+     * @param stateId Id of the state
+     * 
+     * @return Returns the ids of all transitions taken in the state,
+     *         including the ones inherited from enclosing states and every
+     *         guarded transition of a message
+     */
+    public int[] getTransitions(int stateId) {
+        int messages = this._messageNames.length;
+        int count = 0;
+        for (int m = 0; m < messages; m++) {
+            for (int _t = this._table[stateId * messages + m]; _t >= 0;
+                    _t = getTransitionAlternative(_t)) {
+                count++;
+            }
+        }
+        int[] _r = new int[count];
+        int i = 0;
+        for (int m = 0; m < messages; m++) {
+            for (int _t = this._table[stateId * messages + m]; _t >= 0;
+                    _t = getTransitionAlternative(_t)) {
+                _r[i++] = _t;
+            }
+        }
+        Arrays.sort(_r);
+        return _r;
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the id of the state in which transition is defined;
+     *         states nested in it may inherit the transition
+     */
+    public int getTransitionSource(int transition) { return this._transSource[transition]; }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the Message Id which triggers the transition
+     */
+    public String getTransitionMessage(int transition) {
+        return this._messageNames[this._transMessage[transition]];
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the numeric id of the message which triggers the
+     *         transition
+     */
+    public int getTransitionMessageId(int transition) {
+        return this._transMessage[transition];
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the name of action/message configured for the transition
+     */
+    public String getTransitionAction(int transition) { return this._transAction[transition]; }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the name of the next state configured for the transition
+     */
+    public String getTransitionNextState(int transition) {
+        return this._stateNames[this._transTarget[transition]];
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the id of the next state
+     */
+    public int getTransitionTarget(int transition) { return this._transTarget[transition]; }
+
+    /**
+     * 
+     * @return Returns true if some transitions are guarded
+     */
+    public boolean isGuarded() { return this._transGuard != null; }
+
+    /**
+     * 
+     * @return Returns the names of the guards of the transitions, in
+     *         configuration order
+     */
+    public List<String> getGuardNames() {
+        return (this._guardNames == null) ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(this._guardNames));
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the name of the guard of the transition, or null if
+     *         the transition is not guarded
+     */
+    public String getTransitionGuard(int transition) {
+        return (this._transGuard == null || this._transGuard[transition] < 0)
+                ? null : this._guardNames[this._transGuard[transition]];
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the id of the transition evaluated next for the same
+     *         message in the same state when the guard of the specified one
+     *         does not hold, or -1
+     */
+    public int getTransitionAlternative(int transition) {
+        return (this._transNext == null) ? -1 : this._transNext[transition];
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the number of times the guard of the transition held
+     */
+    public long getGuardHits(int transition) {
+        return (this._guardHits == null) ? 0 : this._guardHits.get(transition);
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the number of times the guard of the transition did
+     *         not hold
+     */
+    public long getGuardMisses(int transition) {
+        return (this._guardMisses == null) ? 0 : this._guardMisses.get(transition);
+    }
+
+    /**
+     * Method returns the plan of a transition, resolved as per the actions
+     * and hooks currently registered on the definition.
+     * 
+     * @param transition Id of the transition
+     * 
+     * @return Returns the plan to be executed to take the transition
+     */
+    public FSMTransitionPlan getPlan(int transition) {
+        return this._bindings._plans[transition];
+    }
+
+    /**
+     * This method allows to set the default action method, which is invoked
+     * when no specific action method is set for a transition. On a cached
+     * definition, it applies to every user of the definition.
+     * 
+     * @param act Default action method
+     */
+    public synchronized void setDefaultAction(FSMAction act) {
+        Bindings b = this._bindings.copy();
+        b._default = act;
+        for (int t = 0; t < this._transSource.length; t++) {
+            b._plans[t] = newPlan(b, t);
+        }
+        this._bindings = b;
+    }
+
+    /**
+     * This method allows to set specific action methods for a specific
+     * message/action in the specified list of states. On a cached
+     * definition, they apply to every user of the definition.
+     * 
+     * @param states List of states for which specified action method needs to
+     *               be initiated. If passed null, action is set in all states,
+     *               states inheriting the message from an enclosing state
+     *               taking the action set on that state
+     * @param message Message/Action which is received
+     * @param act Action method which needs to be initiated when message/action
+     *            is received
+     * 
+     * @throws IllegalArgumentException
+     * In case one of the states inherits the message from an enclosing
+     * state; no action is set then
+     */
+    public synchronized void setAction(List<String> states, String message,
+            FSMAction act) {
+        int _m = getMessageId(message);
+        if (states != null && _m >= 0) {
+            for (String s : states) {
+                int _s = getStateId(s);
+                int _t = (_s < 0) ? -1 : getTransition(_s, _m);
+                if (_t >= 0 && this._transSource[_t] != _s) {
+                    throw new IllegalArgumentException(message
+                            + " is inherited by " + s + " from "
+                            + this._stateNames[this._transSource[_t]]);
+                }
+            }
+        }
+        Bindings b = this._bindings.copy();
+        for (int t = 0; t < this._transSource.length; t++) {
+            if (this._transMessage[t] == _m && (states == null
+                    || states.contains(this._stateNames[this._transSource[t]]))) {
+                b._actions[t] = act;
+                b._plans[t] = newPlan(b, t);
+            }
+        }
+        this._bindings = b;
+    }
+
+    /**
+     * This method allows to set specific action methods for a specific
+     * message/action in the specified state.
+     * 
+     * @param state State for which this override action method needs to be
+     *              initiated
+     * @param message Message/Action which is received
+     * @param act Action method which needs to be initiated when message/action
+     *            is received
+     */
+    public void setAction(String state, String message, FSMAction act) {
+        setAction(Arrays.asList(state), message, act);
+    }
+
+    /**
+     * This method allows to set specific action methods for a specific
+     * message/action in any state.
+     * 
+     * @param message Message/Action which is received
+     * @param act Action method which needs to be initiated when message/action
+     *            is received
+     */
+    public void setAction(String message, FSMAction act) {
+        setAction((List<String>) null, message, act);
+    }
+
+    /**
+     * This method allows to set entry methods for the specified states.
+     * 
+     * @param states List of State for which entry function is being assigned
+     *               If passed null, entry method is applied to all states
+     * @param act Entry method which needs to be initiated when any message/action
+     *            is received on specified state
+     */
+    public synchronized void setStateBeforeTransition(List<String> states,
+            FSMStateAction act) {
+        Bindings b = this._bindings.copy();
+        for (int i = 0; i < this._stateNames.length; i++) {
+            if (states == null || states.contains(this._stateNames[i])) {
+                b._before[i] = act;
+            }
+        }
+        replan(b);
+        this._bindings = b;
+    }
+
+    /**
+     * This method allows to set entry method for the specified state.
+     * 
+     * @param state State for which entry function is being assigned
+     * @param act Entry method which needs to be initiated when any message/action
+     *            is received on specified state
+     */
+    public void setStateBeforeTransition(String state, FSMStateAction act) {
+        setStateBeforeTransition(Arrays.asList(state), act);
+    }
+
+    /**
+     * This method allows to set exit methods for the specified states.
+     * 
+     * @param states List of State for which exit function is being assigned
+     *               If passed null, exit method is applied to all states
+     * @param act Exit method which needs to be initiated when any message/action
+     *            is received on specified state
+     */
+    public synchronized void setStateAfterTransition(List<String> states,
+            FSMStateAction act) {
+        Bindings b = this._bindings.copy();
+        for (int i = 0; i < this._stateNames.length; i++) {
+            if (states == null || states.contains(this._stateNames[i])) {
+                b._after[i] = act;
+            }
+        }
+        replan(b);
+        this._bindings = b;
+    }
+
+    /**
+     * This method allows to set exit method for the specified state.
+     * 
+     * @param state State for which exit function is being assigned
+     * @param act Exit method which needs to be initiated when any message/action
+     *            is received on specified state
+     */
+    public void setStateAfterTransition(String state, FSMStateAction act) {
+        setStateAfterTransition(Arrays.asList(state), act);
+    }
+
+    /**
+     * This method allows to set the condition of the transitions guarded by
+     * the specified guard name. On a cached definition, the condition and
+     * its counters are shared by every user of the definition; FSMs take
+     * their own conditions, see
+     * {@link com.github.ankzz.dynamicfsm.fsm.FSM#setGuard(String, FSMGuard)}.
+     * 
+     * @param guard Name of the guard, as per the guard attribute of MESSAGE
+     *              elements
+     * @param condition Condition evaluated over the shared data, or null so
+     *                  that the guard never holds
+     * 
+     * @throws IllegalArgumentException
+     * In case no transition is guarded by the specified guard name
+     */
+    public synchronized void setGuard(String guard, FSMGuard condition) {
+        int _g = guardId(guard);
+        if (_g < 0) {
+            throw new IllegalArgumentException(
+                    "No MESSAGE is guarded by " + guard);
+        }
+        Bindings b = this._bindings.copy();
+        b._guards[_g] = condition;
+        this._bindings = b;
+    }
+
+    private int guardId(String guard) {
+        return (this._guardNames == null)
+                ? -1 : Arrays.asList(this._guardNames).indexOf(guard);
+    }
+
+    /*
+     * Id of the guard of a transition, as per getGuardNames(), or -1
+     */
+    int getTransitionGuardId(int transition) {
+        return (this._transGuard == null) ? -1 : this._transGuard[transition];
+    }
+
+    /*
+     * Actions, guards and hooks currently registered, by transition or
+     * state id; a state without hooks of its own has the ones of the
+     * enclosing states
+     */
+    FSMAction getAction(int transition) {
+        return this._bindings._actions[transition];
+    }
+
+    FSMGuard getGuard(int transition) {
+        return (this._transGuard == null || this._transGuard[transition] < 0)
+                ? null : this._bindings._guards[this._transGuard[transition]];
+    }
+
+    FSMStateAction getBefore(int stateId) {
+        return hook(this._bindings._before, stateId);
+    }
+
+    FSMStateAction getAfter(int stateId) {
+        return hook(this._bindings._after, stateId);
+    }
+
+    private FSMStateAction hook(FSMStateAction[] hooks, int stateId) {
+        FSMStateAction _h = hooks[stateId];
+        for (int p = getParent(stateId); _h == null && p >= 0; p = getParent(p)) {
+            _h = hooks[p];
+        }
+        return _h;
+    }
+
+    /*
+     * Creates a definition in which nested states hold the transitions they
+     * inherit as transitions of their own, with the hooks they inherit
+     */
+    FSMDefinition flatten() throws SAXException {
+        if (this._stateParents == null) return this;
+        int count = this._stateNames.length;
+        int messages = this._messageNames.length;
+        int[] states = new int[count];
+        for (int i = 0; i < count; i++) states[i] = i;
+        int n = 0;
+        for (int i = 0; i < count; i++) n += getTransitions(i).length;
+        int[] sources = new int[n];
+        int[] transitions = new int[n];
+        n = 0;
+        /* Guarded transitions in the order they are evaluated */
+        for (int i = 0; i < count; i++) {
+            for (int m = 0; m < messages; m++) {
+                for (int t = this._table[i * messages + m]; t >= 0;
+                        t = getTransitionAlternative(t)) {
+                    sources[n] = i;
+                    transitions[n++] = t;
+                }
+            }
+        }
+        return subset(states, states, transitions, sources);
+    }
+
+    /*
+     * Creates a definition made of some states and transitions of this one,
+     * carrying registered actions and hooks over. states lists the states
+     * kept, in their new order; stateMap maps every state of this definition
+     * to its id in the new one, or -1 if dropped; transitions lists the
+     * transitions kept, taken from the states kept listed by sources, the
+     * guarded transitions of a message in the order they are evaluated. The
+     * new definition has no nested states. Messages no longer handled are
+     * dropped.
+     */
+    FSMDefinition subset(int[] states, int[] stateMap, int[] transitions,
+            int[] sources) throws SAXException {
+        String[] stateNames = new String[states.length];
+        int[] stateFlags = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            stateNames[i] = this._stateNames[states[i]];
+            stateFlags[i] = flags(states[i]);
+        }
+
+        int[] messageMap = new int[this._messageNames.length];
+        Arrays.fill(messageMap, -1);
+        ArrayList<String> messages = new ArrayList<>();
+        int count = transitions.length;
+        int[] source = new int[count];
+        int[] message = new int[count];
+        String[] action = new String[count];
+        int[] target = new int[count];
+        String[] guard = (this._transGuard == null) ? null : new String[count];
+        boolean guarded = false;
+        for (int n = 0; n < count; n++) {
+            int t = transitions[n];
+            int m = this._transMessage[t];
+            if (messageMap[m] < 0) {
+                messageMap[m] = messages.size();
+                messages.add(this._messageNames[m]);
+            }
+            source[n] = stateMap[sources[n]];
+            message[n] = messageMap[m];
+            action[n] = this._transAction[t];
+            target[n] = stateMap[this._transTarget[t]];
+            if (guard != null) guard[n] = getTransitionGuard(t);
+            guarded |= (guard != null && guard[n] != null);
+        }
+
+        FSMDefinition def = new FSMDefinition(stateNames, stateFlags, null,
+                messages.toArray(new String[messages.size()]),
+                source, message, action, target, guarded ? guard : null);
+        Bindings from = this._bindings;
+        Bindings b = new Bindings(states.length, count, def.getGuardNames().size());
+        b._default = from._default;
+        for (int g = 0; g < b._guards.length; g++) {
+            b._guards[g] = from._guards[guardId(def._guardNames[g])];
+        }
+        for (int i = 0; i < states.length; i++) {
+            b._before[i] = hook(from._before, states[i]);
+            b._after[i] = hook(from._after, states[i]);
+        }
+        for (int n = 0; n < count; n++) {
+            b._actions[n] = from._actions[transitions[n]];
+            b._plans[n] = def.newPlan(b, n);
+        }
+        def._bindings = b;
+        return def;
+    }
+
+    private Bindings newBindings() {
+        Bindings b = new Bindings(this._stateNames.length,
+                this._transSource.length,
+                (this._guardNames == null) ? 0 : this._guardNames.length);
+        replan(b);
+        return b;
+    }
+
+    /*
+     * Rebuilds the plans whose state hooks differ from the registered ones
+     */
+    private void replan(Bindings b) {
+        for (int t = 0; t < this._transSource.length; t++) {
+            FSMTransitionPlan p = b._plans[t];
+            int target = this._transTarget[t];
+            if (p == null || hook(b._before, target) != p.getBefore()
+                    || hook(b._after, target) != p.getAfter()) {
+                b._plans[t] = newPlan(b, t);
+            }
+        }
+    }
+
+    private FSMTransitionPlan newPlan(Bindings b, int t) {
+        int target = this._transTarget[t];
+        return new FSMTransitionPlan(t, null, target, this._transAction[t],
+                this._stateNames[target], b._actions[t], b._default,
+                hook(b._before, target), hook(b._after, target));
+    }
+
+    /*
+     * Compiles the configuration while it is being read. States and messages
+     * are numbered in order of appearance, names are shared between
+     * transitions and next states are resolved once all states are known.
+     */
+    private static final class Compiler implements FSMConfigHandler {
+        private final HashMap<String, Integer> _stateIds = new HashMap<>();
+        private final ArrayList<String> _states = new ArrayList<>();
+        private final HashMap<String, Integer> _messageIds = new HashMap<>();
+        private final ArrayList<String> _messages = new ArrayList<>();
+        private final HashMap<String, String> _names = new HashMap<>();
+
+        private int _state = -1;
+        private int[] _flags = new int[16];
+        private int[] _parents;
+        private int _count = 0;
+        private int[] _source = new int[16];
+        private int[] _message = new int[16];
+        private String[] _action = new String[16];
+        private String[] _next = new String[16];
+        private String[] _guard;
+
+        /* Result of the compilation */
+        private String[] _stateNames;
+        private int[] _stateFlags;
+        private int[] _stateParents;
+        private String[] _messageNames;
+        private int[] _target;
+
+        @Override
+        public void state(String stateId) {
+            state(stateId, false);
+        }
+
+        @Override
+        public void state(String stateId, boolean terminal) {
+            /* A repeated STATE id denotes the same state */
+            this._state = id(this._stateIds, this._states, stateId);
+            if (this._state == this._flags.length) {
+                this._flags = Arrays.copyOf(this._flags, this._state * 2);
+            }
+            if (terminal) this._flags[this._state] |= __Terminal;
+        }
+
+        @Override
+        public void state(String stateId, boolean terminal, String parentId)
+                throws SAXException {
+            state(stateId, terminal);
+            if (parentId == null) return;
+
+            int parent = this._stateIds.get(parentId);
+            if (this._parents == null) {
+                this._parents = new int[this._flags.length];
+                Arrays.fill(this._parents, -1);
+            } else if (this._parents.length < this._flags.length) {
+                int size = this._parents.length;
+                this._parents = Arrays.copyOf(this._parents, this._flags.length);
+                Arrays.fill(this._parents, size, this._parents.length, -1);
+            }
+            int _p = this._parents[this._state];
+            if (_p >= 0 && _p != parent) {
+                throw new SAXException("STATE " + stateId + " is nested in "
+                        + this._states.get(_p) + " and in " + parentId);
+            }
+            this._parents[this._state] = parent;
+        }
+
+        @Override
+        public void transition(String message, String action, String nextState) {
+            transition(message, action, nextState, null);
+        }
+
+        @Override
+        public void transition(String message, String action, String nextState,
+                String guard) {
+            if (this._count == this._source.length) {
+                int size = this._count * 2;
+                this._source = Arrays.copyOf(this._source, size);
+                this._message = Arrays.copyOf(this._message, size);
+                this._action = Arrays.copyOf(this._action, size);
+                this._next = Arrays.copyOf(this._next, size);
+                if (this._guard != null) {
+                    this._guard = Arrays.copyOf(this._guard, size);
+                }
+            }
+            if (guard != null && this._guard == null) {
+                this._guard = new String[this._source.length];
+            }
+            this._source[this._count] = this._state;
+            this._message[this._count] =
+                    id(this._messageIds, this._messages, message);
+            this._action[this._count] = name(action);
+            this._next[this._count] = name(nextState);
+            if (this._guard != null) {
+                this._guard[this._count] = (guard == null) ? null : name(guard);
+            }
+            this._count++;
+        }
+
+        private static int id(HashMap<String, Integer> ids,
+                ArrayList<String> names, String name) {
+            Integer _i = ids.get(name);
+            if (_i == null) {
+                _i = names.size();
+                ids.put(name, _i);
+                names.add(name);
+            }
+            return _i;
+        }
+
+        private String name(String name) {
+            String _n = this._names.putIfAbsent(name, name);
+            return (_n == null) ? name : _n;
+        }
+
+        private void finish() throws SAXException {
+            this._stateNames = this._states.toArray(new String[this._states.size()]);
+            this._stateFlags = Arrays.copyOf(this._flags, this._stateNames.length);
+            if (this._parents != null) {
+                int size = Math.min(this._parents.length, this._stateNames.length);
+                this._stateParents = Arrays.copyOf(this._parents,
+                        this._stateNames.length);
+                Arrays.fill(this._stateParents, size,
+                        this._stateParents.length, -1);
+            }
+            this._messageNames = this._messages.toArray(new String[this._messages.size()]);
+
+            /*
+             * A message repeated within a state overrides the earlier one,
+             * unless guarded by another guard
+             */
+            HashMap<Object, Integer> last = new HashMap<>();
+            for (int t = 0; t < this._count; t++) {
+                last.put(key(t), t);
+            }
+
+            int kept = 0;
+            this._target = new int[last.size()];
+            for (int t = 0; t < this._count; t++) {
+                if (last.get(key(t)) != t) continue;
+
+                Integer target = this._stateIds.get(this._next[t]);
+                if (target == null) {
+                    throw new SAXException("STATE "
+                            + this._stateNames[this._source[t]]
+                            + ": MESSAGE " + this._messageNames[this._message[t]]
+                            + " refers to undefined nextState " + this._next[t]);
+                }
+                this._source[kept] = this._source[t];
+                this._message[kept] = this._message[t];
+                this._action[kept] = this._action[t];
+                if (this._guard != null) this._guard[kept] = this._guard[t];
+                this._target[kept] = target;
+                kept++;
+            }
+            this._source = Arrays.copyOf(this._source, kept);
+            this._message = Arrays.copyOf(this._message, kept);
+            this._action = Arrays.copyOf(this._action, kept);
+            if (this._guard != null) {
+                this._guard = Arrays.copyOf(this._guard, kept);
+            }
+            this._next = null;
+        }
+
+        private Object key(int t) {
+            long _k = ((long) this._source[t] << 32) | this._message[t];
+            return (this._guard == null || this._guard[t] == null)
+                    ? (Object) _k : Arrays.asList(_k, this._guard[t]);
+        }
+
+        /*
+         * Reads a definition written by writeBinary
+         */
+        private void load(ByteBuffer b) throws IOException {
+            if (b.getInt() != __BinaryMagic) {
+                throw new IOException("Not a binary FSM definition");
+            }
+            int version = b.getInt();
+            if (version != __BinaryVersion && version != __BinaryVersionNested
+                    && version != __BinaryVersionGuarded) {
+                throw new IOException(
+                        "Unsupported binary FSM definition version " + version);
+            }
+            int states = b.getInt();
+            int messages = b.getInt();
+            int names = b.getInt();
+            int transitions = b.getInt();
+
+            byte[] scratch = new byte[64];
+            this._stateNames = new String[states];
+            this._stateFlags = new int[states];
+            for (int i = 0; i < states; i++) {
+                this._stateNames[i] = string(b, scratch);
+                this._stateFlags[i] = b.getInt() & __Terminal;
+            }
+            this._messageNames = new String[messages];
+            for (int m = 0; m < messages; m++) {
+                this._messageNames[m] = string(b, scratch);
+            }
+            String[] pool = new String[names];
+            for (int n = 0; n < names; n++) { pool[n] = string(b, scratch); }
+
+            this._source = new int[transitions];
+            this._message = new int[transitions];
+            this._target = new int[transitions];
+            int[] action = new int[transitions];
+            IntBuffer _i = b.asIntBuffer();
+            _i.get(this._source);
+            _i.get(this._message);
+            _i.get(action);
+            _i.get(this._target);
+            if (version != __BinaryVersion) {
+                this._stateParents = new int[states];
+                _i.get(this._stateParents);
+                boolean nested = false;
+                for (int parent : this._stateParents) nested |= (parent >= 0);
+                if (!nested) this._stateParents = null;
+            }
+            int[] guard = null;
+            if (version == __BinaryVersionGuarded) {
+                guard = new int[transitions];
+                _i.get(guard);
+                this._guard = new String[transitions];
+            }
+
+            this._action = new String[transitions];
+            for (int t = 0; t < transitions; t++) {
+                if (this._source[t] < 0 || this._source[t] >= states
+                        || this._target[t] < 0 || this._target[t] >= states
+                        || this._message[t] < 0 || this._message[t] >= messages) {
+                    throw new IOException("Corrupt binary FSM definition");
+                }
+                this._action[t] = pool[action[t]];
+                if (guard != null && guard[t] >= 0) this._guard[t] = pool[guard[t]];
+            }
+        }
+
+        private static String string(ByteBuffer b, byte[] scratch) {
+            int length = b.getInt();
+            if (b.hasArray()) {
+                int offset = b.arrayOffset() + b.position();
+                b.position(b.position() + length);
+                return new String(b.array(), offset, length, StandardCharsets.UTF_8);
+            }
+            byte[] _b = (length <= scratch.length) ? scratch : new byte[length];
+            b.get(_b, 0, length);
+            return new String(_b, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /*
+     * Actions and hooks registered on the definition, along with the plans
+     * resolved from them. A Bindings object is never modified once
+     * published; registration publishes a new copy.
+     */
+    private static final class Bindings {
+        private FSMAction _default;
+        private final FSMAction[] _actions;
+        private final FSMStateAction[] _before;
+        private final FSMStateAction[] _after;
+        private final FSMTransitionPlan[] _plans;
+        private final FSMGuard[] _guards;
+
+        private Bindings(int states, int transitions, int guards) {
+            this._actions = new FSMAction[transitions];
+            this._before = new FSMStateAction[states];
+            this._after = new FSMStateAction[states];
+            this._plans = new FSMTransitionPlan[transitions];
+            this._guards = new FSMGuard[guards];
+        }
+
+        private Bindings(Bindings b) {
+            this._default = b._default;
+            this._actions = b._actions.clone();
+            this._before = b._before.clone();
+            this._after = b._after.clone();
+            this._plans = b._plans.clone();
+            this._guards = b._guards.clone();
+        }
+
+        private Bindings copy() { return new Bindings(this); }
+    }
+}
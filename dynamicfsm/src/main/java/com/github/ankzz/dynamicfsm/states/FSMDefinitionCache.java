@@ -0,0 +1,396 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/**
+ * File: FSMDefinitionCache.java
+ * <p>
+ * Implements a cache of compiled FSM definitions, so that creating many
+ * FSMs from the same configuration parses it only once.
+ * </p>
+ * 
+ * <p>
+ * Definitions are keyed by their source:
+ * </p>
+ * <ul>
+ *  <li>external files by their resolved path; an entry is reloaded once
+ *      the modification time or size of the file changes,</li>
+ *  <li>classpath resources by their resource name,</li>
+ *  <li>streams by the SHA-256 hash of their content.</li>
+ * </ul>
+ * 
+ * <p>
+ * The cache holds at most a fixed number of definitions and evicts the
+ * least recently used one. The process-wide cache used by {@link FSMStates}
+ * holds 64 definitions by default; the size can be changed with system
+ * property <code>dynamicfsm.cache.size</code>, 0 disables caching.
+ * </p>
+ * 
+ * <p>
+ * A cache can optimize the definitions it loads, see {@link FSMOptimizer};
+ * the process-wide cache does so if system property
+ * <code>dynamicfsm.optimize</code> is set to true.
+ * </p>
+ * 
+ * <p>
+ * <b>Note:</b> a cached definition is one mutable object shared by all the
+ * users of the configuration in the process, including the definitions
+ * returned by {@link com.github.ankzz.dynamicfsm.fsm.FSMReloader#getDefinition()}
+ * and instances restored by
+ * {@link com.github.ankzz.dynamicfsm.fsm.FSMSnapshot#restore(java.io.DataInput,
+ * com.github.ankzz.dynamicfsm.fsm.FSMSnapshotCodec)}. Actions, default
+ * action, hooks and guards registered directly on it, and its guard
+ * counters, are seen by every other user, as are the instances and
+ * dispatches created from it. FSMs register theirs on their own FSM States
+ * and are not affected. A definition created with the constructors of
+ * {@link FSMDefinition} is not cached, and has bindings of its own.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public class FSMDefinitionCache {
+
+    private static final FSMDefinitionCache __Default = new FSMDefinitionCache(
+            Integer.getInteger("dynamicfsm.cache.size", 64),
+            Boolean.getBoolean("dynamicfsm.optimize"));
+
+    private final int _maxSize;
+    private final boolean _optimize;
+    private final LinkedHashMap<String, Entry> _entries;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+    private final AtomicLong _invalidations = new AtomicLong();
+    private final AtomicLong _loadTime = new AtomicLong();
+
+    /**
+     * 
+     * @param maxSize Maximum number of definitions held by the cache;
+     *                0 disables caching
+     */
+    public FSMDefinitionCache(final int maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * 
+     * @param maxSize Maximum number of definitions held by the cache;
+     *                0 disables caching
+     * @param optimize Flag to indicate if definitions loaded by the cache
+     *                 are optimized
+     */
+    public FSMDefinitionCache(final int maxSize, boolean optimize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        this._maxSize = maxSize;
+        this._optimize = optimize;
+        this._entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+                if (size() > maxSize) {
+                    _evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 
+     * @return Returns the process-wide cache
+     */
+    public static FSMDefinitionCache getDefault() { return __Default; }
+
+    /**
+     * Method returns the definition of the specified configuration, compiling
+     * it if it is not cached yet or has been modified.
+     * 
+     * @param configFName
+     * Configuration file path. If empty, default configuration file is used.
+     * 
+     * @param extFile
+     * Flag to indicate if resource file needs to be used or an external
+     * configuration file needs to be used.
+     * 
+     * @return Returns the compiled definition
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public FSMDefinition get(String configFName, boolean extFile)
+            throws ParserConfigurationException, SAXException, IOException {
+        if (this._maxSize == 0) {
+            return load(configFName, extFile);
+        }
+        if ("".equals(configFName)) configFName = FSMDefinition.__DefaultConfig;
+
+        String key;
+        long modified = 0;
+        long size = 0;
+        if (extFile) {
+            Path path = Paths.get(configFName).toRealPath();
+            BasicFileAttributes attrs = Files.readAttributes(path,
+                    BasicFileAttributes.class);
+            key = "file:" + path;
+            modified = attrs.lastModifiedTime().toMillis();
+            size = attrs.size();
+        } else {
+            key = "classpath:" + configFName;
+        }
+
+        Entry e = lookup(key, modified, size);
+        if (e != null) return e._definition;
+
+        return store(key, modified, size, load(configFName, extFile));
+    }
+
+    /**
+     * Method returns the definition of the configuration read from the
+     * specified stream, compiling it if no configuration with the same
+     * content is cached. The stream is read completely, but not closed.
+     * 
+     * @param configFStream InputStream of a XML Configuration file, or of a
+     *                      binary definition
+     * 
+     * @return Returns the compiled definition
+     * 
+     * @throws ParserConfigurationException
+     * In case an error is encountered parsing XML Configuration file
+     * 
+     * @throws SAXException
+     * In case an error is encountered in XML format
+     * 
+     * @throws IOException
+     * In case an error is encountered in interacting with configuration file
+     */
+    public FSMDefinition get(InputStream configFStream)
+            throws ParserConfigurationException, SAXException, IOException {
+        if (this._maxSize == 0) {
+            return load(configFStream);
+        }
+
+        ByteArrayOutputStream _b = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = configFStream.read(buf)) > 0;) { _b.write(buf, 0, n); }
+        byte[] content = _b.toByteArray();
+
+        String key = "sha256:" + digest(content);
+        Entry e = lookup(key, 0, content.length);
+        if (e != null) return e._definition;
+
+        return store(key, 0, content.length,
+                load(new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Method returns the cached definition with the specified fingerprint,
+     * without compiling any configuration.
+     * 
+     * @param fingerprint Fingerprint of the definition, as returned by
+     *                    {@link FSMDefinition#getFingerprint()}
+     * 
+     * @return Returns the definition, or null if no cached definition has
+     *         the specified fingerprint
+     */
+    public synchronized FSMDefinition find(long fingerprint) {
+        for (Entry e : this._entries.values()) {
+            if (e._definition.getFingerprint() == fingerprint) {
+                return e._definition;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method removes all definitions from the cache.
+     */
+    public synchronized void clear() {
+        this._invalidations.addAndGet(this._entries.size());
+        this._entries.clear();
+    }
+
+    /**
+     * 
+     * @return Returns the number of definitions currently cached
+     */
+    public synchronized int size() { return this._entries.size(); }
+
+    /**
+     * 
+     * @return Returns the maximum number of definitions held by the cache
+     */
+    public int getMaxSize() { return this._maxSize; }
+
+    /**
+     * 
+     * @return Returns true if definitions loaded by the cache are optimized
+     */
+    public boolean isOptimizing() { return this._optimize; }
+
+    /**
+     * 
+     * @return Returns the number of lookups served from the cache
+     */
+    public long getHitCount() { return this._hits.get(); }
+
+    /**
+     * 
+     * @return Returns the number of lookups which required compiling the
+     *         configuration
+     */
+    public long getMissCount() { return this._misses.get(); }
+
+    /**
+     * 
+     * @return Returns the number of definitions evicted to respect the
+     *         maximum size
+     */
+    public long getEvictionCount() { return this._evictions.get(); }
+
+    /**
+     * 
+     * @return Returns the number of definitions dropped because their file
+     *         was modified, or because the cache was cleared
+     */
+    public long getInvalidationCount() { return this._invalidations.get(); }
+
+    /**
+     * 
+     * @return Returns the total time spent compiling configurations, in
+     *         nanoseconds
+     */
+    public long getTotalLoadTime() { return this._loadTime.get(); }
+
+    @Override
+    public String toString() {
+        return "FSMDefinitionCache[size=" + size() + "/" + this._maxSize
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount()
+                + ", invalidations=" + getInvalidationCount()
+                + ", loadTime=" + getTotalLoadTime() / 1000000 + "ms]";
+    }
+
+    private synchronized Entry lookup(String key, long modified, long size) {
+        Entry e = this._entries.get(key);
+        if (e != null && (e._modified != modified || e._size != size)) {
+            this._entries.remove(key);
+            this._invalidations.incrementAndGet();
+            e = null;
+        }
+        if (e != null) {
+            this._hits.incrementAndGet();
+        } else {
+            this._misses.incrementAndGet();
+        }
+        return e;
+    }
+
+    private synchronized FSMDefinition store(String key, long modified,
+            long size, FSMDefinition def) {
+        Entry e = this._entries.get(key);
+        if (e != null && e._modified == modified && e._size == size) {
+            /* Loaded concurrently by another thread; keep a single copy */
+            return e._definition;
+        }
+        this._entries.put(key, new Entry(def, modified, size));
+        return def;
+    }
+
+    private FSMDefinition load(String configFName, boolean extFile)
+            throws ParserConfigurationException, SAXException, IOException {
+        long start = System.nanoTime();
+        try {
+            return optimize(new FSMDefinition(configFName, extFile));
+        } finally {
+            this._loadTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private FSMDefinition load(InputStream configFStream)
+            throws ParserConfigurationException, SAXException, IOException {
+        long start = System.nanoTime();
+        try {
+            return optimize(new FSMDefinition(configFStream));
+        } finally {
+            this._loadTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private FSMDefinition optimize(FSMDefinition def) {
+        return this._optimize ? new FSMOptimizer(def).getOptimized() : def;
+    }
+
+    private static String digest(byte[] content) {
+        try {
+            byte[] _d = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder _s = new StringBuilder(_d.length * 2);
+            for (byte b : _d) { _s.append(String.format("%02x", b)); }
+            return _s.toString();
+        } catch (NoSuchAlgorithmException e) {
+            /* Every Java platform is required to support SHA-256 */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final FSMDefinition _definition;
+        private final long _modified;
+        private final long _size;
+
+        private Entry(FSMDefinition definition, long modified, long size) {
+            this._definition = definition;
+            this._modified = modified;
+            this._size = size;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+/**
+ * Class implements the dispatch of messages of a definition: given a state
+ * and a message, it takes the transition, invoking the action methods and
+ * hooks, and tells the resulting state.
+ * 
+ * <p>
+ * {@link #compile(FSMDefinition)} generates a class dedicated to the
+ * definition: a <code>switch</code> over state and message ids, and one
+ * method per transition invoking its action method and hooks directly.
+ * State names, action names and callbacks are constants of the generated
+ * class, and every transition has call sites of its own, which the JIT
+ * sees as monomorphic, whatever the number of action classes of the
+ * definition. Definitions which cannot be compiled, e.g. too large for the
+ * JIT to compile the generated methods, are dispatched by an interpreted
+ * implementation, as {@link FSMTransitionPlan}s do.
+ * </p>
+ * 
+ * <pre>
+ *  FSMDispatch dispatch = FSMDispatch.compile(definition);
+ *  FSMInstance session = new FSMInstance(dispatch, sessionData);
+ * </pre>
+ * 
+ * <p>
+ * A dispatch holds the actions and hooks registered on the definition when
+ * it is created, and a compiled one the guards too; those registered
+ * afterwards require a new dispatch.
+ * </p>
+ * 
+ * <p>
+ * A dispatch holds no state and can be shared across threads.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public abstract class FSMDispatch {
+
+    private final FSMDefinition _definition;
+
+    /**
+     * 
+     * @param definition Definition dispatched
+     */
+    protected FSMDispatch(FSMDefinition definition) {
+        this._definition = definition;
+    }
+
+    /**
+     * Method generates a class dispatching the messages of the specified
+     * definition, with the actions and hooks registered on it. If the class
+     * cannot be generated, an interpreted dispatch is returned, which tells
+     * why by {@link #getFallbackReason()}.
+     * 
+     * @param definition Definition to be compiled
+     * 
+     * @return Returns the dispatch of the definition
+     */
+    public static FSMDispatch compile(FSMDefinition definition) {
+        try {
+            return FSMDispatchCompiler.compile(definition);
+        } catch (RuntimeException | LinkageError e) {
+            return new Interpreted(definition, String.valueOf(e));
+        }
+    }
+
+    /**
+     * Method returns an interpreted dispatch of the specified definition,
+     * which takes the transitions as per its plans, with the actions and
+     * hooks registered at the time.
+     * 
+     * @param definition Definition to be dispatched
+     * 
+     * @return Returns the dispatch of the definition
+     */
+    public static FSMDispatch interpreted(FSMDefinition definition) {
+        return new Interpreted(definition, null);
+    }
+
+    /**
+     * Method processes the specified message in the specified state: the
+     * action method and hooks of the transition are invoked, as per
+     * {@link FSMTransitionPlan#enter(String, Object)} and
+     * {@link FSMTransitionPlan#leave(String, boolean, Object)}.
+     * 
+     * @param stateId Id of the current state
+     * @param messageId Numeric id of the received message
+     * @param sharedData Shared data passed to the callbacks
+     * 
+     * @return Returns the id of the state after processing the message, the
+     *         current one if the action failed, or -1 if the message is not
+     *         handled in the current state
+     */
+    public abstract int process(int stateId, int messageId, Object sharedData);
+
+    /**
+     * 
+     * @return Returns true if this dispatch is a generated class
+     */
+    public abstract boolean isCompiled();
+
+    /**
+     * 
+     * @return Returns the reason why the definition was not compiled, or
+     *         null
+     */
+    public String getFallbackReason() { return null; }
+
+    /**
+     * 
+     * @return Returns the definition dispatched
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /**
+     * Method hands the constants of a generated class over to its static
+     * initializer.
+     * 
+     * @param className Name of the generated class
+     * 
+     * @return Returns the constants of the class
+     */
+    protected static Object[] constants(String className) {
+        return FSMDispatchCompiler.constants(className);
+    }
+
+    /**
+     * Method counts an evaluation of the guard of a transition by a
+     * generated class.
+     * 
+     * @param definition Definition of the transition
+     * @param transition Id of the transition
+     * @param holds Result of the guard
+     * 
+     * @return Returns the result of the guard
+     */
+    protected static boolean holds(FSMDefinition definition, int transition,
+            boolean holds) {
+        return definition.recordGuard(transition, holds);
+    }
+
+    /*
+     * Dispatch taking transitions as per their plans
+     */
+    private static final class Interpreted extends FSMDispatch {
+
+        private final FSMTransitionPlan[] _plans;
+        private final String _reason;
+
+        private Interpreted(FSMDefinition definition, String reason) {
+            super(definition);
+            this._plans = new FSMTransitionPlan[
+                    definition.getTransitionCount()];
+            for (int t = 0; t < this._plans.length; t++) {
+                this._plans[t] = definition.getPlan(t);
+            }
+            this._reason = reason;
+        }
+
+        @Override
+        public int process(int stateId, int messageId, Object sharedData) {
+            final FSMDefinition _d = getDefinition();
+            int _t = _d.getTransition(stateId, messageId, sharedData);
+            if (_t < 0) return -1;
+
+            FSMTransitionPlan _p = this._plans[_t];
+            boolean status = _p.enter(_d.getStateName(stateId), sharedData);
+            int next = status ? _p.getTargetId() : stateId;
+            _p.leave(_d.getStateName(next), status, sharedData);
+            return next;
+        }
+
+        @Override
+        public boolean isCompiled() { return false; }
+
+        @Override
+        public String getFallbackReason() { return this._reason; }
+    }
+}
@@ -0,0 +1,742 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.action.FSMGuard;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File: FSMDispatchCompiler.java
+ * <p>
+ * Generates the class of a {@link FSMDispatch} dedicated to a definition.
+ * </p>
+ * 
+ * <p>
+ * The class is written directly in the class file format, without any
+ * bytecode library, and defined by a class loader of its own, so that it
+ * can be unloaded along with the dispatch. It holds:
+ * </p>
+ * <ul>
+ * <li><code>process</code>, a <code>tableswitch</code> over the state id
+ * invoking the method of the state</li>
+ * <li>one method per state with transitions, a <code>switch</code> over the
+ * message id returning the target state of transitions without callbacks,
+ * or invoking the method of the transition; the guarded transitions of a
+ * message are taken in turn by a sequence of guard invocations</li>
+ * <li>one method per transition with callbacks, invoking them as
+ * {@link FSMTransitionPlan} would, with names as constants, and one per
+ * nested state inheriting it, whose name it passes</li>
+ * <li>the action methods, guards and hooks as <code>static final</code>
+ * fields, which the JIT treats as constants</li>
+ * </ul>
+ * <p>
+ * The class file is of version 49, which requires no stack map frames.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+final class FSMDispatchCompiler {
+
+    /*
+     * Limits beyond which the definition is not compiled: methods larger
+     * than __MaxCode bytes are not compiled by the JIT, which process does
+     * exceed beyond __MaxStates states
+     */
+    private static final int __MaxStates = 640;
+    private static final int __MaxCode = 8000;
+    private static final int __MaxPool = 65535;
+
+    private static final String __Package = "com/github/ankzz/dynamicfsm/states/";
+    private static final String __Super = __Package + "FSMDispatch";
+    private static final String __Definition = __Package + "FSMDefinition";
+    private static final String __Action = "com/github/ankzz/dynamicfsm/action/FSMAction";
+    private static final String __Hook = __Package + "FSMStateAction";
+    private static final String __Guard = "com/github/ankzz/dynamicfsm/action/FSMGuard";
+    private static final String __Callback =
+            "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;)";
+
+    /* Opcodes */
+    private static final int ICONST_M1 = 2, ICONST_0 = 3, BIPUSH = 16,
+            SIPUSH = 17, LDC = 18, LDC_W = 19, ILOAD_0 = 26, ILOAD_1 = 27,
+            ILOAD_2 = 28, ALOAD_0 = 42, ALOAD_1 = 43, ALOAD_3 = 45,
+            ISTORE_1 = 60, ASTORE_0 = 75, AALOAD = 50, IFEQ = 153,
+            TABLESWITCH = 170, LOOKUPSWITCH = 171, IRETURN = 172,
+            RETURN = 177, GETSTATIC = 178, PUTSTATIC = 179,
+            INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184,
+            INVOKEINTERFACE = 185, CHECKCAST = 192;
+
+    private static final AtomicInteger __Classes = new AtomicInteger();
+    private static final ConcurrentHashMap<String, Object[]> __Constants =
+            new ConcurrentHashMap<>();
+
+    private final FSMDefinition _definition;
+    private final String _name;
+    private final Pool _pool = new Pool();
+    private final ByteArrayOutputStream _methods = new ByteArrayOutputStream();
+    private final DataOutputStream _m = new DataOutputStream(this._methods);
+    private int _methodCount;
+    private final List<Object> _constants = new ArrayList<>();
+    private final List<String> _fields = new ArrayList<>();
+    private final HashMap<String, Integer> _fieldRefs = new HashMap<>();
+    private final HashMap<Long, Integer> _transitionRefs = new HashMap<>();
+
+    private FSMDispatchCompiler(FSMDefinition definition, String name) {
+        this._definition = definition;
+        this._name = name;
+    }
+
+    /*
+     * Generates, defines and instantiates the class of the dispatch
+     */
+    static FSMDispatch compile(FSMDefinition definition) {
+        if (definition.getStateCount() > __MaxStates) {
+            throw new IllegalStateException("Too many states to compile: "
+                    + definition.getStateCount());
+        }
+        String name = __Super + "$Compiled" + __Classes.incrementAndGet();
+        FSMDispatchCompiler c = new FSMDispatchCompiler(definition, name);
+        byte[] bytes;
+        try {
+            bytes = c.generate();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String binaryName = name.replace('/', '.');
+        __Constants.put(binaryName, c._constants.toArray());
+        try {
+            Class<?> type = new Loader(FSMDispatch.class.getClassLoader())
+                    .define(binaryName, bytes);
+            return (FSMDispatch) type.getConstructor(FSMDefinition.class)
+                    .newInstance(definition);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            __Constants.remove(binaryName);
+        }
+    }
+
+    /*
+     * Constants of a class being initialized
+     */
+    static Object[] constants(String className) {
+        Object[] constants = __Constants.remove(className);
+        if (constants == null) {
+            throw new IllegalStateException("No constants for " + className);
+        }
+        return constants;
+    }
+
+    private byte[] generate() throws IOException {
+        final FSMDefinition _d = this._definition;
+        int states = _d.getStateCount();
+
+        /* Methods of states with transitions */
+        int[] stateMethods = new int[states];
+        for (int s = 0; s < states; s++) {
+            stateMethods[s] = (_d.getTransitions(s).length == 0)
+                    ? -1 : state(s);
+        }
+
+        constructor();
+        isCompiled();
+        process(stateMethods);
+        initializer();
+
+        ByteArrayOutputStream _b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(_b);
+        int thisClass = this._pool.type(this._name);
+        int superClass = this._pool.type(__Super);
+        int[] fieldNames = new int[this._fields.size()];
+        int[] fieldTypes = new int[this._fields.size()];
+        for (int f = 0; f < fieldNames.length; f++) {
+            fieldNames[f] = this._pool.utf8(this._fields.get(f));
+            fieldTypes[f] = this._pool.utf8(descriptor(this._constants.get(f)));
+        }
+        if (this._pool.size() > __MaxPool) {
+            throw new IllegalStateException("Too many constants to compile");
+        }
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        this._pool.write(out);
+        out.writeShort(0x0031);                 /* public final super */
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);                      /* interfaces */
+        out.writeShort(fieldNames.length);
+        for (int f = 0; f < fieldNames.length; f++) {
+            out.writeShort(0x001A);             /* private static final */
+            out.writeShort(fieldNames[f]);
+            out.writeShort(fieldTypes[f]);
+            out.writeShort(0);
+        }
+        out.writeShort(this._methodCount);
+        this._m.flush();
+        this._methods.writeTo(out);
+        out.writeShort(0);                      /* attributes */
+        out.flush();
+        return _b.toByteArray();
+    }
+
+    private static String type(Object constant) {
+        return (constant instanceof FSMAction) ? __Action
+                : (constant instanceof FSMGuard) ? __Guard
+                : (constant instanceof FSMDefinition) ? __Definition : __Hook;
+    }
+
+    private static String descriptor(Object constant) {
+        return "L" + type(constant) + ";";
+    }
+
+    /*
+     * Static final field holding a callback; returns its index in the pool
+     */
+    private int field(String name, Object callback) {
+        Integer _f = this._fieldRefs.get(name);
+        if (_f != null) return _f;
+        this._fields.add(name);
+        this._constants.add(callback);
+        _f = this._pool.field(this._name, name, descriptor(callback));
+        this._fieldRefs.put(name, _f);
+        return _f;
+    }
+
+    /*
+     * Method of a transition with callbacks taken from a state, generated
+     * once; returns the index of its reference in the pool
+     */
+    private int transition(int s, int t) throws IOException {
+        Long key = ((long) s << 32) | t;
+        Integer _m = this._transitionRefs.get(key);
+        if (_m == null) {
+            _m = transition(s, t, this._definition.getPlan(t));
+            this._transitionRefs.put(key, _m);
+        }
+        return _m;
+    }
+
+    /*
+     * int tN(Object sharedData), or tN_S for a transition inherited by state
+     * S: invokes the callbacks of a transition and returns the resulting
+     * state
+     */
+    private int transition(int s, int t, FSMTransitionPlan p)
+            throws IOException {
+        final FSMDefinition _d = this._definition;
+        final String source = _d.getStateName(s);
+        final String next = p.getNextState();
+        final String message = p.getActionName();
+        final Code c = new Code();
+
+        int hook = this._pool.interfaceMethod(__Hook, "stateTransition",
+                "(Ljava/lang/String;Ljava/lang/Object;)V");
+        int before = (p.getBefore() == null) ? 0 : field("b" + t, p.getBefore());
+        int after = (p.getAfter() == null) ? 0 : field("c" + t, p.getAfter());
+        int action = (p.getAction() == null) ? 0 : field("a" + t, p.getAction());
+
+        if (before != 0) hook(c, before, hook, next);
+        if (action == 0) {
+            if (after != 0) hook(c, after, hook, next);
+            push(c, p.getTargetId());
+            c.u1(IRETURN);
+        } else {
+            if (p.isCustomAction()) callback(c, action, "entry", "V", source, message, next);
+            callback(c, action, "action", "Z", source, message, next);
+            c.u1(ISTORE_1);
+            c.u1(ILOAD_1);
+            Label failed = new Label();
+            c.branch(IFEQ, failed);
+            callback(c, action, "afterTransition", "V", next, message, next);
+            if (p.isCustomAction()) callback(c, action, "exit", "V", next, message, next);
+            if (after != 0) hook(c, after, hook, next);
+            push(c, p.getTargetId());
+            c.u1(IRETURN);
+            c.mark(failed);
+            if (p.isCustomAction()) callback(c, action, "exit", "V", source, message, next);
+            if (after != 0) hook(c, after, hook, next);
+            push(c, s);
+            c.u1(IRETURN);
+        }
+        String name = (s == _d.getTransitionSource(t)) ? "t" + t : "t" + t + "_" + s;
+        return method(0x000A, name, "(Ljava/lang/Object;)I", c, 5, 2);
+    }
+
+    private void hook(Code c, int field, int method, String next) {
+        c.u1(GETSTATIC);
+        c.u2(field);
+        string(c, next);
+        c.u1(ALOAD_0);
+        c.u1(INVOKEINTERFACE);
+        c.u2(method);
+        c.u1(3);
+        c.u1(0);
+    }
+
+    private void callback(Code c, int field, String name, String result,
+            String current, String message, String next) {
+        c.u1(GETSTATIC);
+        c.u2(field);
+        string(c, current);
+        string(c, message);
+        string(c, next);
+        c.u1(ALOAD_0);
+        c.u1(INVOKEVIRTUAL);
+        c.u2(this._pool.method(__Action, name, __Callback + result));
+    }
+
+    /*
+     * int sN(int messageId, Object sharedData): takes the transition of a
+     * message in a state, the first one whose guard holds
+     */
+    private int state(int s) throws IOException {
+        final FSMDefinition _d = this._definition;
+        final Code c = new Code();
+        int messages = _d.getMessageCount();
+        int count = 0;
+        for (int m = 0; m < messages; m++) {
+            if (_d.getTransition(s, m) >= 0) count++;
+        }
+        int[] keys = new int[count];
+        Label[] cases = new Label[count];
+        for (int m = 0, i = 0; m < messages; m++) {
+            if (_d.getTransition(s, m) < 0) continue;
+            keys[i] = m;
+            cases[i++] = new Label();
+        }
+
+        Label none = new Label();
+        c.u1(ILOAD_0);
+        c.lookupSwitch(keys, cases, none);
+        for (int i = 0; i < count; i++) {
+            c.mark(cases[i]);
+            int t = _d.getTransition(s, keys[i]);
+            for (; t >= 0; t = _d.getTransitionAlternative(t)) {
+                Label failed = null;
+                if (_d.getTransitionGuard(t) != null) {
+                    failed = new Label();
+                    guard(c, t);
+                    c.branch(IFEQ, failed);
+                }
+                if (!_d.getPlan(t).hasCallbacks()) {
+                    push(c, _d.getTransitionTarget(t));
+                } else {
+                    int method = transition(s, t);
+                    c.u1(ALOAD_1);
+                    c.u1(INVOKESTATIC);
+                    c.u2(method);
+                }
+                c.u1(IRETURN);
+                if (failed == null) break;
+                c.mark(failed);
+            }
+            if (t < 0) {
+                c.u1(ICONST_M1);
+                c.u1(IRETURN);
+            }
+        }
+        c.mark(none);
+        c.u1(ICONST_M1);
+        c.u1(IRETURN);
+        return method(0x000A, "s" + s, "(ILjava/lang/Object;)I", c, 4, 2);
+    }
+
+    /*
+     * Evaluates the guard of a transition, counted by the definition; an
+     * unregistered guard does not hold
+     */
+    private void guard(Code c, int t) {
+        FSMGuard guard = this._definition.getGuard(t);
+        c.u1(GETSTATIC);
+        c.u2(field("d", this._definition));
+        push(c, t);
+        if (guard == null) {
+            c.u1(ICONST_0);
+        } else {
+            c.u1(GETSTATIC);
+            c.u2(field("g" + t, guard));
+            c.u1(ALOAD_1);
+            c.u1(INVOKEINTERFACE);
+            c.u2(this._pool.interfaceMethod(__Guard, "guard",
+                    "(Ljava/lang/Object;)Z"));
+            c.u1(2);
+            c.u1(0);
+        }
+        c.u1(INVOKESTATIC);
+        c.u2(this._pool.method(__Super, "holds", "(L" + __Definition + ";IZ)Z"));
+    }
+
+    /*
+     * int process(int stateId, int messageId, Object sharedData)
+     */
+    private void process(int[] stateMethods) throws IOException {
+        final Code c = new Code();
+        int states = stateMethods.length;
+        Label none = new Label();
+        Label[] cases = new Label[states];
+        for (int s = 0; s < states; s++) {
+            cases[s] = (stateMethods[s] < 0) ? none : new Label();
+        }
+        c.u1(ILOAD_1);
+        c.tableSwitch(0, states - 1, cases, none);
+        for (int s = 0; s < states; s++) {
+            if (stateMethods[s] < 0) continue;
+            c.mark(cases[s]);
+            c.u1(ILOAD_2);
+            c.u1(ALOAD_3);
+            c.u1(INVOKESTATIC);
+            c.u2(stateMethods[s]);
+            c.u1(IRETURN);
+        }
+        c.mark(none);
+        c.u1(ICONST_M1);
+        c.u1(IRETURN);
+        method(0x0011, "process", "(IILjava/lang/Object;)I", c, 2, 4);
+    }
+
+    private void constructor() throws IOException {
+        Code c = new Code();
+        c.u1(ALOAD_0);
+        c.u1(ALOAD_1);
+        c.u1(INVOKESPECIAL);
+        c.u2(this._pool.method(__Super, "<init>", "(L" + __Definition + ";)V"));
+        c.u1(RETURN);
+        method(0x0001, "<init>", "(L" + __Definition + ";)V", c, 2, 2);
+    }
+
+    private void isCompiled() throws IOException {
+        Code c = new Code();
+        c.u1(ICONST_0 + 1);
+        c.u1(IRETURN);
+        method(0x0011, "isCompiled", "()Z", c, 1, 1);
+    }
+
+    /*
+     * Static initializer setting the callbacks from the constants handed
+     * over by the compiler
+     */
+    private void initializer() throws IOException {
+        Code c = new Code();
+        string(c, this._name.replace('/', '.'));
+        c.u1(INVOKESTATIC);
+        c.u2(this._pool.method(__Super, "constants",
+                "(Ljava/lang/String;)[Ljava/lang/Object;"));
+        c.u1(ASTORE_0);
+        for (int f = 0; f < this._fields.size(); f++) {
+            Object constant = this._constants.get(f);
+            c.u1(ALOAD_0);
+            push(c, f);
+            c.u1(AALOAD);
+            c.u1(CHECKCAST);
+            c.u2(this._pool.type(type(constant)));
+            c.u1(PUTSTATIC);
+            c.u2(this._pool.field(this._name, this._fields.get(f),
+                    descriptor(constant)));
+        }
+        c.u1(RETURN);
+        method(0x0008, "<clinit>", "()V", c, 2, 1);
+    }
+
+    private void push(Code c, int value) {
+        if (value >= -1 && value <= 5) {
+            c.u1(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            c.u1(BIPUSH);
+            c.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            c.u1(SIPUSH);
+            c.u2(value);
+        } else {
+            constant(c, this._pool.integer(value));
+        }
+    }
+
+    private void string(Code c, String value) {
+        constant(c, this._pool.string(value));
+    }
+
+    private static void constant(Code c, int index) {
+        if (index < 256) {
+            c.u1(LDC);
+            c.u1(index);
+        } else {
+            c.u1(LDC_W);
+            c.u2(index);
+        }
+    }
+
+    /*
+     * Writes a method; returns the index of its reference in the pool, or
+     * 0 for initializers, which cannot be referenced
+     */
+    private int method(int access, String name, String descriptor, Code c,
+            int maxStack, int maxLocals) throws IOException {
+        byte[] code = c.resolve();
+        int limit = "<clinit>".equals(name) ? 65535 : __MaxCode;
+        if (code.length > limit) {
+            throw new IllegalStateException("Method " + name
+                    + " too large to compile: " + code.length + " bytes");
+        }
+        this._m.writeShort(access);
+        this._m.writeShort(this._pool.utf8(name));
+        this._m.writeShort(this._pool.utf8(descriptor));
+        this._m.writeShort(1);
+        this._m.writeShort(this._pool.utf8("Code"));
+        this._m.writeInt(12 + code.length);
+        this._m.writeShort(maxStack);
+        this._m.writeShort(maxLocals);
+        this._m.writeInt(code.length);
+        this._m.write(code);
+        this._m.writeShort(0);                  /* exception table */
+        this._m.writeShort(0);                  /* attributes */
+        this._methodCount++;
+        if (name.charAt(0) == '<') return 0;
+        return this._pool.method(this._name, name, descriptor);
+    }
+
+    /*
+     * Constant pool; entries are shared
+     */
+    private static final class Pool {
+        private final HashMap<String, Integer> _index = new HashMap<>();
+        private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+        private final DataOutputStream _out = new DataOutputStream(this._bytes);
+        private int _next = 1;
+
+        private int entry(String key, int tag, int a, int b, int width)
+                throws IOException {
+            Integer _i = this._index.get(key);
+            if (_i != null) return _i;
+            this._out.writeByte(tag);
+            if (width == 4) {
+                this._out.writeInt(a);
+            } else {
+                this._out.writeShort(a);
+                if (width == 2) this._out.writeShort(b);
+            }
+            this._index.put(key, this._next);
+            return this._next++;
+        }
+
+        private int utf8(String value) {
+            String key = "U" + value;
+            Integer _i = this._index.get(key);
+            if (_i != null) return _i;
+            try {
+                this._out.writeByte(1);
+                this._out.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this._index.put(key, this._next);
+            return this._next++;
+        }
+
+        private int integer(int value) {
+            return checked(() -> entry("I" + value, 3, value, 0, 4));
+        }
+
+        private int string(String value) {
+            int utf8 = utf8(value);
+            return checked(() -> entry("S" + value, 8, utf8, 0, 1));
+        }
+
+        private int type(String name) {
+            int utf8 = utf8(name);
+            return checked(() -> entry("C" + name, 7, utf8, 0, 1));
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            int n = utf8(name);
+            int d = utf8(descriptor);
+            return checked(() -> entry("N" + name + ":" + descriptor, 12, n,
+                    d, 2));
+        }
+
+        private int field(String owner, String name, String descriptor) {
+            return member("F", 9, owner, name, descriptor);
+        }
+
+        private int method(String owner, String name, String descriptor) {
+            return member("M", 10, owner, name, descriptor);
+        }
+
+        private int interfaceMethod(String owner, String name,
+                String descriptor) {
+            return member("IM", 11, owner, name, descriptor);
+        }
+
+        private int member(String kind, int tag, String owner, String name,
+                String descriptor) {
+            int c = type(owner);
+            int nt = nameAndType(name, descriptor);
+            return checked(() -> entry(kind + owner + "." + name + ":"
+                    + descriptor, tag, c, nt, 2));
+        }
+
+        private int size() { return this._next - 1; }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeShort(this._next);
+            this._out.flush();
+            this._bytes.writeTo(out);
+        }
+
+        private interface Entry {
+            int write() throws IOException;
+        }
+
+        private static int checked(Entry e) {
+            try {
+                return e.write();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /*
+     * Position in the code of a method, possibly not known yet
+     */
+    private static final class Label {
+        private int _position = -1;
+    }
+
+    /*
+     * Code of a method, with branches to labels resolved at the end
+     */
+    private static final class Code {
+        private byte[] _code = new byte[64];
+        private int _length;
+        private final List<int[]> _fixups = new ArrayList<>();
+        private final List<Label> _targets = new ArrayList<>();
+
+        private void u1(int value) {
+            if (this._length == this._code.length) {
+                this._code = Arrays.copyOf(this._code, this._length * 2);
+            }
+            this._code[this._length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        private void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        private void mark(Label l) {
+            l._position = this._length;
+        }
+
+        /*
+         * Offset of the label from the instruction at base, written on
+         * width bytes at the current position
+         */
+        private void offset(int base, Label l, int width) {
+            this._fixups.add(new int[] { this._length, base, width });
+            this._targets.add(l);
+            if (width == 2) u2(0); else u4(0);
+        }
+
+        private void branch(int opcode, Label l) {
+            int base = this._length;
+            u1(opcode);
+            offset(base, l, 2);
+        }
+
+        private void align() {
+            while ((this._length & 3) != 0) u1(0);
+        }
+
+        private void tableSwitch(int low, int high, Label[] cases,
+                Label otherwise) {
+            int base = this._length;
+            u1(TABLESWITCH);
+            align();
+            offset(base, otherwise, 4);
+            u4(low);
+            u4(high);
+            for (Label l : cases) offset(base, l, 4);
+        }
+
+        private void lookupSwitch(int[] keys, Label[] cases, Label otherwise) {
+            int base = this._length;
+            u1(LOOKUPSWITCH);
+            align();
+            offset(base, otherwise, 4);
+            u4(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                u4(keys[i]);
+                offset(base, cases[i], 4);
+            }
+        }
+
+        private byte[] resolve() {
+            for (int i = 0; i < this._fixups.size(); i++) {
+                int[] f = this._fixups.get(i);
+                int value = this._targets.get(i)._position - f[1];
+                if (f[2] == 2) {
+                    this._code[f[0]] = (byte) (value >>> 8);
+                    this._code[f[0] + 1] = (byte) value;
+                } else {
+                    for (int b = 0; b < 4; b++) {
+                        this._code[f[0] + b] = (byte) (value >>> (24 - 8 * b));
+                    }
+                }
+            }
+            return Arrays.copyOf(this._code, this._length);
+        }
+    }
+
+    /*
+     * Class loader of one generated class
+     */
+    private static final class Loader extends ClassLoader {
+
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+/**
+ * File: FSMMessageHandle.java
+ * <p>
+ * This implementation holds a message resolved once, by a
+ * {@link FSMMessageResolver}: its dense numeric id within a definition, so
+ * that processing it indexes the transition table directly, without hashing
+ * or comparing its name.
+ * </p>
+ * 
+ * <p>
+ * A handle remains valid across reloads of the FSM: for a definition other
+ * than the one it was resolved against, the message is resolved again by
+ * name.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMMessageHandle {
+
+    private final FSMDefinition _definition;
+    private final int _id;
+    private final String _name;
+
+    FSMMessageHandle(FSMDefinition definition, int id) {
+        this._definition = definition;
+        this._id = id;
+        this._name = definition.getMessageName(id);
+    }
+
+    /**
+     * 
+     * @param definition Definition in which message is processed
+     * 
+     * @return Returns the numeric id of the message within the specified
+     *         definition, or -1 if the message is not handled in any state
+     */
+    public int getMessageId(FSMDefinition definition) {
+        return (definition == this._definition)
+                ? this._id : definition.getMessageId(this._name);
+    }
+
+    /**
+     * 
+     * @return Returns the numeric id of the message within the definition it
+     *         was resolved against
+     */
+    public int getMessageId() { return this._id; }
+
+    /**
+     * 
+     * @return Returns the Message Id, as specified in the configuration
+     */
+    public String getName() { return this._name; }
+
+    /**
+     * 
+     * @return Returns the definition the message was resolved against
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    @Override
+    public String toString() { return this._name; }
+}
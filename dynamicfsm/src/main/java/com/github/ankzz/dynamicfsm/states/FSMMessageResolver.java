@@ -0,0 +1,298 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * File: FSMMessageResolver.java
+ * <p>
+ * This implementation resolves message names of a definition into
+ * {@link FSMMessageHandle}s, from a <code>String</code>, any
+ * <code>CharSequence</code>, or the UTF-8 bytes of a <code>ByteBuffer</code>.
+ * Names are looked up in open addressing tables built once, and compared
+ * byte by byte or char by char, so that decoding messages from network
+ * buffers creates no <code>String</code>:
+ * </p>
+ * <pre>
+ *  FSMMessageResolver resolver = new FSMMessageResolver(definition);
+ *  FSMMessageHandle message = resolver.resolve(buffer, offset, length);
+ *  if (message != null) fsm.ProcessFSM(message);
+ * </pre>
+ * 
+ * <p>
+ * {@link #resolveAll(ByteBuffer, byte, int[])} resolves a sequence of
+ * separated names at once into message ids, e.g. for
+ * {@link com.github.ankzz.dynamicfsm.fsm.FSM#processAll(int[], com.github.ankzz.dynamicfsm.fsm.FSMBatchResult)}.
+ * </p>
+ * 
+ * <p>
+ * A resolver is immutable and can be shared across threads.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMMessageResolver {
+
+    private final FSMDefinition _definition;
+    private final FSMMessageHandle[] _handles;
+    private final String[] _names;
+    private final byte[][] _bytes;
+
+    /* Message ids by hash of bytes and of chars, -1 for empty slots */
+    private final int[] _byBytes;
+    private final int[] _byChars;
+    private final int _mask;
+
+    /* True if names are hashed by their length and a few units only */
+    private final boolean _sampledBytes;
+    private final boolean _sampledChars;
+
+    /**
+     * 
+     * @param definition Definition whose messages are resolved
+     */
+    public FSMMessageResolver(FSMDefinition definition) {
+        this._definition = definition;
+        int count = definition.getMessageCount();
+        this._handles = new FSMMessageHandle[count];
+        this._names = new String[count];
+        this._bytes = new byte[count][];
+
+        long[] byteKeys = new long[count];
+        long[] charKeys = new long[count];
+        for (int id = 0; id < count; id++) {
+            this._handles[id] = new FSMMessageHandle(definition, id);
+            this._names[id] = definition.getMessageName(id);
+            this._bytes[id] = this._names[id].getBytes(StandardCharsets.UTF_8);
+            byteKeys[id] = sample(ByteBuffer.wrap(this._bytes[id]), 0,
+                    this._bytes[id].length);
+            charKeys[id] = sample(this._names[id]);
+        }
+        this._sampledBytes = distinct(byteKeys);
+        this._sampledChars = distinct(charKeys);
+
+        int slots = Integer.highestOneBit(Math.max(count, 1)) * 4;
+        this._mask = slots - 1;
+        this._byBytes = new int[slots];
+        this._byChars = new int[slots];
+        Arrays.fill(this._byBytes, -1);
+        Arrays.fill(this._byChars, -1);
+        for (int id = 0; id < count; id++) {
+            ByteBuffer b = ByteBuffer.wrap(this._bytes[id]);
+            insert(this._byBytes, hash(b, 0, this._bytes[id].length), id);
+            insert(this._byChars, hash(this._names[id]), id);
+        }
+    }
+
+    private void insert(int[] table, int hash, int id) {
+        int _i = hash & this._mask;
+        while (table[_i] >= 0) _i = (_i + 1) & this._mask;
+        table[_i] = id;
+    }
+
+    private static boolean distinct(long[] keys) {
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) return false;
+        }
+        return true;
+    }
+
+    /*
+     * Length, first, middle and last units of a name; names of a definition
+     * usually differ by these already, which spares hashing all of them
+     */
+    private static long sample(ByteBuffer b, int offset, int length) {
+        if (length == 0) return 0;
+        return ((long) length << 48) | ((b.get(offset) & 0xFFL) << 32)
+                | ((b.get(offset + (length >> 1)) & 0xFFL) << 16)
+                | (b.get(offset + length - 1) & 0xFFL);
+    }
+
+    private static long sample(CharSequence s) {
+        int length = s.length();
+        if (length == 0) return 0;
+        return ((long) length << 48) | ((long) s.charAt(0) << 32)
+                | ((long) s.charAt(length >> 1) << 16)
+                | s.charAt(length - 1);
+    }
+
+    private static int mix(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /*
+     * FNV-1a over the units of a name, if sampling does not tell names apart
+     */
+    private int hash(ByteBuffer b, int offset, int length) {
+        if (this._sampledBytes) return mix(sample(b, offset, length));
+        int h = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (b.get(i) & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private int hash(CharSequence s) {
+        if (this._sampledChars) return mix(sample(s));
+        int h = 0x811C9DC5;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h = (h ^ s.charAt(i)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 
+     * @param message Message Id, as specified in the configuration
+     * 
+     * @return Returns the handle of the message, or null if the message is
+     *         not handled in any state
+     */
+    public FSMMessageHandle resolve(CharSequence message) {
+        int _m = getMessageId(message);
+        return (_m < 0) ? null : this._handles[_m];
+    }
+
+    /**
+     * 
+     * @param message Message Id, as specified in the configuration
+     * 
+     * @return Returns the numeric id of the message, or -1 if the message is
+     *         not handled in any state
+     */
+    public int getMessageId(CharSequence message) {
+        int n = message.length();
+        for (int _i = hash(message) & this._mask; ; _i = (_i + 1) & this._mask) {
+            int id = this._byChars[_i];
+            if (id < 0) return -1;
+            String name = this._names[id];
+            if (name.length() != n) continue;
+            int c = 0;
+            while (c < n && name.charAt(c) == message.charAt(c)) c++;
+            if (c == n) return id;
+        }
+    }
+
+    /**
+     * Method resolves the message whose name is encoded in UTF-8 by the
+     * specified bytes of the buffer, without changing its position.
+     * 
+     * @param buffer Buffer holding the name
+     * @param offset Index of the first byte of the name in the buffer
+     * @param length Number of bytes of the name
+     * 
+     * @return Returns the handle of the message, or null if the message is
+     *         not handled in any state
+     */
+    public FSMMessageHandle resolve(ByteBuffer buffer, int offset, int length) {
+        int _m = getMessageId(buffer, offset, length);
+        return (_m < 0) ? null : this._handles[_m];
+    }
+
+    /**
+     * Method resolves the message whose name is encoded in UTF-8 by the
+     * remaining bytes of the buffer, without changing its position.
+     * 
+     * @param buffer Buffer holding the name
+     * 
+     * @return Returns the handle of the message, or null if the message is
+     *         not handled in any state
+     */
+    public FSMMessageHandle resolve(ByteBuffer buffer) {
+        return resolve(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * 
+     * @param buffer Buffer holding the name
+     * @param offset Index of the first byte of the name in the buffer
+     * @param length Number of bytes of the name
+     * 
+     * @return Returns the numeric id of the message, or -1 if the message is
+     *         not handled in any state
+     */
+    public int getMessageId(ByteBuffer buffer, int offset, int length) {
+        for (int _i = hash(buffer, offset, length) & this._mask; ;
+                _i = (_i + 1) & this._mask) {
+            int id = this._byBytes[_i];
+            if (id < 0) return -1;
+            byte[] name = this._bytes[id];
+            if (name.length != length) continue;
+            int b = 0;
+            while (b < length && name[b] == buffer.get(offset + b)) b++;
+            if (b == length) return id;
+        }
+    }
+
+    /**
+     * Method resolves the names held by the buffer from its position to its
+     * limit, separated by the specified byte, into message ids; the last name
+     * ends either with a separator or at the limit. The position of the buffer
+     * is moved past the names resolved.
+     * 
+     * @param buffer Buffer holding the names
+     * @param separator Byte separating names, e.g. <code>'\n'</code>
+     * @param messageIds Array receiving the ids of the messages, -1 for names
+     *                   not handled in any state
+     * 
+     * @return Returns the number of names resolved, which is less than the
+     *         length of the array only if the buffer has no name left
+     */
+    public int resolveAll(ByteBuffer buffer, byte separator, int[] messageIds) {
+        int _p = buffer.position();
+        final int limit = buffer.limit();
+        int count = 0;
+        while (_p < limit && count < messageIds.length) {
+            int end = _p;
+            while (end < limit && buffer.get(end) != separator) end++;
+            messageIds[count++] = getMessageId(buffer, _p, end - _p);
+            _p = (end < limit) ? end + 1 : end;
+        }
+        buffer.position(_p);
+        return count;
+    }
+
+    /**
+     * 
+     * @param messageId Numeric id of the message
+     * 
+     * @return Returns the handle of the message
+     */
+    public FSMMessageHandle getHandle(int messageId) {
+        return this._handles[messageId];
+    }
+
+    /**
+     * 
+     * @return Returns the definition whose messages are resolved
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+}
@@ -0,0 +1,424 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.xml.sax.SAXException;
+
+/**
+ * File: FSMOptimizer.java
+ * <p>
+ * Implements the optimization of a compiled FSM definition: states which
+ * cannot be reached from the initial state are removed, and states which
+ * behave the same are merged into one.
+ * </p>
+ * 
+ * <p>
+ * Two states behave the same if they handle the same messages, with the
+ * same guards in the same order, the same action names, the same action
+ * methods and the same hooks, and lead to states which behave the same.
+ * Equivalent states are found by Hopcroft's partition refinement, in
+ * O(m n log n) for n states and m messages. Each group of equivalent
+ * states is replaced by the first of them in configuration order, which
+ * keeps its name; transitions to the other states of the group lead to it
+ * instead.
+ * </p>
+ * 
+ * <p>
+ * States nested in others are compared by the transitions they inherit too;
+ * the optimized definition has no nested states, every state holding the
+ * transitions it takes.
+ * </p>
+ * 
+ * <pre>
+ *  FSMOptimizer opt = new FSMOptimizer(new FSMDefinition("config.xml", true));
+ *  System.out.println(opt);
+ *  FSM fsm = new FSM(opt.getOptimized(), action);
+ * </pre>
+ * 
+ * <p>
+ * <b>Note:</b> merged states are no longer known by their own name: the
+ * current state, and the state names passed to action methods and hooks,
+ * are those of the state kept. Actions and hooks shall therefore be
+ * registered before optimizing, or by the names of the states kept. The
+ * optimization can be applied to every configuration loaded through
+ * {@link FSMDefinitionCache} with system property
+ * <code>dynamicfsm.optimize</code>.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMOptimizer {
+
+    private final FSMDefinition _source;
+    private final FSMDefinition _optimized;
+    private final List<String> _unreachable;
+    private final Map<String, String> _merged;
+
+    /**
+     * Constructor optimizes the specified definition. Actions and hooks
+     * registered on the definition are carried over to the optimized one.
+     * 
+     * @param definition Definition to be optimized; it is not modified
+     */
+    public FSMOptimizer(FSMDefinition definition) {
+        this._source = definition;
+        try {
+            /* States are compared by the transitions they take */
+            definition = definition.flatten();
+        } catch (SAXException e) {
+            throw new IllegalStateException(e);
+        }
+        int states = definition.getStateCount();
+
+        /* Reachable states, in configuration order */
+        boolean[] reached = new boolean[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        reached[definition.getInitialState()] = true;
+        queue[tail++] = definition.getInitialState();
+        while (head < tail) {
+            for (int t : definition.getTransitions(queue[head++])) {
+                int q = definition.getTransitionTarget(t);
+                if (!reached[q]) {
+                    reached[q] = true;
+                    queue[tail++] = q;
+                }
+            }
+        }
+        int[] local = new int[states];
+        int[] ids = new int[tail];
+        ArrayList<String> unreachable = new ArrayList<>();
+        for (int i = 0, n = 0; i < states; i++) {
+            if (reached[i]) {
+                local[i] = n;
+                ids[n++] = i;
+            } else {
+                local[i] = -1;
+                unreachable.add(definition.getStateName(i));
+            }
+        }
+
+        /* Representative of each reachable state, then new numbering */
+        int[] rep = minimize(definition, ids, local);
+        int[] stateMap = new int[states];
+        Arrays.fill(stateMap, -1);
+        int[] kept = new int[ids.length];
+        int count = 0;
+        LinkedHashMap<String, String> merged = new LinkedHashMap<>();
+        for (int n = 0; n < ids.length; n++) {
+            if (rep[n] == n) {
+                stateMap[ids[n]] = count;
+                kept[count++] = ids[n];
+            } else {
+                merged.put(definition.getStateName(ids[n]),
+                        definition.getStateName(ids[rep[n]]));
+            }
+        }
+        for (int n = 0; n < ids.length; n++) {
+            stateMap[ids[n]] = stateMap[ids[rep[n]]];
+        }
+        kept = Arrays.copyOf(kept, count);
+
+        int[] transitions = new int[definition.getTransitionCount()];
+        int[] sources = new int[transitions.length];
+        int kt = 0;
+        for (int i : kept) {
+            for (int t : definition.getTransitions(i)) {
+                sources[kt] = i;
+                transitions[kt++] = t;
+            }
+        }
+
+        try {
+            this._optimized = definition.subset(kept, stateMap,
+                    Arrays.copyOf(transitions, kt), Arrays.copyOf(sources, kt));
+        } catch (SAXException e) {
+            /* The initial state is always kept */
+            throw new IllegalStateException(e);
+        }
+        this._unreachable = Collections.unmodifiableList(unreachable);
+        this._merged = Collections.unmodifiableMap(merged);
+    }
+
+    /*
+     * Partitions the reachable states into blocks of equivalent states, and
+     * returns for each of them the local id of the first state of its block
+     */
+    private static int[] minimize(FSMDefinition def, int[] ids, int[] local) {
+        final int n = ids.length;
+        final int[] letter = letters(def);
+
+        /* Incoming transitions of each state, by local id */
+        int[] inStart = new int[n + 1];
+        int transitions = 0;
+        for (int s = 0; s < n; s++) {
+            for (int t : def.getTransitions(ids[s])) {
+                inStart[local[def.getTransitionTarget(t)] + 1]++;
+                transitions++;
+            }
+        }
+        for (int s = 0; s < n; s++) { inStart[s + 1] += inStart[s]; }
+        int[] in = new int[transitions];
+        int[] fill = Arrays.copyOf(inStart, n);
+        for (int s = 0; s < n; s++) {
+            for (int t : def.getTransitions(ids[s])) {
+                in[fill[local[def.getTransitionTarget(t)]]++] = t;
+            }
+        }
+
+        /*
+         * Blocks are ranges of elems; the marked states of a block are
+         * moved to the front of its range
+         */
+        int[] elems = new int[n];
+        int[] loc = new int[n];
+        int[] blk = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] mark = new int[n];
+        int blocks = 0;
+
+        /* Initial partition: states with the same signature */
+        HashMap<List<Object>, Integer> signatures = new HashMap<>();
+        int[] size = new int[n];
+        for (int s = 0; s < n; s++) {
+            List<Object> key = signature(def, ids[s]);
+            Integer b = signatures.get(key);
+            if (b == null) {
+                b = blocks++;
+                signatures.put(key, b);
+            }
+            blk[s] = b;
+            size[b]++;
+        }
+        for (int b = 0, pos = 0; b < blocks; b++) {
+            first[b] = end[b] = pos;
+            pos += size[b];
+        }
+        for (int s = 0; s < n; s++) {
+            loc[s] = end[blk[s]]++;
+            elems[loc[s]] = s;
+        }
+
+        int[] work = new int[n];
+        boolean[] inWork = new boolean[n];
+        int pending = 0;
+        for (int b = 0; b < blocks; b++) {
+            work[pending++] = b;
+            inWork[b] = true;
+        }
+
+        long[] splitter = new long[transitions];
+        int[] touched = new int[n];
+        while (pending > 0) {
+            int b = work[--pending];
+            inWork[b] = false;
+
+            /* Transitions into the splitter, grouped by message */
+            int k = 0;
+            for (int i = first[b]; i < end[b]; i++) {
+                int s = elems[i];
+                for (int j = inStart[s]; j < inStart[s + 1]; j++) {
+                    int t = in[j];
+                    splitter[k++] = ((long) letter[t] << 32) | t;
+                }
+            }
+            Arrays.sort(splitter, 0, k);
+
+            for (int g = 0; g < k;) {
+                long message = splitter[g] >>> 32;
+                int nt = 0;
+                for (; g < k && (splitter[g] >>> 32) == message; g++) {
+                    int p = local[def.getTransitionSource((int) splitter[g])];
+                    int c = blk[p];
+                    if (mark[c] == 0) touched[nt++] = c;
+
+                    /* Swap p to the marked front of its block */
+                    int to = first[c] + mark[c]++;
+                    int other = elems[to];
+                    elems[loc[p]] = other;
+                    loc[other] = loc[p];
+                    elems[to] = p;
+                    loc[p] = to;
+                }
+
+                for (int i = 0; i < nt; i++) {
+                    int c = touched[i];
+                    int marked = mark[c];
+                    mark[c] = 0;
+                    if (marked == end[c] - first[c]) continue;
+
+                    int nb = blocks++;
+                    first[nb] = first[c];
+                    end[nb] = first[c] + marked;
+                    first[c] = end[nb];
+                    for (int j = first[nb]; j < end[nb]; j++) {
+                        blk[elems[j]] = nb;
+                    }
+                    if (inWork[c] || marked <= end[c] - first[c]) {
+                        work[pending++] = nb;
+                        inWork[nb] = true;
+                    } else {
+                        work[pending++] = c;
+                        inWork[c] = true;
+                    }
+                }
+            }
+        }
+
+        int[] lowest = new int[blocks];
+        Arrays.fill(lowest, -1);
+        for (int s = 0; s < n; s++) {
+            if (lowest[blk[s]] < 0) lowest[blk[s]] = s;
+        }
+        int[] rep = new int[n];
+        for (int s = 0; s < n; s++) { rep[s] = lowest[blk[s]]; }
+        return rep;
+    }
+
+    /*
+     * Letter of each transition of a definition without nested states: the
+     * message, and the position of the transition among the guarded ones
+     * of the message in its state
+     */
+    private static int[] letters(FSMDefinition def) {
+        int[] letter = new int[def.getTransitionCount()];
+        if (!def.isGuarded()) {
+            for (int t = 0; t < letter.length; t++) {
+                letter[t] = def.getTransitionMessageId(t);
+            }
+            return letter;
+        }
+        HashMap<Long, Integer> letters = new HashMap<>();
+        for (int s = 0; s < def.getStateCount(); s++) {
+            for (int m = 0; m < def.getMessageCount(); m++) {
+                int position = 0;
+                for (int t = def.getTransition(s, m); t >= 0;
+                        t = def.getTransitionAlternative(t)) {
+                    Long key = ((long) m << 32) | position++;
+                    Integer _l = letters.get(key);
+                    if (_l == null) {
+                        _l = letters.size();
+                        letters.put(key, _l);
+                    }
+                    letter[t] = _l;
+                }
+            }
+        }
+        return letter;
+    }
+
+    /*
+     * Behavior of a state, apart from the states it leads to: whether it is
+     * terminal, its hooks and the messages it handles, with their guards,
+     * action names and action methods
+     */
+    private static List<Object> signature(FSMDefinition def, int state) {
+        ArrayList<Object> _s = new ArrayList<>();
+        _s.add(def.isTerminal(state));
+        _s.add(def.getBefore(state));
+        _s.add(def.getAfter(state));
+        for (int m = 0; m < def.getMessageCount(); m++) {
+            for (int t = def.getTransition(state, m); t >= 0;
+                    t = def.getTransitionAlternative(t)) {
+                _s.add(def.getTransitionMessage(t));
+                _s.add(def.getTransitionGuard(t));
+                _s.add(def.getTransitionAction(t));
+                _s.add(def.getAction(t));
+            }
+        }
+        return _s;
+    }
+
+    /**
+     * 
+     * @return Returns the definition which has been optimized
+     */
+    public FSMDefinition getSource() { return this._source; }
+
+    /**
+     * 
+     * @return Returns the optimized definition
+     */
+    public FSMDefinition getOptimized() { return this._optimized; }
+
+    /**
+     * 
+     * @return Returns the names of the states removed as they cannot be
+     *         reached from the initial state, in configuration order
+     */
+    public List<String> getUnreachableStates() { return this._unreachable; }
+
+    /**
+     * 
+     * @return Returns the names of the states merged into an equivalent
+     *         state, mapped to the name of that state, in configuration order
+     */
+    public Map<String, String> getMergedStates() { return this._merged; }
+
+    /**
+     * 
+     * @return Returns true if the optimized definition is smaller than the
+     *         source definition
+     */
+    public boolean isReduced() {
+        return !this._unreachable.isEmpty() || !this._merged.isEmpty();
+    }
+
+    /**
+     * Method returns the report of the optimization: the number of states,
+     * transitions and messages before and after, and the states removed.
+     * 
+     * @return Returns the report, one line per item
+     */
+    @Override
+    public String toString() {
+        StringBuilder _r = new StringBuilder();
+        _r.append("states: ").append(this._source.getStateCount())
+                .append(" -> ").append(this._optimized.getStateCount())
+                .append(", transitions: ")
+                .append(this._source.getTransitionCount())
+                .append(" -> ").append(this._optimized.getTransitionCount())
+                .append(", messages: ").append(this._source.getMessageCount())
+                .append(" -> ").append(this._optimized.getMessageCount());
+        for (String state : this._unreachable) {
+            _r.append(System.lineSeparator()).append("unreachable: ")
+                    .append(state);
+        }
+        for (Map.Entry<String, String> e : this._merged.entrySet()) {
+            _r.append(System.lineSeparator()).append("merged: ")
+                    .append(e.getKey()).append(" -> ").append(e.getValue());
+        }
+        return _r.toString();
+    }
+}
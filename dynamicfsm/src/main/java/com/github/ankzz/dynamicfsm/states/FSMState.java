@@ -28,6 +28,7 @@ import com.github.ankzz.dynamicfsm.action.FSMAction;
 import com.github.ankzz.dynamicfsm.common.CustomXMLReader;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -44,14 +45,22 @@ public class FSMState implements java.io.Serializable {
     private static final long serialVersionUID = -7020866901240150728L;
     
     private final String  _curState;
+    private int _id = -1;
     private HashMap _transitionMap;
-    private HashMap _transitions;
+    private HashMap<String, FSMTransitionInfo> _transitions;
+    /* Messages inherited from enclosing states, by declaring state */
+    private HashMap<String, String> _inherited;
+    /* Guarded messages, by transitions declared in this state */
+    private HashMap<String, FSMTransitionInfo[]> _alternatives;
     private String  _configFileName;
     private CustomXMLReader _reader;
 
     private FSMStateAction stateEntry;
     private FSMStateAction stateExit;
     
+    /* Transitions leading to this state; their plans resolve its hooks */
+    private transient ArrayList<FSMTransitionInfo> _incoming;
+    
     /**
      * This Constructor allows to create a FSM with the initial state 
      * specified
@@ -93,6 +102,70 @@ public class FSMState implements java.io.Serializable {
         updateNewTransitionMap();
     }
     
+    /**
+     * This Constructor allows to create a State as per the specified
+     * state of a compiled definition.
+     * 
+     * @param definition Compiled definition of the FSM
+     * @param stateId Id of the state within the definition
+     */
+    public FSMState(FSMDefinition definition, int stateId) {
+        this(definition, stateId,
+                new FSMTransitionInfo[definition.getTransitionCount()]);
+    }
+
+    /*
+     * Creates the state with the transition information of shared, by
+     * transition id, filling it for transitions not met yet: states
+     * inheriting a transition share its information. A guarded message
+     * maps to the first of its transitions, and its alternatives are kept
+     * so that an action set on the message is set on each of them.
+     */
+    FSMState(FSMDefinition definition, int stateId,
+            FSMTransitionInfo[] shared) {
+        this._curState = definition.getStateName(stateId);
+        this._id = stateId;
+        this._transitions = new HashMap<>();
+        for (int t : definition.getTransitions(stateId)) {
+            if (shared[t] == null) {
+                shared[t] = new FSMTransitionInfo(
+                        definition.getTransitionAction(t),
+                        definition.getTransitionNextState(t));
+            }
+        }
+        for (int t : definition.getTransitions(stateId)) {
+            int first = definition.getTransition(stateId,
+                    definition.getTransitionMessageId(t));
+            this._transitions.put(definition.getTransitionMessage(t),
+                    shared[first]);
+            if (t == first && definition.getTransitionAlternative(t) >= 0) {
+                alternatives(definition, stateId, first, shared);
+            }
+            int source = definition.getTransitionSource(first);
+            if (source != stateId) {
+                if (this._inherited == null) this._inherited = new HashMap<>();
+                this._inherited.put(definition.getTransitionMessage(t),
+                        definition.getStateName(source));
+            }
+        }
+    }
+    
+    /*
+     * Keeps the transitions of a guarded message declared in this state,
+     * starting from the first one; the ones following are inherited
+     */
+    private void alternatives(FSMDefinition definition, int stateId,
+            int first, FSMTransitionInfo[] shared) {
+        ArrayList<FSMTransitionInfo> l = new ArrayList<>();
+        for (int t = first; t >= 0;
+                t = definition.getTransitionAlternative(t)) {
+            if (definition.getTransitionSource(t) == stateId) l.add(shared[t]);
+        }
+        if (this._alternatives == null) this._alternatives = new HashMap<>();
+        this._alternatives.put(definition.getTransitionMessage(first),
+                l.toArray(new FSMTransitionInfo[l.size()]));
+    }
+    
     /**
      * Method to allow addition of Messages along with their own
      * corresponding Action
@@ -104,7 +177,7 @@ public class FSMState implements java.io.Serializable {
      * Action to be associated with specified message
      */
     public void addMessages(String message, Object action) {
-        this._transitionMap.put(message, action);
+        getTransitionMap().put(message, action);
         updateNewTransitionMap();
     }
     
@@ -133,7 +206,7 @@ public class FSMState implements java.io.Serializable {
             while(iter.hasNext()) {
                 Map.Entry next = (Map.Entry) iter.next();
                 String[] val = ((String) next.getValue()).split(":",2);
-                this._transitions.put(next.getKey(), 
+                this._transitions.put((String) next.getKey(), 
                         new FSMTransitionInfo(val[0], val[1]));
             }
         }
@@ -141,16 +214,28 @@ public class FSMState implements java.io.Serializable {
     
     /**
      * Method to allow addition of Messages along with their own
-     * corresponding Action
+     * corresponding Action; a guarded message has it for each of its
+     * transitions
      * 
      * @param message message for which action is being assigned
      * @param act action method which needs to be assigned
+     * 
+     * @throws IllegalArgumentException
+     * In case the message is inherited from an enclosing state, whose
+     * transition is shared by the states it encloses
      */
     public void addMessageAction(String message, FSMAction act) {
-        if (_transitions!=null) {
+        if (inherits(message)) {
+            throw new IllegalArgumentException(message + " is inherited by "
+                    + this._curState + " from " + _inherited.get(message));
+        }
+        FSMTransitionInfo[] alternatives = 
+                (_alternatives == null) ? null : _alternatives.get(message);
+        if (alternatives != null) {
+            for (FSMTransitionInfo info : alternatives) info.updateAction(act);
+        } else if (_transitions!=null) {
             if (_transitions.containsKey(message)) {
-                ((FSMTransitionInfo)_transitions.get(message)).
-                        updateAction(act);
+                _transitions.get(message).updateAction(act);
             }
         }
     }
@@ -161,7 +246,10 @@ public class FSMState implements java.io.Serializable {
      * 
      * @param act Action to be associated pre-transition
      */
-    public void setBeforeTransition(FSMStateAction act) {this.stateEntry= act;}
+    public void setBeforeTransition(FSMStateAction act) {
+        this.stateEntry= act;
+        invalidateIncoming();
+    }
     
     /**
      * Method to set the Action method used to specify the exit method for
@@ -169,7 +257,37 @@ public class FSMState implements java.io.Serializable {
      * 
      * @param act Action to be associated post-transition
      */
-    public void setAfterTransition(FSMStateAction act) {this.stateExit= act;}
+    public void setAfterTransition(FSMStateAction act) {
+        this.stateExit= act;
+        invalidateIncoming();
+    }
+    
+    /*
+     * Tells whether the transition of the message is the one of an
+     * enclosing state
+     */
+    boolean inherits(String message) {
+        return (_inherited != null) && _inherited.containsKey(message);
+    }
+    
+    /*
+     * Name of the enclosing state whose transition of the message is
+     * inherited, or null
+     */
+    String inheritedFrom(String message) {
+        return (_inherited == null) ? null : _inherited.get(message);
+    }
+    
+    void addIncoming(FSMTransitionInfo info) {
+        if (_incoming==null) _incoming = new ArrayList<>();
+        _incoming.add(info);
+    }
+    
+    private void invalidateIncoming() {
+        if (_incoming!=null) {
+            for (FSMTransitionInfo info : _incoming) { info.invalidatePlan(); }
+        }
+    }
     
     /**
      * Method to return the entire Transition Map
@@ -177,7 +295,20 @@ public class FSMState implements java.io.Serializable {
      * @return 
      * Returns complete transition map associated with FSM
      */
-    public HashMap getTransitionMap() { return this._transitionMap;}
+    public HashMap getTransitionMap() {
+        if (this._transitionMap == null && this._transitions != null) {
+            /* State created from a definition; build the map on demand */
+            HashMap<String, String> map = new HashMap<>();
+            for (Map.Entry<String, FSMTransitionInfo> e 
+                    : this._transitions.entrySet()) {
+                FSMTransitionInfo info = e.getValue();
+                map.put(e.getKey(),
+                        info.getActionName() + ":" + info.getNextState());
+            }
+            this._transitionMap = map;
+        }
+        return this._transitionMap;
+    }
     
     /**
      * Method to return State-Name of the FSM State
@@ -187,6 +318,15 @@ public class FSMState implements java.io.Serializable {
      */
     public String getCurrentState() { return this._curState; }
     
+    /**
+     * Method to return the id of the state within the definition the
+     * state is created from
+     * 
+     * @return 
+     * Returns id of the state, or -1 if state is not created from a definition
+     */
+    public int getStateId() { return this._id; }
+    
     /**
      * Method to return new entire Transition Map
      * 
@@ -194,6 +334,19 @@ public class FSMState implements java.io.Serializable {
      * Returns associated transitions
      */
     public Map getNewTransitionMap() { return this._transitions; }
+    
+    /**
+     * Method to return the transition of a message
+     * 
+     * @param message Message received in this state
+     * @return 
+     * Returns the transition information, or null if the message is not 
+     * handled in this state
+     */
+    public FSMTransitionInfo getTransition(String message) {
+        return (this._transitions == null) ? null 
+                : this._transitions.get(message);
+    }
 
     public FSMStateAction getBeforeTransition() { return stateEntry; }
     
@@ -25,10 +25,12 @@
 package com.github.ankzz.dynamicfsm.states;
 
 import com.github.ankzz.dynamicfsm.action.FSMAction;
-import com.github.ankzz.dynamicfsm.common.CustomXMLReader;
+import com.github.ankzz.dynamicfsm.action.FSMGuard;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.SAXException;
 
@@ -49,7 +51,16 @@ public class FSMStates implements java.io.Serializable {
     private ArrayList _fsmStates;
     private ArrayList _states;
     private FSMState _curState;
+    /* Current state in concurrent mode, in place of _curState */
+    private AtomicReference<FSMState> _shared;
     private String _configFileName="config.xml";
+    private FSMDefinition _definition;
+    private FSMState[] _stateById;
+    private FSMTransitionInfo[] _transitionById;
+    private transient FSMAction _defaultAction;
+    private transient volatile FSMGuard[] _guards;
+    private transient AtomicLongArray _guardHits;
+    private transient AtomicLongArray _guardMisses;
     
     /**
      * <p>
@@ -58,6 +69,12 @@ public class FSMStates implements java.io.Serializable {
      * an external XML Configuration file with a definite path.
      * </p>
      * 
+     * <p>
+     * The configuration is compiled only once; further FSM States of the
+     * same configuration share the definition held by 
+     * {@link FSMDefinitionCache#getDefault()}.
+     * </p>
+     * 
      * 
      * @param configFName
      * Configuration file path.
@@ -77,27 +94,8 @@ public class FSMStates implements java.io.Serializable {
      */
     public FSMStates(String configFName, boolean extFile) 
             throws ParserConfigurationException, SAXException, IOException {
-        
+        this(FSMDefinitionCache.getDefault().get(configFName, extFile));
         if(!"".equals(configFName)) this._configFileName = configFName;
-        this._fsmStates = new ArrayList<>();
-        CustomXMLReader _r;
-        if(!extFile) {
-            _r = new CustomXMLReader(
-                this.getClass().getClassLoader().getResourceAsStream(
-                this._configFileName)
-                );
-        } else {
-            _r = new CustomXMLReader( this._configFileName );
-        }
-        
-        _states = _r.getStates();
-        
-        _states.forEach((_state) -> {
-            HashMap _t = _r.getStateInfo((String)_state);
-            this._fsmStates.add(new FSMState ((String) _state, _t));
-        });
-        
-        this._curState = (FSMState) this._fsmStates.get(0);
     }
 
     /**
@@ -126,16 +124,59 @@ public class FSMStates implements java.io.Serializable {
      */
     public FSMStates(InputStream configFStream) 
             throws ParserConfigurationException, SAXException, IOException {
-        CustomXMLReader _r = new CustomXMLReader(configFStream);
-        this._fsmStates = new ArrayList<>();
-        _states = _r.getStates();
+        this(FSMDefinitionCache.getDefault().get(configFStream));
+    }
+    
+    /**
+     * <p>
+     * This constructor allows to create a FSM from an already compiled
+     * definition. No configuration is parsed; states are created as per
+     * the specified definition.
+     * </p>
+     * 
+     * @param definition Compiled definition of the FSM
+     */
+    public FSMStates(FSMDefinition definition) {
+        this._definition = definition;
+        int count = definition.getStateCount();
+        this._fsmStates = new ArrayList<>(count);
+        this._states = new ArrayList<>(definition.getStateNames());
+        this._stateById = new FSMState[count];
+        this._transitionById = 
+                new FSMTransitionInfo[definition.getTransitionCount()];
+        for (int i = 0; i < count; i++) {
+            FSMState _s = new FSMState(definition, i, this._transitionById);
+            this._stateById[i] = _s;
+            this._fsmStates.add(_s);
+        }
         
-        _states.forEach((_state) -> {
-            HashMap _t = _r.getStateInfo((String)_state);
-            this._fsmStates.add(new FSMState ((String) _state, _t));
-        });
+        /* Resolve next state of each transition once */
+        for (int t = 0; t < this._transitionById.length; t++) {
+            FSMState _n = this._stateById[definition.getTransitionTarget(t)];
+            this._transitionById[t].setTransitionId(t);
+            this._transitionById[t].resolve(_n);
+            _n.addIncoming(this._transitionById[t]);
+        }
         
-        this._curState = (FSMState) this._fsmStates.get(0);
+        this._curState = (FSMState) this._fsmStates.get(
+                definition.getInitialState());
+        newGuards();
+    }
+    
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (int t = 0; t < this._transitionById.length; t++) {
+            this._transitionById[t].setTransitionId(t);
+        }
+        newGuards();
+    }
+    
+    private void newGuards() {
+        if (!this._definition.isGuarded()) return;
+        this._guards = new FSMGuard[this._definition.getGuardNames().size()];
+        this._guardHits = new AtomicLongArray(this._transitionById.length);
+        this._guardMisses = new AtomicLongArray(this._transitionById.length);
     }
     
     /**
@@ -166,7 +207,132 @@ public class FSMStates implements java.io.Serializable {
      * 
      * @param f State to be set as current state for the FSM
      */
-    public void setCurrentState(FSMState f) { this._curState = f; }
+    public void setCurrentState(FSMState f) {
+        AtomicReference<FSMState> _a = this._shared;
+        if (_a == null) {
+            this._curState = f;
+        } else {
+            _a.set(f);
+        }
+    }
+    
+    /**
+     * This method sets the current state of the FSM only if the FSM is 
+     * still in the expected state. It is atomic in concurrent mode only.
+     * 
+     * 
+     * @param expect State the FSM is expected to be in
+     * @param f State to be set as current state for the FSM
+     * @return Returns true if the current state has been set, false if the
+     *         FSM was not in the expected state
+     */
+    public boolean compareAndSetCurrentState(FSMState expect, FSMState f) {
+        AtomicReference<FSMState> _a = this._shared;
+        if (_a != null) return _a.compareAndSet(expect, f);
+        if (this._curState != expect) return false;
+        this._curState = f;
+        return true;
+    }
+    
+    /**
+     * This method enables or disables the concurrent mode of the FSM 
+     * States. In default mode the current state is a plain field, read and
+     * written by one thread at a time; in concurrent mode it is held by an
+     * atomic reference, so that several threads can read it and commit it
+     * with {@link #compareAndSetCurrentState(FSMState, FSMState)}. The mode
+     * shall be set before the FSM States are shared among threads.
+     * 
+     * 
+     * @param concurrent True to enable concurrent mode
+     */
+    public synchronized void setConcurrent(boolean concurrent) {
+        if (concurrent && this._shared == null) {
+            this._shared = new AtomicReference<>(this._curState);
+            this._curState = null;
+        } else if (!concurrent && this._shared != null) {
+            this._curState = this._shared.get();
+            this._shared = null;
+        }
+    }
+    
+    /**
+     * This method allows to set the default action method, which is 
+     * invoked when no specific action method is set for a transition.
+     * 
+     * 
+     * @param act Default action method
+     */
+    public void setDefaultAction(FSMAction act) {
+        this._defaultAction = act;
+        for (FSMTransitionInfo info : this._transitionById) {
+            info.invalidatePlan();
+        }
+    }
+    
+    /**
+     * This method returns the default action method.
+     * 
+     * 
+     * @return Returns the default action method, or null
+     */
+    public FSMAction getDefaultAction() { return this._defaultAction; }
+    
+    /**
+     * This method returns the plan to be executed to take the specified 
+     * transition. The plan is resolved once and reused until an action or
+     * hook it depends upon changes.
+     * 
+     * 
+     * @param info Transition information of a state of this FSM
+     * @return Returns the plan of the transition, or null if the next state
+     *         of the transition is not defined
+     */
+    public FSMTransitionPlan getPlan(FSMTransitionInfo info) {
+        FSMTransitionPlan _p = info.getPlan();
+        if (_p != null) return _p;
+        
+        FSMState _n = info.getTargetState();
+        if (_n == null) {
+            /* Transition added after load, or FSM States deserialized */
+            int _i = this._definition.getStateId(info.getNextState());
+            if (_i < 0) return null;
+            _n = this._stateById[_i];
+            info.resolve(_n);
+            _n.addIncoming(info);
+        }
+        _p = new FSMTransitionPlan(info.getTransitionId(), _n, 
+                _n.getStateId(), info.getActionName(),
+                info.getNextState(), info.getAction(), this._defaultAction,
+                hook(_n, true), hook(_n, false));
+        info.setPlan(_p);
+        return _p;
+    }
+    
+    /*
+     * Hook of a state, or of the nearest enclosing state with one
+     */
+    private FSMStateAction hook(FSMState state, boolean before) {
+        FSMState _s = state;
+        for (;;) {
+            FSMStateAction _h = before 
+                    ? _s.getBeforeTransition() : _s.getAfterTransition();
+            int _p = (_h != null || _s.getStateId() < 0) 
+                    ? -1 : this._definition.getParent(_s.getStateId());
+            if (_p < 0) return _h;
+            _s = this._stateById[_p];
+        }
+    }
+    
+    /*
+     * Plans of transitions to nested states depend on the hooks of the
+     * enclosing states
+     */
+    private void nestedHooksChanged() {
+        if (!this._definition.isNested()) return;
+        for (FSMTransitionInfo info : this._transitionById) {
+            info.invalidatePlan();
+        }
+    }
     
     /**
      * This method allows to set specific action methods for a specific
@@ -180,9 +346,23 @@ public class FSMStates implements java.io.Serializable {
      * @param message Message/Action which is received 
      * @param act Action method which needs to be initiated when message/action
      *            is received
+     * 
+     * @throws IllegalArgumentException
+     * In case one of the states inherits the message from an enclosing
+     * state; no action is set then
      */
     public void setAction(ArrayList<String> states, String message, 
             FSMAction act) {
+        /* Inherited messages are rejected before any action is set */
+        for (String s : states) {
+            int _i = this._definition.getStateId(s);
+            String from = (_i < 0) 
+                    ? null : this._stateById[_i].inheritedFrom(message);
+            if (from != null) {
+                throw new IllegalArgumentException(message 
+                        + " is inherited by " + s + " from " + from);
+            }
+        }
         int count = states.size();
         for (Iterator it = this._fsmStates.iterator(); it.hasNext();) {
             FSMState i = (FSMState) it.next();
@@ -216,7 +396,8 @@ public class FSMStates implements java.io.Serializable {
      * This method allows to set specific action methods for a specific
      * message/action. 
      * If specified, this method shall be called when specified message is
-     * received in any state.
+     * received in any state; states inheriting the message from an
+     * enclosing state take the action set on that state.
      * 
      * 
      * @param message Message/Action which is received 
@@ -228,6 +409,7 @@ public class FSMStates implements java.io.Serializable {
         int count = states.size();
         for (Iterator it = this._fsmStates.iterator(); it.hasNext();) {
             FSMState i = (FSMState) it.next();
+            if (i.inherits(message)) continue;
             if (states.contains(i)) {
                 i.addMessageAction(message, act);
                 count--;
@@ -255,6 +437,7 @@ public class FSMStates implements java.io.Serializable {
                 break;
             }
         }
+        nestedHooksChanged();
     }
 
     /**
@@ -279,6 +462,7 @@ public class FSMStates implements java.io.Serializable {
                 i.setBeforeTransition(act);
             }
         }
+        nestedHooksChanged();
     }
 
     /**
@@ -299,7 +483,8 @@ public class FSMStates implements java.io.Serializable {
                 i.setAfterTransition(act);
                 break;
             }
-        }    
+        }
+        nestedHooksChanged();
     }
 
     /**
@@ -324,6 +509,79 @@ public class FSMStates implements java.io.Serializable {
                 i.setAfterTransition(act);
             }
         }
+        nestedHooksChanged();
+    }
+
+    /**
+     * This method allows to set the condition of the transitions guarded by
+     * the specified guard name. Guards are set on these FSM States only, as
+     * actions are, whatever the guards registered on the definition. Guard
+     * names which guard no transition are ignored.
+     * 
+     * 
+     * @param guard Name of the guard
+     * @param condition Condition evaluated over the shared data
+     */
+    public synchronized void setGuard(String guard, FSMGuard condition) {
+        int _g = this._definition.getGuardNames().indexOf(guard);
+        if (_g < 0) return;
+        FSMGuard[] guards = this._guards.clone();
+        guards[_g] = condition;
+        this._guards = guards;
+    }
+
+    /**
+     * This method evaluates the guards set on these FSM States for the
+     * transitions of a message in a state, in order, starting from the
+     * specified one, as {@link FSMDefinition#selectTransition(int, Object)}
+     * does with the guards registered on the definition.
+     * 
+     * 
+     * @param transition Id of the transition, as returned by
+     *                   {@link FSMDefinition#getTransition(int, int)}, or -1
+     * @param sharedData Shared data passed to the guards
+     * @return Returns the id of the transition to be taken, or -1 if no
+     *         guard holds
+     */
+    public int selectTransition(int transition, Object sharedData) {
+        final FSMDefinition _d = this._definition;
+        if (transition < 0 || _d.getTransitionGuardId(transition) < 0) {
+            return transition;
+        }
+        final FSMGuard[] guards = this._guards;
+        for (int _t = transition; _t >= 0;
+                _t = _d.getTransitionAlternative(_t)) {
+            int guard = _d.getTransitionGuardId(_t);
+            if (guard < 0) return _t;
+            FSMGuard _p = guards[guard];
+            if (_p != null && _p.guard(sharedData)) {
+                this._guardHits.incrementAndGet(_t);
+                return _t;
+            }
+            this._guardMisses.incrementAndGet(_t);
+        }
+        return -1;
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * @return Returns the number of times the guard of the transition held
+     *         for these FSM States
+     */
+    public long getGuardHits(int transition) {
+        return (this._guardHits == null) ? 0 : this._guardHits.get(transition);
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition
+     * @return Returns the number of times the guard of the transition did
+     *         not hold for these FSM States
+     */
+    public long getGuardMisses(int transition) {
+        return (this._guardMisses == null) 
+                ? 0 : this._guardMisses.get(transition);
     }
 
     /**
@@ -332,7 +590,31 @@ public class FSMStates implements java.io.Serializable {
      * 
      * @return Returns a FSMState object
      */
-    public FSMState getCurrentState() { return this._curState;}
+    public FSMState getCurrentState() {
+        AtomicReference<FSMState> _a = this._shared;
+        return (_a == null) ? this._curState : _a.get();
+    }
+    
+    /**
+     * This method allows to get a state by its id within the definition
+     * 
+     * 
+     * @param stateId Id of the state
+     * @return Returns a FSMState object
+     */
+    public FSMState getState(int stateId) { return this._stateById[stateId];}
+    
+    /**
+     * This method allows to get the transition information of a transition
+     * by its id within the definition
+     * 
+     * 
+     * @param transition Id of the transition
+     * @return Returns a FSMTransitionInfo object
+     */
+    public FSMTransitionInfo getTransitionInfo(int transition) {
+        return this._transitionById[transition];
+    }
     
     /**
      * This method returns the list a FSM States configured for this FSM.
@@ -340,4 +622,11 @@ public class FSMStates implements java.io.Serializable {
      * @return Returns the list of FSM states
      */
     public List getAllStates() { return this._fsmStates;}
+    
+    /**
+     * This method returns the definition the FSM States are created from.
+     * 
+     * @return Returns the compiled definition of the FSM
+     */
+    public FSMDefinition getDefinition() { return this._definition;}
 }
@@ -42,6 +42,9 @@ public class FSMTransitionInfo implements java.io.Serializable {
     private String action;
     private String nextState;
     private transient FSMAction _a;
+    private transient FSMState _target;
+    private transient FSMTransitionPlan _plan;
+    private transient int _transition;
     
     /**
      *
@@ -81,7 +84,7 @@ public class FSMTransitionInfo implements java.io.Serializable {
      *
      * @param act Action to be associated with a particular transition
      */
-    public void updateAction(FSMAction act) { _a = act; }
+    public void updateAction(FSMAction act) { _a = act; _plan = null; }
     
     /**
      *
@@ -89,4 +92,36 @@ public class FSMTransitionInfo implements java.io.Serializable {
      * Returns default action associated with transition
      */
     public FSMAction getAction() { return _a; }
+    
+    /**
+     *
+     * @return
+     * Returns the state attained on successful transition, or null if the
+     * next state has not been resolved
+     */
+    public FSMState getTargetState() { return _target; }
+    
+    /**
+     *
+     * @return
+     * Returns the plan resolved for this transition, or null if it needs to 
+     * be resolved again
+     */
+    public FSMTransitionPlan getPlan() { return _plan; }
+    
+    /**
+     *
+     * @return
+     * Returns the id of the transition within the definition of the FSM, or
+     * -1 if the transition is not part of the definition
+     */
+    public int getTransitionId() { return _transition - 1; }
+    
+    void setTransitionId(int transition) { _transition = transition + 1; }
+    
+    void resolve(FSMState target) { _target = target; _plan = null; }
+    
+    void setPlan(FSMTransitionPlan plan) { _plan = plan; }
+    
+    void invalidatePlan() { _plan = null; }
 }
@@ -0,0 +1,347 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import com.github.ankzz.dynamicfsm.action.FSMAction;
+import com.github.ankzz.dynamicfsm.action.FSMAsyncAction;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * File: FSMTransitionPlan.java
+ * <p>
+ * This implementation holds a transition resolved at load time: the
+ * target state, the action method chosen for the transition and the
+ * hooks of the target state. Taking a transition is then a straight
+ * sequence of calls, without any lookup.
+ * </p>
+ * 
+ * <p>
+ * A plan is immutable. It is rebuilt whenever an action or hook it has
+ * resolved is changed.
+ * </p>
+ * 
+ * <p>
+ * A transition is taken as follows:
+ * </p>
+ * <pre>
+ *  boolean status = plan.enter(currentState, sharedData);
+ *  if (status) { ... set current state to plan's target ... }
+ *  plan.leave(currentState, status, sharedData);
+ * </pre>
+ * 
+ * <p>
+ * Both calls take an optional {@link Timing}, which receives the time 
+ * taken by the action method and the hooks.
+ * </p>
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMTransitionPlan {
+
+    private final int _transition;
+    private final FSMState _target;
+    private final int _targetId;
+    private final String _message;
+    private final String _nextState;
+    private final FSMAction _action;
+    private final boolean _custom;
+    private final FSMStateAction _before;
+    private final FSMStateAction _after;
+    private final boolean _callbacks;
+
+    /**
+     * 
+     * @param target Target state object; null if the plan is not bound to
+     *               a particular set of FSM States
+     * @param targetId Id of the target state within the definition
+     * @param message Name of action/message configured for the transition
+     * @param nextState Name of the target state
+     * @param transitionAction Action method specific to the transition,
+     *               or null
+     * @param defaultAction Default action method of the FSM, or null
+     * @param before Before-transition hook of the target state, or null
+     * @param after After-transition hook of the target state, or null
+     */
+    public FSMTransitionPlan(FSMState target, int targetId, String message,
+            String nextState, FSMAction transitionAction,
+            FSMAction defaultAction, FSMStateAction before,
+            FSMStateAction after) {
+        this(-1, target, targetId, message, nextState, transitionAction,
+                defaultAction, before, after);
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition within the definition, or -1
+     *               if the transition is not part of the definition
+     * @param target Target state object; null if the plan is not bound to
+     *               a particular set of FSM States
+     * @param targetId Id of the target state within the definition
+     * @param message Name of action/message configured for the transition
+     * @param nextState Name of the target state
+     * @param transitionAction Action method specific to the transition,
+     *               or null
+     * @param defaultAction Default action method of the FSM, or null
+     * @param before Before-transition hook of the target state, or null
+     * @param after After-transition hook of the target state, or null
+     */
+    public FSMTransitionPlan(int transition, FSMState target, int targetId,
+            String message, String nextState, FSMAction transitionAction,
+            FSMAction defaultAction, FSMStateAction before,
+            FSMStateAction after) {
+        this._transition = transition;
+        this._target = target;
+        this._targetId = targetId;
+        this._message = message;
+        this._nextState = nextState;
+        this._custom = (transitionAction != null);
+        this._action = this._custom ? transitionAction : defaultAction;
+        this._before = before;
+        this._after = after;
+        this._callbacks = (this._action != null || before != null 
+                || after != null);
+    }
+
+    /**
+     * Method invokes the callbacks which are due before the state of the FSM
+     * changes: the before-transition hook of the target state, the entry
+     * method and the action method.
+     * 
+     * @param curState Current state of the FSM
+     * @param sharedData Shared data of the FSM
+     * 
+     * @return Returns true if action was successfully executed, otherwise false
+     */
+    public boolean enter(String curState, Object sharedData) {
+        return enter(curState, sharedData, null);
+    }
+
+    /**
+     * Method invokes the callbacks which are due before the state of the FSM
+     * changes, as {@link #enter(String, Object)} does, timing the 
+     * before-transition hook and the action method.
+     * 
+     * @param curState Current state of the FSM
+     * @param sharedData Shared data of the FSM
+     * @param timing Receiver of the durations, or null
+     * 
+     * @return Returns true if action was successfully executed, otherwise false
+     */
+    public boolean enter(String curState, Object sharedData, Timing timing) {
+        if (this._before != null) {
+            long start = (timing == null) ? 0 : System.nanoTime();
+            this._before.stateTransition(this._nextState, sharedData);
+            if (timing != null) {
+                timing.recordBeforeHook(this._targetId, 
+                        System.nanoTime() - start);
+            }
+        }
+
+        if (this._action == null) return true;
+        if (this._custom) {
+            /* If customized action is declared, call an entry function */
+            this._action.entry(curState, this._message, this._nextState,
+                    sharedData);
+        }
+        if (timing == null || this._transition < 0) {
+            return this._action.action(curState, this._message, 
+                    this._nextState, sharedData);
+        }
+        long start = System.nanoTime();
+        boolean status = this._action.action(curState, this._message, 
+                this._nextState, sharedData);
+        timing.recordAction(this._transition, System.nanoTime() - start);
+        return status;
+    }
+
+    /**
+     * Method invokes the callbacks which are due before the state of the FSM
+     * changes, as {@link #enter(String, Object)} does, without waiting for
+     * an asynchronous action method.
+     * 
+     * @param curState Current state of the FSM
+     * @param sharedData Shared data of the FSM
+     * 
+     * @return Returns a future completing with true if action was 
+     *         successfully executed, otherwise false
+     */
+    public CompletableFuture<Boolean> enterAsync(String curState,
+            Object sharedData) {
+        if (!(this._action instanceof FSMAsyncAction)) {
+            return CompletableFuture.completedFuture(
+                    enter(curState, sharedData));
+        }
+
+        if (this._before != null) {
+            this._before.stateTransition(this._nextState, sharedData);
+        }
+        if (this._custom) {
+            this._action.entry(curState, this._message, this._nextState,
+                    sharedData);
+        }
+        return ((FSMAsyncAction) this._action).actionAsync(curState,
+                this._message, this._nextState, sharedData);
+    }
+
+    /**
+     * Method invokes the callbacks which are due once the state of the FSM
+     * has been updated: the after-transition method, the exit method and the
+     * after-transition hook of the target state.
+     * 
+     * @param curState Current state of the FSM, after the transition
+     * @param status Status returned by {@link #enter(String, Object)}
+     * @param sharedData Shared data of the FSM
+     */
+    public void leave(String curState, boolean status, Object sharedData) {
+        leave(curState, status, sharedData, null);
+    }
+
+    /**
+     * Method invokes the callbacks which are due once the state of the FSM
+     * has been updated, as {@link #leave(String, boolean, Object)} does, 
+     * timing the after-transition hook.
+     * 
+     * @param curState Current state of the FSM, after the transition
+     * @param status Status returned by {@link #enter(String, Object)}
+     * @param sharedData Shared data of the FSM
+     * @param timing Receiver of the durations, or null
+     */
+    public void leave(String curState, boolean status, Object sharedData,
+            Timing timing) {
+        if (this._action != null) {
+            if (status) {
+                this._action.afterTransition(curState, this._message,
+                        this._nextState, sharedData);
+            }
+            if (this._custom) {
+                /* Exit function called irrespective of transition status */
+                this._action.exit(curState, this._message, this._nextState,
+                        sharedData);
+            }
+        }
+
+        if (this._after != null) {
+            long start = (timing == null) ? 0 : System.nanoTime();
+            this._after.stateTransition(this._nextState, sharedData);
+            if (timing != null) {
+                timing.recordAfterHook(this._targetId, 
+                        System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 
+     * @return Returns true if taking the transition invokes any action 
+     *         method or hook; if not, taking the transition only moves the 
+     *         FSM to the target state
+     */
+    public boolean hasCallbacks() { return this._callbacks; }
+
+    /**
+     * 
+     * @return Returns the id of the transition within the definition, or -1
+     *         if the transition is not part of the definition
+     */
+    public int getTransition() { return this._transition; }
+
+    /**
+     * 
+     * @return Returns the target state object, or null if the plan is not
+     *         bound to a particular set of FSM States
+     */
+    public FSMState getTarget() { return this._target; }
+
+    /**
+     * 
+     * @return Returns the id of the target state within the definition
+     */
+    public int getTargetId() { return this._targetId; }
+
+    /**
+     * 
+     * @return Returns the name of action/message configured for the transition
+     */
+    public String getActionName() { return this._message; }
+
+    /**
+     * 
+     * @return Returns the name of the target state
+     */
+    public String getNextState() { return this._nextState; }
+
+    /**
+     * 
+     * @return Returns the action method invoked for the transition, or null
+     */
+    public FSMAction getAction() { return this._action; }
+
+    /**
+     * 
+     * @return Returns true if the action method is specific to the
+     *         transition, false if it is the default action of the FSM
+     */
+    public boolean isCustomAction() { return this._custom; }
+
+    /**
+     * 
+     * @return Returns the before-transition hook of the target state, or null
+     */
+    public FSMStateAction getBefore() { return this._before; }
+
+    /**
+     * 
+     * @return Returns the after-transition hook of the target state, or null
+     */
+    public FSMStateAction getAfter() { return this._after; }
+
+    /**
+     * Receiver of the time taken by the callbacks of a transition
+     */
+    public interface Timing {
+
+        /**
+         * 
+         * @param stateId Id of the target state
+         * @param nanos Time taken by the before-transition hook of the state
+         */
+        void recordBeforeHook(int stateId, long nanos);
+
+        /**
+         * 
+         * @param transition Id of the transition
+         * @param nanos Time taken by the action method of the transition
+         */
+        void recordAction(int transition, long nanos);
+
+        /**
+         * 
+         * @param stateId Id of the target state
+         * @param nanos Time taken by the after-transition hook of the state
+         */
+        void recordAfterHook(int stateId, long nanos);
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ *                    GNU LESSER GENERAL PUBLIC LICENSE
+ *                          Version 3, 29 June 2007
+ * Copyright (C) 2018 Free Software Foundation, Inc. <http://fsf.org>
+ * 
+ * This file is part of library dynamicfsm.
+ * 
+ * This library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU LESSER GENERAL PUBLIC LICENSE as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This library can be redistributed
+ * or used in case this license is copied as it is.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Author : Ankit
+ * Report bugs to : ankzzdev (at) gmail (dot) com
+**/
+package com.github.ankzz.dynamicfsm.states;
+
+import com.github.ankzz.dynamicfsm.action.FSMTypedAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File: FSMTypedDefinition.java
+ * <p>
+ * This implementation binds a definition to an enum of its states and an
+ * enum of its messages, matching constants and configuration by name. The
+ * binding fails as soon as it is created if a state or message of the
+ * configuration has no constant, or a constant has no state or message of
+ * the configuration, instead of when the first message is processed.
+ * </p>
+ * 
+ * <p>
+ * States and messages are then looked up by ordinal, through arrays, and
+ * transitions call {@link FSMTypedAction}s receiving constants:
+ * </p>
+ * <pre>
+ *  enum State { START, INTERMEDIATE, STOP, ANKIT }
+ *  enum Message { MOVE, MOVELEFT, MOVERIGHT }
+ * 
+ *  FSMTypedDefinition&lt;State, Message&gt; typed = new FSMTypedDefinition&lt;&gt;(
+ *          definition, State.class, Message.class);
+ *  typed.setAction(Message.MOVELEFT, (cur, msg, next, data) -&gt; true);
+ *  FSMTyped&lt;State, Message&gt; session = new FSMTyped&lt;&gt;(typed, sessionData);
+ *  session.process(Message.MOVELEFT);
+ * </pre>
+ * 
+ * <p>
+ * A transition without a typed action takes the action method and hooks
+ * registered on the definition, as {@link FSMTransitionPlan} does. The hooks
+ * of the target state are invoked around typed actions too. Typed actions
+ * can be set at any time; they are swapped in as a whole, as actions of the
+ * definition are.
+ * </p>
+ * 
+ * @param <S> Enum of the states
+ * @param <M> Enum of the messages
+ * 
+ * @version 0.01
+ * @author ANKIT
+ */
+public final class FSMTypedDefinition<S extends Enum<S>, M extends Enum<M>> {
+
+    private final FSMDefinition _definition;
+    private final Class<S> _stateType;
+    private final Class<M> _messageType;
+
+    /* Ids by ordinal, constants by id */
+    private final int[] _stateIds;
+    private final int[] _messageIds;
+    private final S[] _states;
+    private final M[] _messages;
+    private final S[] _targets;
+
+    /* Typed actions by transition id, replaced as a whole */
+    private volatile FSMTypedAction<S, M>[] _actions;
+
+    /**
+     * 
+     * @param definition Definition to be bound
+     * @param stateType Enum of the states of the definition
+     * @param messageType Enum of the messages of the definition
+     * 
+     * @throws IllegalArgumentException
+     * In case states or messages of the definition and constants of the enums
+     * do not match
+     */
+    @SuppressWarnings("unchecked")
+    public FSMTypedDefinition(FSMDefinition definition, Class<S> stateType,
+            Class<M> messageType) {
+        this._definition = definition;
+        this._stateType = stateType;
+        this._messageType = messageType;
+
+        S[] states = stateType.getEnumConstants();
+        M[] messages = messageType.getEnumConstants();
+        List<String> mismatches = new ArrayList<>();
+        this._stateIds = ids(states, definition.getStateCount(), true,
+                mismatches);
+        this._messageIds = ids(messages, definition.getMessageCount(), false,
+                mismatches);
+        if (!mismatches.isEmpty()) {
+            throw new IllegalArgumentException("Definition does not match "
+                    + stateType.getSimpleName() + "/"
+                    + messageType.getSimpleName() + ": " + mismatches);
+        }
+
+        this._states = (S[]) new Enum<?>[definition.getStateCount()];
+        for (S s : states) this._states[this._stateIds[s.ordinal()]] = s;
+        this._messages = (M[]) new Enum<?>[definition.getMessageCount()];
+        for (M m : messages) this._messages[this._messageIds[m.ordinal()]] = m;
+        this._targets = (S[]) new Enum<?>[definition.getTransitionCount()];
+        for (int t = 0; t < this._targets.length; t++) {
+            this._targets[t] = this._states[definition.getTransitionTarget(t)];
+        }
+        this._actions = (FSMTypedAction<S, M>[])
+                new FSMTypedAction<?, ?>[this._targets.length];
+    }
+
+    /*
+     * Ids of the constants, by ordinal; names of the definition without a
+     * constant, and constants without a name, are added to mismatches
+     */
+    private int[] ids(Enum<?>[] constants, int count, boolean states,
+            List<String> mismatches) {
+        int[] ids = new int[constants.length];
+        boolean[] bound = new boolean[count];
+        for (Enum<?> c : constants) {
+            int id = states ? this._definition.getStateId(c.name())
+                    : this._definition.getMessageId(c.name());
+            if (id < 0) {
+                mismatches.add((states ? "no state " : "no message ")
+                        + c.name());
+            } else {
+                ids[c.ordinal()] = id;
+                bound[id] = true;
+            }
+        }
+        for (int id = 0; id < count; id++) {
+            if (!bound[id]) {
+                mismatches.add((states ? "no constant for state "
+                        : "no constant for message ")
+                        + (states ? this._definition.getStateName(id)
+                                : this._definition.getMessageName(id)));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 
+     * @return Returns the definition bound
+     */
+    public FSMDefinition getDefinition() { return this._definition; }
+
+    /**
+     * 
+     * @return Returns the enum of the states
+     */
+    public Class<S> getStateType() { return this._stateType; }
+
+    /**
+     * 
+     * @return Returns the enum of the messages
+     */
+    public Class<M> getMessageType() { return this._messageType; }
+
+    /**
+     * 
+     * @param state State constant
+     * 
+     * @return Returns the id of the state within the definition
+     */
+    public int getStateId(S state) { return this._stateIds[state.ordinal()]; }
+
+    /**
+     * 
+     * @param stateId Id of the state within the definition
+     * 
+     * @return Returns the constant of the state
+     */
+    public S getState(int stateId) { return this._states[stateId]; }
+
+    /**
+     * 
+     * @param message Message constant
+     * 
+     * @return Returns the numeric id of the message within the definition
+     */
+    public int getMessageId(M message) {
+        return this._messageIds[message.ordinal()];
+    }
+
+    /**
+     * 
+     * @param messageId Numeric id of the message within the definition
+     * 
+     * @return Returns the constant of the message
+     */
+    public M getMessage(int messageId) { return this._messages[messageId]; }
+
+    /**
+     * 
+     * @param message Message Id, as specified in the configuration
+     * 
+     * @return Returns the constant of the message, or null if the message is
+     *         not handled in any state
+     */
+    public M getMessage(String message) {
+        int _m = this._definition.getMessageId(message);
+        return (_m < 0) ? null : this._messages[_m];
+    }
+
+    /**
+     * 
+     * @param transition Id of the transition within the definition
+     * 
+     * @return Returns the constant of the target state of the transition
+     */
+    public S getTarget(int transition) { return this._targets[transition]; }
+
+    /**
+     * 
+     * @param transition Id of the transition within the definition
+     * 
+     * @return Returns the typed action of the transition, or null
+     */
+    public FSMTypedAction<S, M> getAction(int transition) {
+        return this._actions[transition];
+    }
+
+    /**
+     * This method allows to set a typed action for a specific message in the
+     * specified state. It replaces the action method of the definition for
+     * the transition, or for each transition of the message in the state
+     * if it is guarded. A message inherited from an enclosing state is
+     * rejected, as its transition is shared by all the states nested in the
+     * enclosing one, on which the action shall be set.
+     * 
+     * @param state State in which message is received
+     * @param message Message which is received
+     * @param act Action which needs to be initiated when message is received,
+     *            or null to take the action method of the definition
+     */
+    public void setAction(S state, M message, FSMTypedAction<S, M> act) {
+        int _s = getStateId(state);
+        int _m = getMessageId(message);
+        int _t = this._definition.getTransition(_s, _m);
+        if (_t < 0) {
+            throw new IllegalArgumentException(message + " is not handled in "
+                    + state);
+        }
+        if (this._definition.getTransitionSource(_t) != _s) {
+            throw new IllegalArgumentException(message + " is inherited by "
+                    + state + " from " + getState(
+                            this._definition.getTransitionSource(_t)));
+        }
+        set(_s, _m, act);
+    }
+
+    /**
+     * This method allows to set a typed action for a specific message in any
+     * state.
+     * 
+     * @param message Message which is received
+     * @param act Action which needs to be initiated when message is received,
+     *            or null to take the action method of the definition
+     */
+    public void setAction(M message, FSMTypedAction<S, M> act) {
+        set(-1, getMessageId(message), act);
+    }
+
+    /**
+     * This method allows to set a typed action for every transition.
+     * 
+     * @param act Action which needs to be initiated when any message is
+     *            received, or null to take the action methods of the
+     *            definition
+     */
+    public void setDefaultAction(FSMTypedAction<S, M> act) {
+        set(-1, -1, act);
+    }
+
+    /*
+     * Sets the action of the transitions of a state and message; -1 stands
+     * for any state or message
+     */
+    private synchronized void set(int state, int message,
+            FSMTypedAction<S, M> act) {
+        final FSMDefinition _d = this._definition;
+        FSMTypedAction<S, M>[] actions = this._actions.clone();
+        for (int t = 0; t < actions.length; t++) {
+            if ((state < 0 || _d.getTransitionSource(t) == state)
+                    && (message < 0 || _d.getTransitionMessageId(t) == message)) {
+                actions[t] = act;
+            }
+        }
+        this._actions = actions;
+    }
+}